@@ -0,0 +1,149 @@
+package org.example;
+
+import java.io.Serializable;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Immutable, interned property address.
+// The street number, a normalised lookup key (trimmed, lower case, single spaces) and the hash are computed
+// once when the address is created, so comparisons and lookups never re-split or re-parse the text.
+// Addresses are equal when their keys are equal, which matches how addresses are looked up in the database.
+public final class Address implements Comparable<Address>, Serializable {
+    private static final long serialVersionUID = 1L;
+    public static final int NO_STREET_NUMBER = Integer.MAX_VALUE;  // Sorts addresses without a number last
+
+    // Caps the intern table's memory (-Daddress.maxInterned). Past the cap, of() returns new uninterned
+    // instances: equals/hashCode/compareTo still work (they use the key), but the same address is no longer
+    // always the same object.
+    private static final int MAX_INTERNED = Integer.getInteger("address.maxInterned", 1_000_000);
+    private static final ConcurrentHashMap<String, Address> interned = new ConcurrentHashMap<>();
+
+    private final String value;       // Address as entered, trimmed
+    private final int streetNumber;
+    private final String street;      // Text after the street number
+    private final String key;
+    private final int hash;
+
+    private Address(String value) {
+        this.value = value;
+        int i = 0;
+        int number = 0;
+        while (i < value.length() && i < 9 && isDigit(value.charAt(i))) {
+            number = number * 10 + (value.charAt(i) - '0');
+            i++;
+        }
+        this.streetNumber = i == 0 ? NO_STREET_NUMBER : number;
+        this.street = value.substring(i).trim();
+        this.key = normalize(value);
+        this.hash = key.hashCode();
+    }
+
+    // Lenient: accepts any stored address (e.g. "123 Main St"), used when reading from the database
+    public static Address of(String text) {
+        String value = text.trim();
+        Address address = interned.get(value);
+        if (address != null) {
+            return address;
+        }
+        address = new Address(value);
+        if (interned.size() < MAX_INTERNED) {
+            Address existing = interned.putIfAbsent(value, address);
+            if (existing != null) {
+                return existing;
+            }
+        }
+        return address;
+    }
+
+    // Strict: the '123 Abc' format required for new properties (digits, whitespace, letters)
+    public static Address parse(String text) throws InvalidAddressFormatException {
+        if (!isValidFormat(text)) {
+            throw new InvalidAddressFormatException("Invalid address format. Please enter the address in the format '123 Abc'.");
+        }
+        return of(text);
+    }
+
+    // Hand-written equivalent of text.matches("^\\d+\\s+[A-Za-z]+$")
+    static boolean isValidFormat(String text) {
+        int length = text.length();
+        int i = 0;
+        while (i < length && isDigit(text.charAt(i))) i++;
+        if (i == 0) return false;
+        int digitsEnd = i;
+        while (i < length && isRegexSpace(text.charAt(i))) i++;
+        if (i == digitsEnd) return false;
+        int lettersStart = i;
+        while (i < length && isAsciiLetter(text.charAt(i))) i++;
+        return i > lettersStart && i == length;
+    }
+
+    // Lookup key: trimmed, lower case, runs of whitespace collapsed to one space
+    public static String normalize(String text) {
+        StringBuilder key = new StringBuilder(text.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = key.length() > 0;
+                continue;
+            }
+            if (pendingSpace) {
+                key.append(' ');
+                pendingSpace = false;
+            }
+            key.append(Character.toLowerCase(c));
+        }
+        return key.toString();
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+    }
+
+    private static boolean isRegexSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public int getStreetNumber() {
+        return streetNumber;
+    }
+
+    public String getStreet() {
+        return street;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    @Override
+    public int compareTo(Address other) {
+        int byNumber = Integer.compare(streetNumber, other.streetNumber);
+        return byNumber != 0 ? byNumber : key.compareTo(other.key);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Address)) return false;
+        Address other = (Address) o;
+        return hash == other.hash && key.equals(other.key);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return value;
+    }
+}
@@ -1,61 +1,77 @@
 // Class E
 package org.example;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
-import java.util.HashMap;
-import java.util.Map;
 
 public class Apartment implements IProperty, Comparable<Apartment>, Serializable {
     private Person owner;      // The owner of the apartment
-    private Pet[] pets;        // An array of pets associated with the apartment
-    private String address;    // Address of the apartment
+    private transient short[] petCodes;  // Pet type codes (PetTypeDictionary), one per pet
+    private Address address;   // Address of the apartment
     private int floor;         // Floor number of the apartment
+    private transient PetHistogram petHistogram;  // Built lazily by petHistogram()
 
     // Constructor to initialize the owner, floor number, and address
     public Apartment(Person owner, int floorNumber, String address, Pet[] pets) {
+        this(owner, floorNumber, Address.of(address), PetTypeDictionary.encode(pets)); // Provided pets or none
+    }
+
+    // Used by the loaders, which read pet type codes directly
+    Apartment(Person owner, int floorNumber, Address address, short[] petCodes) {
         this.owner = owner;
         this.floor = floorNumber;
         this.address = address;
-        this.pets = pets != null ? pets : new Pet[0]; // Initialize with provided pets or empty array
+        this.petCodes = petCodes;
     }
 
-    // Method to get the array of pets
+    // Method to get the array of pets (shared Pet instances, one per type)
     public Pet[] getPets() {
-        return this.pets;  // Assuming `pets` is a field in the `Apartment` class
+        return PetTypeDictionary.decode(petCodes);
     }
 
 
     // Method to count the number of pets in the apartment
+    @Override
     public int countPets() {
-        return pets.length;
+        return petCodes.length;
+    }
+
+    short[] getPetCodes() {
+        return petCodes;
     }
 
     @Override
     public String getDescription() {
-        StringBuilder petDescription = new StringBuilder();
-        Map<String, Integer> petCount = new HashMap<>();
-
-        // Count pets by type
-        for (Pet pet : pets) {
-            petCount.put(pet.getPetType(), petCount.getOrDefault(pet.getPetType(), 0) + 1);
+        StringBuilder description = new StringBuilder(96);
+        try {
+            describeTo(description);
+        } catch (IOException e) {
+            throw new AssertionError(e);  // StringBuilder does not throw
         }
+        return description.toString();
+    }
 
-        // Format pet description
-        for (Map.Entry<String, Integer> entry : petCount.entrySet()) {
-            petDescription.append(entry.getValue()).append(" ").append(entry.getKey());
-            if (entry.getValue() > 1) petDescription.append("s"); // Pluralize if more than one
-            petDescription.append(", ");
-        }
+    // Writes the description straight into out, without building intermediate Strings
+    @Override
+    public void describeTo(Appendable out) throws IOException {
+        String ownerName = owner.getName();
+        out.append("The apartment on ").append(address.getValue()).append(", floor ").append(Integer.toString(floor))
+                .append(" is owned by ").append(ownerName).append(". ")
+                .append(ownerName).append(" has ");
+        petHistogram().appendTo(out);
+        out.append('.');
+    }
 
-        // Remove the trailing comma and space
-        if (petDescription.length() > 0) {
-            petDescription.setLength(petDescription.length() - 2);
-        } else {
-            petDescription.append("no pets");
+    // Pet counts by type, computed on first use (the pet codes are not modified after construction)
+    private PetHistogram petHistogram() {
+        PetHistogram histogram = petHistogram;
+        if (histogram == null) {
+            histogram = PetHistogram.of(petCodes);
+            petHistogram = histogram;
         }
-
-        return "The apartment on " + address + ", floor " + floor + " is owned by "
-                + owner.getName() + ". " + owner.getName() + " has " + petDescription.toString() + ".";
+        return histogram;
     }
 
     public Person getOwner() {
@@ -65,6 +81,11 @@ public class Apartment implements IProperty, Comparable<Apartment>, Serializable
     // Implementation of getAddress method
     @Override
     public String getAddress() {
+        return address.getValue();
+    }
+
+    @Override
+    public Address getParsedAddress() {
         return address;
     }
 
@@ -86,4 +107,14 @@ public class Apartment implements IProperty, Comparable<Apartment>, Serializable
         return Integer.compare(this.floor, other.floor);
     }
 
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        PetTypeDictionary.writeCodes(out, petCodes);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        petCodes = PetTypeDictionary.readCodes(in);
+    }
+
 }
@@ -0,0 +1,451 @@
+package org.example;
+
+import java.io.BufferedReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+// Bulk onboarding of properties from a CSV or JSONL file.
+//
+// CSV:   type,address,owner,floor,pets        e.g.  apartment,12 Oak,Jane Doe,3,Dog|Cat
+// JSONL: {"type":"house","address":"7 Elm","owner":"John Doe","pets":["Dog"]}
+//
+// Owners and pet types are resolved from in-memory maps (loaded once, extended as new ones are inserted, and
+// keyed case-insensitively like MySQL's default collation), and
+// persons, properties and pet links are written with addBatch/executeBatch, one transaction per chunk.
+// With rewriteBatchedStatements on the MySQL URL each batch goes out as a multi-row INSERT.
+public class BulkPropertyImporter {
+    private static final int CHUNK_SIZE = Integer.getInteger("import.chunkSize", 1000);
+    private static final int MAX_REPORTED_REJECTS = 20;
+
+    // A single parsed input line
+    static class PropertyRecord {
+        final int lineNumber;
+        final boolean apartment;
+        final String address;
+        final String owner;
+        final int floor;
+        final List<String> pets;
+
+        PropertyRecord(int lineNumber, boolean apartment, String address, String owner, int floor, List<String> pets) {
+            this.lineNumber = lineNumber;
+            this.apartment = apartment;
+            this.address = address;
+            this.owner = owner;
+            this.floor = floor;
+            this.pets = pets;
+        }
+    }
+
+    public static class Result {
+        private int records;
+        private int imported;
+        private int rejected;
+        private int ownersCreated;
+        private int petTypesCreated;
+        private int petLinks;
+        private long elapsedNanos;
+        private final List<String> rejects = new ArrayList<>();
+
+        void reject(int lineNumber, String reason) {
+            rejected++;
+            if (rejects.size() < MAX_REPORTED_REJECTS) {
+                rejects.add("line " + lineNumber + ": " + reason);
+            }
+        }
+
+        public int getRecords() { return records; }
+        public int getImported() { return imported; }
+        public int getRejected() { return rejected; }
+        public int getPetLinks() { return petLinks; }
+        public List<String> getRejects() { return rejects; }
+
+        public long getRowsWritten() {
+            return (long) imported + ownersCreated + petTypesCreated + petLinks;
+        }
+
+        public double getRowsPerSecond() {
+            return elapsedNanos == 0 ? 0.0 : getRowsWritten() * 1_000_000_000.0 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "Imported " + imported + " of " + records + " properties (" + rejected + " rejected), "
+                    + ownersCreated + " new owners, " + petTypesCreated + " new pet types, " + petLinks + " pet links in "
+                    + (elapsedNanos / 1_000_000) + " ms: " + String.format("%.0f", getRowsPerSecond()) + " rows/sec";
+        }
+    }
+
+    public static Result importFile(Path file) throws Exception {
+        String name = file.getFileName().toString().toLowerCase();
+        boolean jsonl = name.endsWith(".jsonl") || name.endsWith(".json");
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            return importFrom(reader, jsonl);
+        }
+    }
+
+    public static Result importFrom(BufferedReader reader, boolean jsonl) throws Exception {
+        long start = System.nanoTime();
+        Result result = new Result();
+
+        try (Connection connection = DatabaseConnection.getAdminConnection()) {
+            Map<String, Integer> ownerIds = loadIds(connection, "SELECT id, name FROM Person");
+            Map<String, Integer> petTypeIds = loadIds(connection, "SELECT id, type FROM Pet");
+            connection.setAutoCommit(false);
+
+            List<PropertyRecord> chunk = new ArrayList<>(CHUNK_SIZE);
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || (!jsonl && lineNumber == 1 && line.trim().toLowerCase().startsWith("type,"))) {
+                    continue;  // Skip blank lines and the CSV header
+                }
+                result.records++;
+                try {
+                    chunk.add(jsonl ? parseJsonRecord(line, lineNumber) : parseCsvRecord(line, lineNumber));
+                } catch (InvalidAddressFormatException | IllegalArgumentException e) {
+                    result.reject(lineNumber, e.getMessage());
+                }
+                if (chunk.size() == CHUNK_SIZE) {
+                    writeChunk(connection, chunk, ownerIds, petTypeIds, result);
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                writeChunk(connection, chunk, ownerIds, petTypeIds, result);
+            }
+        } finally {
+            PortfolioCache.invalidateAll();
+        }
+
+        result.elapsedNanos = System.nanoTime() - start;
+        return result;
+    }
+
+    // Write one chunk in its own transaction; on failure the whole chunk is rolled back and reported
+    private static void writeChunk(Connection connection, List<PropertyRecord> chunk, Map<String, Integer> ownerIds,
+                                   Map<String, Integer> petTypeIds, Result result) throws SQLException {
+        try {
+            // Case-insensitive like the database's name lookups, so "dog" and "Dog" are one pet type (first spelling wins)
+            Set<String> missingOwners = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+            Set<String> missingPetTypes = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+            for (PropertyRecord record : chunk) {
+                if (!ownerIds.containsKey(record.owner)) missingOwners.add(record.owner);
+                for (String pet : record.pets) {
+                    if (!petTypeIds.containsKey(pet)) missingPetTypes.add(pet);
+                }
+            }
+            Map<String, Integer> newOwners = insertNames(connection, "INSERT INTO Person (name) VALUES (?)", missingOwners);
+            Map<String, Integer> newPetTypes = insertNames(connection, "INSERT INTO Pet (type) VALUES (?)", missingPetTypes);
+
+            int[] propertyIds;
+            try (PreparedStatement stmt = connection.prepareStatement(
+                    "INSERT INTO Property (address, owner_id, floor, isGround, type, address_key) VALUES (?, ?, ?, ?, ?, ?)",
+                    Statement.RETURN_GENERATED_KEYS)) {
+                for (PropertyRecord record : chunk) {
+                    Integer ownerId = ownerIds.get(record.owner);
+                    stmt.setString(1, record.address);
+                    stmt.setString(6, Address.normalize(record.address));
+                    stmt.setInt(2, ownerId != null ? ownerId : newOwners.get(record.owner));
+                    if (record.apartment) {
+                        stmt.setInt(3, record.floor);
+                        stmt.setBoolean(4, false);  // Not ground level for apartments
+                        stmt.setString(5, "Apartment");
+                    } else {
+                        stmt.setNull(3, java.sql.Types.INTEGER);  // No floor for houses
+                        stmt.setBoolean(4, true);  // Ground level for houses
+                        stmt.setString(5, "House");
+                    }
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                propertyIds = generatedKeys(stmt, chunk.size());
+            }
+
+            int links = 0;
+            try (PreparedStatement stmt = connection.prepareStatement("INSERT INTO PropertyPet (property_id, pet_id) VALUES (?, ?)")) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    for (String pet : chunk.get(i).pets) {
+                        Integer petId = petTypeIds.get(pet);
+                        stmt.setInt(1, propertyIds[i]);
+                        stmt.setInt(2, petId != null ? petId : newPetTypes.get(pet));
+                        stmt.addBatch();
+                        links++;
+                    }
+                }
+                if (links > 0) {
+                    stmt.executeBatch();
+                }
+            }
+
+            connection.commit();
+            // Only remember new ids once they are committed
+            ownerIds.putAll(newOwners);
+            petTypeIds.putAll(newPetTypes);
+            newPetTypes.forEach((type, id) -> PetTypeDictionary.register(id, type));
+            for (PropertyRecord record : chunk) {
+                for (String pet : record.pets) {
+                    PetTypeCounters.added(PetTypeDictionary.code(pet), 1);
+                }
+                ChangeLog.propertyAdded(record.apartment, record.address, record.owner, record.apartment ? record.floor : 0, record.pets);
+            }
+            PetTypeIndex.invalidate();
+            result.imported += chunk.size();
+            result.ownersCreated += newOwners.size();
+            result.petTypesCreated += newPetTypes.size();
+            result.petLinks += links;
+        } catch (SQLException e) {
+            connection.rollback();
+            for (PropertyRecord record : chunk) {
+                result.reject(record.lineNumber, "chunk rolled back: " + e.getMessage());
+            }
+        }
+    }
+
+    private static Map<String, Integer> loadIds(Connection connection, String query) throws SQLException {
+        Map<String, Integer> ids = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        try (PreparedStatement stmt = connection.prepareStatement(query);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                ids.putIfAbsent(rs.getString(2), rs.getInt(1));  // First id wins, like the single-row lookups
+            }
+        }
+        return ids;
+    }
+
+    private static Map<String, Integer> insertNames(Connection connection, String insertQuery, Set<String> names) throws SQLException {
+        Map<String, Integer> ids = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        if (names.isEmpty()) {
+            return ids;
+        }
+        try (PreparedStatement stmt = connection.prepareStatement(insertQuery, Statement.RETURN_GENERATED_KEYS)) {
+            for (String name : names) {
+                stmt.setString(1, name);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+            int[] keys = generatedKeys(stmt, names.size());
+            int i = 0;
+            for (String name : names) {
+                ids.put(name, keys[i++]);
+            }
+        }
+        return ids;
+    }
+
+    private static int[] generatedKeys(PreparedStatement stmt, int expected) throws SQLException {
+        int[] keys = new int[expected];
+        int count = 0;
+        try (ResultSet rs = stmt.getGeneratedKeys()) {
+            while (rs.next() && count < expected) {
+                keys[count++] = rs.getInt(1);
+            }
+        }
+        if (count != expected) {
+            throw new SQLException("Expected " + expected + " generated keys but the driver returned " + count + ".");
+        }
+        return keys;
+    }
+
+    static PropertyRecord parseCsvRecord(String line, int lineNumber) throws InvalidAddressFormatException {
+        List<String> fields = Csv.split(line);
+        if (fields.size() < 3) {
+            throw new IllegalArgumentException("expected type,address,owner[,floor[,pets]]");
+        }
+        String floor = fields.size() > 3 ? fields.get(3) : "";
+        List<String> pets = new ArrayList<>();
+        if (fields.size() > 4 && !fields.get(4).isEmpty()) {
+            for (String pet : fields.get(4).split("\\|")) {
+                pets.add(pet.trim());
+            }
+        }
+        return toRecord(lineNumber, fields.get(0), fields.get(1), fields.get(2), floor, pets);
+    }
+
+    static PropertyRecord parseJsonRecord(String line, int lineNumber) throws InvalidAddressFormatException {
+        Map<String, Object> json = parseJsonObject(line);
+        Object floor = json.get("floor");
+        Object pets = json.getOrDefault("pets", List.of());
+        List<String> petTypes = new ArrayList<>();
+        if (pets instanceof List) {
+            for (Object pet : (List<?>) pets) {
+                petTypes.add(String.valueOf(pet).trim());
+            }
+        } else {
+            petTypes.addAll(Arrays.asList(String.valueOf(pets).split("\\|")));
+        }
+        return toRecord(lineNumber, asString(json.get("type")), asString(json.get("address")), asString(json.get("owner")),
+                floor == null ? "" : String.valueOf(floor), petTypes);
+    }
+
+    private static String asString(Object value) {
+        return value == null ? "" : String.valueOf(value).trim();
+    }
+
+    // Apply the same validation as the interactive Add Property flow
+    private static PropertyRecord toRecord(int lineNumber, String type, String address, String owner, String floorText,
+                                           List<String> pets) throws InvalidAddressFormatException {
+        String propertyType = type.trim().toLowerCase();
+        if (!(propertyType.equals("house") || propertyType.equals("apartment"))) {
+            throw new IllegalArgumentException("Invalid property type '" + type + "'. Expected 'house' or 'apartment'.");
+        }
+        Main.validateNotEmpty(owner, "Owner Name");
+        Main.validateAddress(address.trim());
+        for (String pet : pets) {
+            Main.validateNotEmpty(pet, "Pet Type");
+        }
+
+        int floor = 0;
+        boolean apartment = propertyType.equals("apartment");
+        if (apartment) {
+            try {
+                floor = Integer.parseInt(floorText.trim());  // Whole floors only: "3.7" or "NaN" is an error, not floor 3 or 0
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid floor number '" + floorText + "'.");
+            }
+            Main.validateFloorNumber(floor);
+        }
+        return new PropertyRecord(lineNumber, apartment, address.trim(), owner.trim(), floor, pets);
+    }
+
+    // Parses one flat JSON object whose values are strings, numbers, booleans, null or arrays of those
+    static Map<String, Object> parseJsonObject(String text) {
+        JsonReader reader = new JsonReader(text);
+        Object value = reader.readValue();
+        reader.skipWhitespace();
+        if (!(value instanceof Map) || reader.pos != text.length()) {
+            throw new IllegalArgumentException("Expected a single JSON object per line.");
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, Object> object = (Map<String, Object>) value;
+        return object;
+    }
+
+    private static class JsonReader {
+        private final String text;
+        private int pos = 0;
+
+        JsonReader(String text) {
+            this.text = text;
+        }
+
+        Object readValue() {
+            skipWhitespace();
+            if (pos >= text.length()) throw error("Unexpected end of input");
+            char c = text.charAt(pos);
+            if (c == '{') return readObject();
+            if (c == '[') return readArray();
+            if (c == '"') return readString();
+            if (text.startsWith("true", pos)) { pos += 4; return Boolean.TRUE; }
+            if (text.startsWith("false", pos)) { pos += 5; return Boolean.FALSE; }
+            if (text.startsWith("null", pos)) { pos += 4; return null; }
+            return readNumber();
+        }
+
+        private Map<String, Object> readObject() {
+            Map<String, Object> object = new LinkedHashMap<>();
+            pos++;  // {
+            skipWhitespace();
+            if (peek() == '}') { pos++; return object; }
+            while (true) {
+                skipWhitespace();
+                if (peek() != '"') throw error("Expected a field name");
+                String key = readString();
+                skipWhitespace();
+                expect(':');
+                object.put(key, readValue());
+                skipWhitespace();
+                char c = next();
+                if (c == '}') return object;
+                if (c != ',') throw error("Expected ',' or '}'");
+            }
+        }
+
+        private List<Object> readArray() {
+            List<Object> array = new ArrayList<>();
+            pos++;  // [
+            skipWhitespace();
+            if (peek() == ']') { pos++; return array; }
+            while (true) {
+                array.add(readValue());
+                skipWhitespace();
+                char c = next();
+                if (c == ']') return array;
+                if (c != ',') throw error("Expected ',' or ']'");
+            }
+        }
+
+        private String readString() {
+            StringBuilder sb = new StringBuilder();
+            pos++;  // opening quote
+            while (true) {
+                char c = next();
+                if (c == '"') return sb.toString();
+                if (c != '\\') { sb.append(c); continue; }
+                char escaped = next();
+                switch (escaped) {
+                    case 'n': sb.append('\n'); break;
+                    case 't': sb.append('\t'); break;
+                    case 'r': sb.append('\r'); break;
+                    case 'b': sb.append('\b'); break;
+                    case 'f': sb.append('\f'); break;
+                    case 'u':
+                        if (pos + 4 > text.length()) throw error("Bad unicode escape");
+                        sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                        pos += 4;
+                        break;
+                    default: sb.append(escaped);  // \" \\ \/
+                }
+            }
+        }
+
+        private Number readNumber() {
+            int start = pos;
+            while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0) pos++;
+            if (start == pos) throw error("Unexpected character '" + text.charAt(pos) + "'");
+            String number = text.substring(start, pos);
+            try {
+                return number.contains(".") || number.contains("e") || number.contains("E")
+                        ? Double.parseDouble(number) : (Number) Long.parseLong(number);
+            } catch (NumberFormatException e) {
+                throw error("Invalid number '" + number + "'");
+            }
+        }
+
+        void skipWhitespace() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) pos++;
+        }
+
+        private char peek() {
+            if (pos >= text.length()) throw error("Unexpected end of input");
+            return text.charAt(pos);
+        }
+
+        private char next() {
+            char c = peek();
+            pos++;
+            return c;
+        }
+
+        private void expect(char expected) {
+            if (next() != expected) throw error("Expected '" + expected + "'");
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + pos + ".");
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package org.example;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Month-start rent posting from a CSV or JSONL file of payments.
+//
+// CSV:   address,amount        e.g.  12 Oak,1200.00
+// JSONL: {"address":"12 Oak","amount":1200.00}
+//
+// Per chunk of records: one query resolves the current lease of every address in the chunk, one query finds the
+// leases already paid this month (using the unique (lease_id, payment_period) index from PaymentEngine),
+// amounts are checked against the monthly rent in memory, and the payments go out as one batched INSERT in
+// a single transaction. If that insert still hits the unique key (a tenant paid in the meantime) the chunk
+// is rolled back and retried row by row, so only the conflicting payments are rejected.
+// Rejected records are written to a rejects file (line,address,amount,reason).
+public class BulkRentPosting {
+    private static final int CHUNK_SIZE = Integer.getInteger("rent.chunkSize", 1000);
+
+    // The IN lists are padded to the chunk size so each query has one SQL text (one cached statement)
+    private static final String LEASES_QUERY = """
+            SELECT p.address_key, l.id, l.monthlyRent, t.name AS tenant_name
+            FROM Lease l
+            JOIN Property p ON l.property_id = p.id
+            JOIN Person t ON l.tenant_id = t.id
+            WHERE p.address_key IN (%s) AND l.startDate <= CURRENT_DATE AND l.endDate >= CURRENT_DATE
+            ORDER BY l.id
+            """.formatted(placeholders(CHUNK_SIZE));
+    private static final String PAID_QUERY = """
+            SELECT lease_id FROM RentPayments
+            WHERE payment_period = YEAR(CURRENT_DATE) * 100 + MONTH(CURRENT_DATE) AND lease_id IN (%s)
+            """.formatted(placeholders(CHUNK_SIZE));
+
+    static class PaymentRecord {
+        final int lineNumber;
+        final String address;
+        final double amount;
+
+        PaymentRecord(int lineNumber, String address, double amount) {
+            this.lineNumber = lineNumber;
+            this.address = address;
+            this.amount = amount;
+        }
+    }
+
+    // The lease a payment is posted against
+    private static class LeaseInfo {
+        final int id;
+        final double monthlyRent;
+        final String tenantName;
+
+        LeaseInfo(int id, double monthlyRent, String tenantName) {
+            this.id = id;
+            this.monthlyRent = monthlyRent;
+            this.tenantName = tenantName;
+        }
+    }
+
+    public static class Result {
+        private int records;
+        private int posted;
+        private int rejected;
+        private double amountPosted;
+        private long elapsedNanos;
+
+        public int getRecords() { return records; }
+        public int getPosted() { return posted; }
+        public int getRejected() { return rejected; }
+        public double getAmountPosted() { return amountPosted; }
+
+        public double getRecordsPerSecond() {
+            return elapsedNanos == 0 ? 0.0 : records * 1_000_000_000.0 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "Posted " + posted + " of " + records + " payments (" + rejected + " rejected), $"
+                    + String.format("%.2f", amountPosted) + " in " + (elapsedNanos / 1_000_000) + " ms: "
+                    + String.format("%.0f", getRecordsPerSecond()) + " records/sec";
+        }
+    }
+
+    public static Result postFile(Path file, Path rejectsFile) throws Exception {
+        String name = file.getFileName().toString().toLowerCase();
+        boolean jsonl = name.endsWith(".jsonl") || name.endsWith(".json");
+        try (BufferedReader reader = Files.newBufferedReader(file);
+             BufferedWriter rejects = Files.newBufferedWriter(rejectsFile)) {
+            rejects.write("line,address,amount,reason");
+            rejects.newLine();
+            return postFrom(reader, jsonl, rejects);
+        }
+    }
+
+    public static Result postFrom(BufferedReader reader, boolean jsonl, Writer rejects) throws Exception {
+        long start = System.nanoTime();
+        Result result = new Result();
+
+        try (Connection connection = DatabaseConnection.getAdminConnection()) {
+            if (!PaymentEngine.hasUniqueKey(connection)) {  // The batched insert relies on it to reject a second payment
+                throw new SQLException("RentPayments has no unique (lease_id, payment_period) key; "
+                        + "apply the schema migrations before posting rent in bulk.");
+            }
+            connection.setAutoCommit(false);
+            List<PaymentRecord> chunk = new ArrayList<>(CHUNK_SIZE);
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || (!jsonl && lineNumber == 1 && line.trim().toLowerCase().startsWith("address,"))) {
+                    continue;  // Skip blank lines and the CSV header
+                }
+                result.records++;
+                try {
+                    chunk.add(jsonl ? parseJsonRecord(line, lineNumber) : parseCsvRecord(line, lineNumber));
+                } catch (IllegalArgumentException e) {
+                    reject(rejects, result, lineNumber, line, "", e.getMessage());
+                }
+                if (chunk.size() == CHUNK_SIZE) {
+                    postChunk(connection, chunk, rejects, result);
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                postChunk(connection, chunk, rejects, result);
+            }
+        }
+
+        result.elapsedNanos = System.nanoTime() - start;
+        return result;
+    }
+
+    private static void postChunk(Connection connection, List<PaymentRecord> chunk, Writer rejects, Result result)
+            throws SQLException, IOException {
+        Map<String, LeaseInfo> leases = findLeases(connection, chunk);
+        Set<Integer> alreadyPaid = findPaidLeases(connection, leases.values());
+
+        List<PaymentRecord> accepted = new ArrayList<>(chunk.size());
+        List<LeaseInfo> acceptedLeases = new ArrayList<>(chunk.size());
+        for (PaymentRecord record : chunk) {
+            LeaseInfo lease = leases.get(Address.normalize(record.address));
+            String reason = null;
+            if (lease == null) {
+                reason = "no lease for this property";
+            } else if (lease.monthlyRent <= 0) {
+                reason = "monthly rent must be a positive value";
+            } else if (record.amount != lease.monthlyRent) {
+                reason = "amount must match the monthly rent: " + lease.monthlyRent;
+            } else if (!alreadyPaid.add(lease.id)) {  // Also catches the same lease twice in one file
+                reason = "rent already paid for this month";
+            }
+            if (reason != null) {
+                reject(rejects, result, record, reason);
+            } else {
+                accepted.add(record);
+                acceptedLeases.add(lease);
+            }
+        }
+        if (accepted.isEmpty()) {
+            connection.commit();
+            return;
+        }
+
+        try {
+            insertPayments(connection, accepted, acceptedLeases, true);
+            connection.commit();
+            for (PaymentRecord record : accepted) {
+                result.posted++;
+                result.amountPosted += record.amount;
+            }
+        } catch (SQLException e) {
+            connection.rollback();
+            if (!PaymentEngine.isDuplicateKey(e)) {
+                for (PaymentRecord record : accepted) {
+                    reject(rejects, result, record, "chunk rolled back: " + e.getMessage());
+                }
+                return;
+            }
+            // Someone paid while the chunk was being checked: post the rest one by one
+            for (int i = 0; i < accepted.size(); i++) {
+                PaymentRecord record = accepted.get(i);
+                try {
+                    insertPayments(connection, List.of(record), List.of(acceptedLeases.get(i)), false);
+                    connection.commit();
+                    result.posted++;
+                    result.amountPosted += record.amount;
+                } catch (SQLException rowError) {
+                    connection.rollback();
+                    reject(rejects, result, record, PaymentEngine.isDuplicateKey(rowError)
+                            ? "rent already paid for this month" : rowError.getMessage());
+                }
+            }
+        }
+    }
+
+    // Address key -> lease, for every distinct address in the chunk (the first lease wins, like payRent)
+    private static Map<String, LeaseInfo> findLeases(Connection connection, List<PaymentRecord> chunk) throws SQLException {
+        Set<String> keys = new LinkedHashSet<>();
+        for (PaymentRecord record : chunk) {
+            keys.add(Address.normalize(record.address));
+        }
+        Map<String, LeaseInfo> leases = new HashMap<>();
+        try (PreparedStatement stmt = connection.prepareStatement(LEASES_QUERY)) {
+            bindPadded(stmt, new ArrayList<>(keys));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    leases.putIfAbsent(rs.getString("address_key"),
+                            new LeaseInfo(rs.getInt("id"), rs.getDouble("monthlyRent"), rs.getString("tenant_name")));
+                }
+            }
+        }
+        return leases;
+    }
+
+    private static Set<Integer> findPaidLeases(Connection connection, Iterable<LeaseInfo> leases) throws SQLException {
+        List<Object> ids = new ArrayList<>();
+        for (LeaseInfo lease : leases) {
+            ids.add(lease.id);
+        }
+        Set<Integer> paid = new HashSet<>();
+        if (ids.isEmpty()) {
+            return paid;
+        }
+        try (PreparedStatement stmt = connection.prepareStatement(PAID_QUERY)) {
+            bindPadded(stmt, ids);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    paid.add(rs.getInt("lease_id"));
+                }
+            }
+        }
+        return paid;
+    }
+
+    private static void insertPayments(Connection connection, List<PaymentRecord> records, List<LeaseInfo> leases,
+                                       boolean batched) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(PaymentEngine.INSERT_PAYMENT)) {
+            for (int i = 0; i < records.size(); i++) {
+                stmt.setString(1, records.get(i).address);
+                stmt.setString(2, leases.get(i).tenantName);
+                stmt.setDouble(3, records.get(i).amount);
+                stmt.setInt(4, leases.get(i).id);
+                if (batched) {
+                    stmt.addBatch();
+                } else {
+                    stmt.executeUpdate();
+                }
+            }
+            if (batched) {
+                stmt.executeBatch();
+            }
+        }
+    }
+
+    // Bind the values to the CHUNK_SIZE placeholders, repeating the last value for the unused ones
+    private static void bindPadded(PreparedStatement stmt, List<?> values) throws SQLException {
+        for (int i = 0; i < CHUNK_SIZE; i++) {
+            stmt.setObject(i + 1, values.get(Math.min(i, values.size() - 1)));
+        }
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", java.util.Collections.nCopies(count, "?"));
+    }
+
+    static PaymentRecord parseCsvRecord(String line, int lineNumber) {
+        List<String> fields = Csv.split(line);
+        if (fields.size() < 2) {
+            throw new IllegalArgumentException("expected address,amount");
+        }
+        return toRecord(lineNumber, fields.get(0), fields.get(1));
+    }
+
+    static PaymentRecord parseJsonRecord(String line, int lineNumber) {
+        Map<String, Object> json = BulkPropertyImporter.parseJsonObject(line);
+        Object amount = json.get("amount");
+        return toRecord(lineNumber, json.get("address") == null ? "" : String.valueOf(json.get("address")).trim(),
+                amount == null ? "" : String.valueOf(amount));
+    }
+
+    private static PaymentRecord toRecord(int lineNumber, String address, String amountText) {
+        if (address.isEmpty()) {
+            throw new IllegalArgumentException("Property Address cannot be empty.");
+        }
+        double amount;
+        try {
+            amount = Double.parseDouble(amountText.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid amount '" + amountText + "'.");
+        }
+        if (amount <= 0) {
+            throw new IllegalArgumentException("Amount must be a positive value.");
+        }
+        return new PaymentRecord(lineNumber, address, amount);
+    }
+
+    private static void reject(Writer rejects, Result result, PaymentRecord record, String reason) throws IOException {
+        reject(rejects, result, record.lineNumber, record.address, String.valueOf(record.amount), reason);
+    }
+
+    private static void reject(Writer rejects, Result result, int lineNumber, String address, String amount,
+                               String reason) throws IOException {
+        result.rejected++;
+        rejects.write(lineNumber + "," + Csv.escape(address) + "," + Csv.escape(amount) + "," + Csv.escape(reason));
+        rejects.write(System.lineSeparator());
+    }
+}
@@ -0,0 +1,358 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+// Append-only log of the portfolio changes made since a PortfolioSnapshot was taken, so WarmStart can bring
+// the snapshot up to date without querying the database. The write paths append a record once their
+// statements have succeeded; it is off (every call returns at once) until open() is called.
+//
+// File: a 16-byte header (magic, version, base) followed by the records.
+// Record (see LogRecord): body length (int), CRC32C of the body (int), body = type (byte) followed by the
+// type's fields. A record's position is the base plus its byte offset
+// after the header: a snapshot's watermark is position() when it was taken, and replay() starts there. Once a
+// snapshot is on disk, compactTo() drops the records before its watermark and raises the base to it, so
+// positions never move and the log only holds what the snapshot lacks. A record cut short by a crash fails its
+// length or checksum check and is dropped, together with anything after it.
+//
+// The log is written by one process and not fsynced; after an OS crash, or writes that bypassed this
+// application, export a fresh snapshot (Main --snapshot).
+public class ChangeLog {
+    static final byte PROPERTY_ADDED = 1;
+    static final byte PET_ADDED = 2;
+    static final byte PET_TYPE_REMOVED = 3;  // Every pet of the type, as TenantService.removePet unlinks them
+    static final byte LEASE_ADDED = 4;
+    static final byte LEASES_TERMINATED = 5;  // Every lease on the property, as Main.terminateLease deletes them
+
+    private static final ByteOrder ORDER = LogRecord.ORDER;
+    private static final int MAGIC = 0x43484E47;  // "CHNG"
+    private static final int VERSION = 1;
+    static final int FILE_HEADER = 16;
+    private static final int HEADER = LogRecord.HEADER;
+    private static final int MAX_RECORD = 1 << 20;
+
+    private static final Metrics.Operation APPEND = Metrics.operation("changeLog.append");
+
+    private static FileChannel channel;  // Guarded by the class lock; null while the log is off
+    private static Path file;
+    private static long base;  // Position of the first record in the file
+
+    // One replayed record; fields a type does not use are empty
+    static class Change {
+        final byte type;
+        final String address;
+        final String name;       // Owner, pet type or tenant
+        final boolean apartment;
+        final boolean ground;
+        final int floor;
+        final int startDay;
+        final int endDay;
+        final double monthlyRent;
+        final List<String> pets;
+
+        Change(byte type, String address, String name, boolean apartment, boolean ground, int floor,
+               int startDay, int endDay, double monthlyRent, List<String> pets) {
+            this.type = type;
+            this.address = address;
+            this.name = name;
+            this.apartment = apartment;
+            this.ground = ground;
+            this.floor = floor;
+            this.startDay = startDay;
+            this.endDay = endDay;
+            this.monthlyRent = monthlyRent;
+            this.pets = pets;
+        }
+    }
+
+    // The log that belongs to a snapshot file
+    public static Path fileFor(Path snapshot) {
+        return snapshot.resolveSibling(snapshot.getFileName() + ".changes");
+    }
+
+    public static synchronized void open(Path logFile) throws IOException {
+        close();
+        FileChannel opened = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (opened.size() < FILE_HEADER) {  // New, or its header was cut short: start over at 0
+                opened.truncate(0);
+                writeHeader(opened, 0);
+                base = 0;
+            } else {
+                base = readBase(opened, logFile);
+            }
+            opened.position(opened.size());
+        } catch (IOException | RuntimeException e) {
+            opened.close();
+            throw e;
+        }
+        channel = opened;
+        file = logFile;
+    }
+
+    public static synchronized void close() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        channel = null;
+        file = null;
+    }
+
+    public static synchronized boolean isOpen() {
+        return channel != null;
+    }
+
+    // Position after the last record, i.e. the watermark of a snapshot taken now (0 while the log is off)
+    public static synchronized long position() {
+        try {
+            return channel == null ? 0 : base + channel.size() - FILE_HEADER;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return 0;
+        }
+    }
+
+    public static void propertyAdded(IProperty property) {
+        boolean apartment = property instanceof Apartment;  // Stored as Main.addPropertyToDatabase writes it
+        propertyAdded(apartment, property.getAddress(), property.getOwner().getName(), apartment ? property.getFloor() : 0,
+                List.of());
+    }
+
+    // Pets may be included when they are written in the same transaction (BulkPropertyImporter)
+    public static void propertyAdded(boolean apartment, String address, String owner, int floor, List<String> pets) {
+        if (!isOpen()) {
+            return;
+        }
+        LogRecord record = new LogRecord(PROPERTY_ADDED).put(apartment ? 1 : 0).put(address).put(owner).put(floor)
+                .put(pets.size());
+        for (String pet : pets) {
+            record.put(pet);
+        }
+        append(record);
+    }
+
+    public static void petAdded(String address, String petType) {
+        if (isOpen()) {
+            append(new LogRecord(PET_ADDED).put(address).put(petType));
+        }
+    }
+
+    public static void petTypeRemoved(String address, String petType) {
+        if (isOpen()) {
+            append(new LogRecord(PET_TYPE_REMOVED).put(address).put(petType));
+        }
+    }
+
+    public static void leaseAdded(Lease lease) {
+        if (isOpen()) {
+            append(new LogRecord(LEASE_ADDED).put(lease.getPropertyAddress()).put(lease.getTenantName())
+                    .put(lease.getStartDay()).put(lease.getEndDay()).put(lease.getMonthlyRent()));
+        }
+    }
+
+    public static void leasesTerminated(String address) {
+        if (isOpen()) {
+            append(new LogRecord(LEASES_TERMINATED).put(address));
+        }
+    }
+
+    // A record that cannot be written leaves the snapshot behind the database for good, so the snapshot is
+    // deleted (the next start is a cold one) and the log switched off
+    private static synchronized void append(LogRecord record) {
+        if (channel == null) {
+            return;
+        }
+        long started = APPEND.start();
+        try {
+            if (record.getTooLong() != null) {
+                throw new IllegalStateException("a " + record.getTooLong() + " does not fit in a record");
+            }
+            ByteBuffer bytes = record.seal();
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            APPEND.success(started, 1);
+        } catch (IOException | RuntimeException e) {
+            APPEND.failure(started);
+            disable("could not write the change log (" + e.getMessage() + ")");
+        }
+    }
+
+    private static void disable(String reason) {
+        System.out.println("Warning: " + reason + "; warm start is disabled until the next snapshot.");
+        Path snapshot = file.resolveSibling(file.getFileName().toString().replaceFirst("\\.changes$", ""));
+        close();
+        try {
+            Files.deleteIfExists(snapshot);
+        } catch (IOException deleteFailed) {
+            deleteFailed.printStackTrace();
+        }
+    }
+
+    // Drops the records before the watermark, which a snapshot now on disk already holds: the rest are copied to
+    // a new file with the watermark as its base, which replaces the log. Appends wait while the tail is copied;
+    // it is short, since the snapshot was taken at most a background write ago.
+    static synchronized void compactTo(long watermark) throws IOException {
+        if (channel == null || watermark <= base) {
+            return;
+        }
+        long size = channel.size();
+        if (watermark > base + size - FILE_HEADER) {
+            throw new IOException("watermark " + watermark + " is past the end of the change log");
+        }
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeHeader(out, watermark);
+            long from = FILE_HEADER + watermark - base;
+            while (from < size) {
+                from += channel.transferTo(from, size - from, out);
+            }
+            out.force(true);  // The records it replaces are about to go
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        FileChannel replaced = channel;
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            channel.position(channel.size());
+            base = watermark;
+        } catch (IOException e) {
+            channel = replaced;  // Appends to it would be lost with the unlinked file
+            disable("could not reopen the compacted change log (" + e.getMessage() + ")");
+            return;
+        }
+        try {
+            replaced.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void writeHeader(FileChannel out, long base) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER).order(ORDER).putInt(MAGIC).putInt(VERSION).putLong(base);
+        header.flip();
+        while (header.hasRemaining()) {
+            out.write(header, header.position());
+        }
+    }
+
+    private static long readBase(FileChannel in, Path logFile) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER).order(ORDER);
+        readFully(in, header, 0);
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            throw new IOException(logFile + " is not a change log of this version");
+        }
+        return header.getLong();
+    }
+
+    // Reads every complete record from position `from` on; returns the position after the last one. A torn or
+    // corrupt tail is truncated away so that later appends follow the last good record. Fails if the log does
+    // not cover `from`: it was compacted past it, or is shorter than when the snapshot was taken.
+    static long replay(Path logFile, long from, Consumer<Change> apply) throws IOException {
+        if (!Files.exists(logFile) || Files.size(logFile) < FILE_HEADER) {
+            if (from > 0) {
+                throw new IOException("the change log is shorter than when the snapshot was taken");
+            }
+            return 0;
+        }
+        try (FileChannel in = FileChannel.open(logFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = in.size();
+            long base = readBase(in, logFile);
+            if (from < base) {
+                throw new IOException("the change log was compacted past the snapshot (it starts at " + base
+                        + ", the snapshot at " + from + ")");
+            }
+            if (from > base + size - FILE_HEADER) {
+                throw new IOException("the change log is shorter than when the snapshot was taken");
+            }
+            long position = FILE_HEADER + from - base;
+            ByteBuffer header = ByteBuffer.allocate(HEADER).order(ORDER);
+            ByteBuffer body = ByteBuffer.allocate(4096).order(ORDER);
+            CRC32C crc = new CRC32C();
+            while (position + HEADER <= size) {
+                header.clear();
+                readFully(in, header, position);
+                int length = header.getInt(0);
+                int checksum = header.getInt(4);
+                if (length <= 0 || length > MAX_RECORD || position + HEADER + length > size) {
+                    break;
+                }
+                if (body.capacity() < length) {
+                    body = ByteBuffer.allocate(Integer.highestOneBit(length) * 2).order(ORDER);
+                }
+                body.clear().limit(length);
+                readFully(in, body, position + HEADER);
+                if (LogRecord.checksum(crc, body) != checksum) {
+                    break;
+                }
+                apply.accept(decode(body));
+                position += HEADER + length;
+            }
+            if (position < size) {
+                System.out.println("Change log: dropping " + (size - position) + " bytes of incomplete records at position "
+                        + (base + position - FILE_HEADER));
+                in.truncate(position);
+            }
+            return base + position - FILE_HEADER;
+        }
+    }
+
+    // Fills the buffer from the position on and flips it for reading
+    private static void readFully(FileChannel in, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = in.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of the change log");
+            }
+            position += read;
+        }
+        buffer.flip();
+    }
+
+    private static Change decode(ByteBuffer body) {
+        byte type = body.get();
+        switch (type) {
+            case PROPERTY_ADDED: {
+                boolean apartment = body.getInt() != 0;
+                String address = LogRecord.getString(body);
+                String owner = LogRecord.getString(body);
+                int floor = body.getInt();
+                int petCount = body.getInt();
+                List<String> pets = new ArrayList<>(petCount);
+                for (int i = 0; i < petCount; i++) {
+                    pets.add(LogRecord.getString(body));
+                }
+                return new Change(type, address, owner, apartment, !apartment, floor, 0, 0, 0, pets);
+            }
+            case PET_ADDED:
+            case PET_TYPE_REMOVED:
+                return new Change(type, LogRecord.getString(body), LogRecord.getString(body), false, false, 0, 0, 0, 0,
+                        List.of());
+            case LEASE_ADDED:
+                return new Change(type, LogRecord.getString(body), LogRecord.getString(body), false, false, 0,
+                        body.getInt(), body.getInt(), body.getDouble(), List.of());
+            case LEASES_TERMINATED:
+                return new Change(type, LogRecord.getString(body), null, false, false, 0, 0, 0, 0, List.of());
+            default:
+                throw new IllegalStateException("Unknown change log record type " + type);
+        }
+    }
+}
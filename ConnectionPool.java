@@ -0,0 +1,337 @@
+package org.example;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Bounded JDBC connection pool. Connections handed out are proxies whose close() returns the
+// physical connection to the pool instead of closing it, so existing try-with-resources code keeps working.
+// Each physical connection also keeps its prepared statements (StatementCache) for the next borrower.
+public class ConnectionPool implements AutoCloseable {
+
+    // Opens a new physical connection (DriverManager by default, replaceable for tests)
+    public interface ConnectionFactory {
+        Connection create() throws SQLException;
+    }
+
+    private final String name;
+    private final ConnectionFactory factory;
+    private final int maxSize;
+    private final long maxWaitMillis;
+    private final long idleTimeoutMillis;
+    private final int validationTimeoutSeconds;
+
+    private final Semaphore permits;  // One permit per connection that may be borrowed
+    private final ConcurrentLinkedDeque<PooledEntry> idle = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong evictedCount = new AtomicLong();
+    private volatile boolean closed = false;
+    private final Metrics.Operation acquireMetric;  // Time to hand out a connection, including waiting and validation
+
+    public ConnectionPool(String name, String url, String user, String password,
+                          int maxSize, long maxWaitMillis, long idleTimeoutMillis) {
+        this(name, () -> DriverManager.getConnection(url, user, password), maxSize, maxWaitMillis, idleTimeoutMillis);
+    }
+
+    public ConnectionPool(String name, ConnectionFactory factory, int maxSize, long maxWaitMillis, long idleTimeoutMillis) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Pool size must be positive.");
+        }
+        this.name = name;
+        this.factory = factory;
+        this.maxSize = maxSize;
+        this.maxWaitMillis = maxWaitMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.validationTimeoutSeconds = 2;
+        this.permits = new Semaphore(maxSize, true);  // Fair so waiting callers are served in order
+        this.acquireMetric = Metrics.operation("pool." + name + ".acquire");
+        Metrics.gauge("pool_" + name + "_active", active::get);
+        Metrics.gauge("pool_" + name + "_idle", idle::size);
+        Metrics.gauge("pool_" + name + "_waiters", permits::getQueueLength);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // Borrow a connection, waiting at most maxWaitMillis for one to become free
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool '" + name + "' is closed.");
+        }
+
+        long started = acquireMetric.start();
+        long waitStart = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+                timeoutCount.incrementAndGet();
+                acquireMetric.failure(started);
+                throw new SQLException("Timed out after " + maxWaitMillis + " ms waiting for a connection from pool '" + name + "'.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquireMetric.failure(started);
+            throw new SQLException("Interrupted while waiting for a connection from pool '" + name + "'.", e);
+        }
+        recordWait(System.nanoTime() - waitStart);
+
+        try {
+            PooledEntry entry = takeValidIdle();
+            if (entry == null) {
+                entry = new PooledEntry(factory.create());
+                createdCount.incrementAndGet();
+            }
+            active.incrementAndGet();
+            borrowCount.incrementAndGet();
+            Connection leased = entry.lease(this);
+            acquireMetric.success(started, 0);
+            return leased;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();  // Creation failed, give the slot back
+            acquireMetric.failure(started);
+            throw e;
+        }
+    }
+
+    // Validation-on-borrow: skip (and close) idle connections that have gone stale or timed out
+    private PooledEntry takeValidIdle() {
+        PooledEntry entry;
+        while ((entry = idle.pollFirst()) != null) {
+            if (isExpired(entry, System.currentTimeMillis())) {
+                discard(entry);
+                continue;
+            }
+            try {
+                if (entry.physical.isValid(validationTimeoutSeconds)) {
+                    return entry;
+                }
+            } catch (SQLException e) {
+                // Treat as invalid
+            }
+            discard(entry);
+        }
+        return null;
+    }
+
+    // Called by the proxy when the caller closes its connection
+    void release(PooledEntry entry) {
+        active.decrementAndGet();
+        try {
+            if (closed || entry.physical.isClosed()) {
+                discard(entry);
+            } else {
+                entry.reset();
+                entry.lastUsed = System.currentTimeMillis();
+                idle.offerFirst(entry);  // LIFO keeps the hot connections hot and lets the cold ones expire
+            }
+        } catch (SQLException e) {
+            discard(entry);
+        } finally {
+            permits.release();
+        }
+    }
+
+    // Close idle connections that have not been used within idleTimeoutMillis
+    public int evictIdle() {
+        long now = System.currentTimeMillis();
+        int evicted = 0;
+        Iterator<PooledEntry> it = idle.descendingIterator();  // Oldest entries sit at the tail
+        while (it.hasNext()) {
+            PooledEntry entry = it.next();
+            if (isExpired(entry, now) && idle.removeLastOccurrence(entry)) {
+                discard(entry);
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    private boolean isExpired(PooledEntry entry, long now) {
+        return idleTimeoutMillis > 0 && now - entry.lastUsed > idleTimeoutMillis;
+    }
+
+    private void discard(PooledEntry entry) {
+        evictedCount.incrementAndGet();
+        entry.statements.closeAll();
+        try {
+            entry.physical.close();
+        } catch (SQLException e) {
+            // Nothing more to do with a broken connection
+        }
+    }
+
+    private void recordWait(long nanos) {
+        totalWaitNanos.addAndGet(nanos);
+        long current;
+        while (nanos > (current = maxWaitNanos.get()) && !maxWaitNanos.compareAndSet(current, nanos)) {
+            // retry
+        }
+    }
+
+    public Stats getStats() {
+        return new Stats(name, maxSize, active.get(), idle.size(), borrowCount.get(), totalWaitNanos.get(),
+                maxWaitNanos.get(), timeoutCount.get(), createdCount.get(), evictedCount.get());
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        List<PooledEntry> drained = new ArrayList<>();
+        PooledEntry entry;
+        while ((entry = idle.pollFirst()) != null) {
+            drained.add(entry);
+        }
+        drained.forEach(this::discard);
+    }
+
+    // Point-in-time view of the pool counters
+    public static class Stats {
+        private final String pool;
+        private final int maxSize;
+        private final int active;
+        private final int idle;
+        private final long borrows;
+        private final long totalWaitNanos;
+        private final long maxWaitNanos;
+        private final long timeouts;
+        private final long created;
+        private final long evicted;
+
+        Stats(String pool, int maxSize, int active, int idle, long borrows, long totalWaitNanos,
+                long maxWaitNanos, long timeouts, long created, long evicted) {
+            this.pool = pool;
+            this.maxSize = maxSize;
+            this.active = active;
+            this.idle = idle;
+            this.borrows = borrows;
+            this.totalWaitNanos = totalWaitNanos;
+            this.maxWaitNanos = maxWaitNanos;
+            this.timeouts = timeouts;
+            this.created = created;
+            this.evicted = evicted;
+        }
+
+        public String getPool() { return pool; }
+        public int getMaxSize() { return maxSize; }
+        public int getActive() { return active; }
+        public int getIdle() { return idle; }
+        public long getBorrows() { return borrows; }
+        public long getTimeouts() { return timeouts; }
+        public long getCreated() { return created; }
+        public long getEvicted() { return evicted; }
+        public long getTotalWaitNanos() { return totalWaitNanos; }
+        public long getMaxWaitNanos() { return maxWaitNanos; }
+
+        public double getAverageWaitMillis() {
+            return borrows == 0 ? 0.0 : totalWaitNanos / 1_000_000.0 / borrows;
+        }
+
+        @Override
+        public String toString() {
+            return "Pool{" +
+                    "name='" + pool + '\'' +
+                    ", active=" + active +
+                    ", idle=" + idle +
+                    ", max=" + maxSize +
+                    ", borrows=" + borrows +
+                    ", avgWaitMs=" + String.format("%.3f", getAverageWaitMillis()) +
+                    ", maxWaitMs=" + String.format("%.3f", maxWaitNanos / 1_000_000.0) +
+                    ", timeouts=" + timeouts +
+                    ", created=" + created +
+                    ", evicted=" + evicted +
+                    '}';
+        }
+    }
+
+    // A physical connection plus the bookkeeping the pool needs for it
+    static class PooledEntry {
+        final Connection physical;
+        final StatementCache statements;
+        volatile long lastUsed = System.currentTimeMillis();
+
+        PooledEntry(Connection physical) {
+            this.physical = physical;
+            this.statements = new StatementCache(physical);
+        }
+
+        Connection lease(ConnectionPool pool) {
+            return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new LeasedConnection(pool, this));
+        }
+
+        // Undo anything a borrower may have changed so the next borrower gets a clean connection
+        void reset() throws SQLException {
+            statements.releaseAll();
+            if (!physical.getAutoCommit()) {
+                physical.rollback();
+                physical.setAutoCommit(true);
+            }
+            physical.clearWarnings();
+        }
+    }
+
+    // Proxy handler: close() hands the connection back, everything else goes to the physical connection
+    private static class LeasedConnection implements InvocationHandler {
+        private final ConnectionPool pool;
+        private final PooledEntry entry;
+        private final AtomicBoolean returned = new AtomicBoolean();  // close() may race from another thread
+
+        LeasedConnection(ConnectionPool pool, PooledEntry entry) {
+            this.pool = pool;
+            this.entry = entry;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (returned.compareAndSet(false, true)) {  // Only the first close returns the connection
+                        pool.release(entry);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned.get() || entry.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled[" + pool.name + "]" + entry.physical;
+                default:
+                    if (returned.get()) {
+                        throw new SQLException("Connection has already been returned to pool '" + pool.name + "'.");
+                    }
+                    if (method.getName().equals("prepareStatement")) {
+                        PreparedStatement statement = entry.statements.prepare((Connection) proxy, method, args);
+                        if (statement != null) {
+                            return statement;
+                        }
+                    }
+                    try {
+                        return method.invoke(entry.physical, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+    }
+}
@@ -1,27 +1,92 @@
 package org.example;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class DatabaseConnection {
-    private static final String URL = "jdbc:mysql://localhost:3306/property_management"; // Your database URL
+    private static final String URL = "jdbc:mysql://localhost:3306/property_management?useCursorFetch=true&rewriteBatchedStatements=true&useServerPrepStmts=true"; // Your database URL (cursor fetch for streaming, multi-row batch inserts, server-side prepared statements)
     private static final String ADMIN_USER = "admin_user";  // Admin MySQL username
     private static final String ADMIN_PASSWORD = "admin_password";  // Admin password
     private static final String TENANT_USER = "tenant_user";  // Tenant MySQL username
     private static final String TENANT_PASSWORD = "tenant_password";  // Tenant password
 
+    // Pool sizing, overridable with -Dpool.admin.size=... etc.
+    private static final int ADMIN_POOL_SIZE = Integer.getInteger("pool.admin.size", 10);
+    private static final int TENANT_POOL_SIZE = Integer.getInteger("pool.tenant.size", 20);
+    private static final long MAX_WAIT_MILLIS = Long.getLong("pool.maxWaitMillis", 5_000L);
+    private static final long IDLE_TIMEOUT_MILLIS = Long.getLong("pool.idleTimeoutMillis", 300_000L);
+    private static final long EVICTION_INTERVAL_MILLIS = 30_000L;
+
+    private static ConnectionPool adminPool;
+    private static ConnectionPool tenantPool;
+    private static ScheduledExecutorService evictor;
+
+    // Point the pools at a different database, e.g. an embedded in-memory one for tests
+    public static synchronized void configure(String url, String adminUser, String adminPassword,
+                                              String tenantUser, String tenantPassword) {
+        shutdown();
+        adminPool = new ConnectionPool("admin", url, adminUser, adminPassword, ADMIN_POOL_SIZE, MAX_WAIT_MILLIS, IDLE_TIMEOUT_MILLIS);
+        tenantPool = new ConnectionPool("tenant", url, tenantUser, tenantPassword, TENANT_POOL_SIZE, MAX_WAIT_MILLIS, IDLE_TIMEOUT_MILLIS);
+        evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "pool-evictor");
+            thread.setDaemon(true);  // Never keep the JVM alive just for eviction
+            return thread;
+        });
+        evictor.scheduleWithFixedDelay(() -> {
+            adminPool.evictIdle();
+            tenantPool.evictIdle();
+        }, EVICTION_INTERVAL_MILLIS, EVICTION_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public static synchronized ConnectionPool getAdminPool() {
+        if (adminPool == null) {
+            configure(URL, ADMIN_USER, ADMIN_PASSWORD, TENANT_USER, TENANT_PASSWORD);
+        }
+        return adminPool;
+    }
+
+    public static synchronized ConnectionPool getTenantPool() {
+        if (tenantPool == null) {
+            configure(URL, ADMIN_USER, ADMIN_PASSWORD, TENANT_USER, TENANT_PASSWORD);
+        }
+        return tenantPool;
+    }
+
     // Admin connection
     public static Connection getAdminConnection() throws Exception {
-        return DriverManager.getConnection(URL, ADMIN_USER, ADMIN_PASSWORD);
+        return getAdminPool().getConnection();
     }
 
     // Tenant connection
     public static Connection getTenantConnection() throws Exception {
-        return DriverManager.getConnection(URL, TENANT_USER, TENANT_PASSWORD);
+        return getTenantPool().getConnection();
     }
 
     // Generic connection (if needed for future compatibility)
     public static Connection getConnection() throws Exception {
-        return DriverManager.getConnection(URL, ADMIN_USER, ADMIN_PASSWORD);
+        return getAdminPool().getConnection();
+    }
+
+    // One line per pool with active/idle counts and wait times
+    public static String poolStats() {
+        return getAdminPool().getStats() + System.lineSeparator() + getTenantPool().getStats();
+    }
+
+    // Close all pooled connections (called on exit)
+    public static synchronized void shutdown() {
+        if (evictor != null) {
+            evictor.shutdownNow();
+            evictor = null;
+        }
+        if (adminPool != null) {
+            adminPool.close();
+            adminPool = null;
+        }
+        if (tenantPool != null) {
+            tenantPool.close();
+            tenantPool = null;
+        }
     }
 }
@@ -1,59 +1,69 @@
 //class B
 package org.example;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
-import java.util.HashMap;
-import java.util.Map;
 
 public class House implements IProperty, Comparable<House>, Serializable {
     private Person owner;          // The owner of the house
-    private Pet[] pets;            // An array of pets associated with the house
-    private String address;        // Address of the house
+    private transient short[] petCodes;  // Pet type codes (PetTypeDictionary), one per pet
+    private Address address;       // Address of the house (street number parsed once)
     private boolean isGround;      // Indicates if it's a ground-level house
+    private transient PetHistogram petHistogram;  // Built lazily by petHistogram()
 
     // Constructor to initialize the owner, pets, address, and ground status
     public House(Person owner, Pet[] pets, String address, boolean isGround) {
+        this(owner, PetTypeDictionary.encode(pets), Address.of(address), isGround);
+    }
+
+    // Used by the loaders, which read pet type codes directly
+    House(Person owner, short[] petCodes, Address address, boolean isGround) {
         this.owner = owner;
-        this.pets = pets;
+        this.petCodes = petCodes;
         this.address = address;
         this.isGround = isGround;
     }
 
     @Override
     public String getDescription() {
-        StringBuilder petDescription = new StringBuilder();
-        Map<String, Integer> petCount = new HashMap<>();
-
-        // Count pets by type
-        for (Pet pet : pets) {
-            petCount.put(pet.getPetType(), petCount.getOrDefault(pet.getPetType(), 0) + 1);
+        StringBuilder description = new StringBuilder(96);
+        try {
+            describeTo(description);
+        } catch (IOException e) {
+            throw new AssertionError(e);  // StringBuilder does not throw
         }
+        return description.toString();
+    }
 
-        // Format pet description
-        for (Map.Entry<String, Integer> entry : petCount.entrySet()) {
-            petDescription.append(entry.getValue()).append(" ").append(entry.getKey());
-            if (entry.getValue() > 1) petDescription.append("s"); // Pluralize if more than one
-            petDescription.append(", ");
-        }
+    // Writes the description straight into out, without building intermediate Strings
+    @Override
+    public void describeTo(Appendable out) throws IOException {
+        String ownerName = owner.getName();
+        out.append("The house on ").append(address.getValue()).append(" is owned by ").append(ownerName).append(". ")
+                .append(isGround ? "It is on ground level" : "It is not on ground level").append(". ")
+                .append(ownerName).append(" has ");
+        petHistogram().appendTo(out);
+        out.append('.');
+    }
 
-        // Remove the trailing comma and space
-        if (petDescription.length() > 0) {
-            petDescription.setLength(petDescription.length() - 2);
-        } else {
-            petDescription.append("no pets");
+    // Pet counts by type, computed on first use (the pet codes are not modified after construction)
+    private PetHistogram petHistogram() {
+        PetHistogram histogram = petHistogram;
+        if (histogram == null) {
+            histogram = PetHistogram.of(petCodes);
+            petHistogram = histogram;
         }
-
-        return "The house on " + address + " is owned by " + owner.getName() + ". "
-                + (isGround ? "It is on ground level" : "It is not on ground level") + ". "
-                + owner.getName() + " has " + petDescription.toString() + ".";
+        return histogram;
     }
 
     // Helper method to get pet names as a string (not used in the main description method)
     private String getPetNames() {
         StringBuilder petNames = new StringBuilder();
-        for (int i = 0; i < pets.length; i++) {
-            petNames.append(pets[i].getPetType());
-            if (i < pets.length - 1) {
+        for (int i = 0; i < petCodes.length; i++) {
+            petNames.append(PetTypeDictionary.name(petCodes[i]));
+            if (i < petCodes.length - 1) {
                 petNames.append(", "); // Add comma for all but the last pet
             }
         }
@@ -66,6 +76,11 @@ public class House implements IProperty, Comparable<House>, Serializable {
 
     @Override
     public String getAddress() {
+        return address.getValue();
+    }
+
+    @Override
+    public Address getParsedAddress() {
         return address;
     }
 
@@ -81,8 +96,18 @@ public class House implements IProperty, Comparable<House>, Serializable {
         return isGround ? 0 : -1;
     }
 
+    // Shared Pet instances, one per type (see PetTypeDictionary)
     public Pet[] getPets() {
-        return this.pets;  // Return the pets array
+        return PetTypeDictionary.decode(petCodes);
+    }
+
+    @Override
+    public int countPets() {
+        return petCodes.length;
+    }
+
+    short[] getPetCodes() {
+        return petCodes;
     }
 
     // Override toString for easy printing of house details
@@ -92,19 +117,25 @@ public class House implements IProperty, Comparable<House>, Serializable {
                 "owner=" + owner.getName() +
                 ", address='" + address + '\'' +
                 ", isGround=" + isGround +
-                ", numberOfPets=" + pets.length +
+                ", numberOfPets=" + petCodes.length +
                 '}';
     }
 
     // Implementing compareTo based on the starting number of the address
     @Override
     public int compareTo(House other) {
-        // Extract the starting number from each address (before the first space)
-        int num1 = Integer.parseInt(this.address.split(" ")[0]);
-        int num2 = Integer.parseInt(other.address.split(" ")[0]);
+        // Compare based on the street numbers parsed when the address was created
+        return Integer.compare(this.address.getStreetNumber(), other.address.getStreetNumber());
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        PetTypeDictionary.writeCodes(out, petCodes);
+    }
 
-        // Compare based on the extracted numbers
-        return Integer.compare(num1, num2);
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        petCodes = PetTypeDictionary.readCodes(in);
     }
 
 }
@@ -1,7 +1,5 @@
 package org.example;
 
-import java.util.Date;
-
 public interface IContract {
     void terminateContract();
 
@@ -1,8 +1,18 @@
 package org.example;
 
+import java.io.IOException;
+
 public interface IProperty {
     String getDescription(); // Describe the property
+
+    default void describeTo(Appendable out) throws IOException {  // Write the description without an extra String
+        out.append(getDescription());
+    }
     String getAddress();     // Get the address of the property
+
+    default Address getParsedAddress() {  // Parsed form of getAddress(), for lookups and sorting
+        return Address.of(getAddress());
+    }
     boolean isGround();      // Check if the property is a ground-level house or apartment
     int getFloor();          // Get the floor number (applicable for apartments)
 
@@ -12,4 +22,8 @@ public interface IProperty {
     }
 
     Pet[] getPets();
+
+    default int countPets() {  // Number of pets, without materialising the array where possible
+        return getPets().length;
+    }
 }
@@ -1,37 +1,54 @@
 //class D
 package org.example;
-import java.util.Date;
 import java.io.Serializable;
+import java.time.LocalDate;
 
 public class Lease implements IContract, Serializable {
     private String tenantName;
-    private Date startDate;
-    private Date endDate;
+    private int startDay;  // Epoch days, see LeaseDates
+    private int endDay;
     private double monthlyRent;
-    private String propertyAddress;
+    private Address propertyAddress;
     private boolean isTerminated = true;
     private String propertyType;
 
 
-    public Lease(String tenantName, Date startDate, Date endDate, double monthlyRent, String propertyAddress) {
+    public Lease(String tenantName, int startDay, int endDay, double monthlyRent, String propertyAddress) {
+        this(tenantName, startDay, endDay, monthlyRent, Address.of(propertyAddress));
+    }
+
+    // Used by PortfolioSnapshot, which shares the Address of the leased property
+    Lease(String tenantName, int startDay, int endDay, double monthlyRent, Address propertyAddress) {
         this.tenantName = tenantName;
-        this.startDate = startDate;
-        this.endDate = endDate;
+        this.startDay = startDay;
+        this.endDay = endDay;
         this.monthlyRent = monthlyRent;
         this.propertyAddress = propertyAddress;
         this.propertyType = propertyType;
     }
 
+    public Lease(String tenantName, LocalDate startDate, LocalDate endDate, double monthlyRent, String propertyAddress) {
+        this(tenantName, LeaseDates.of(startDate), LeaseDates.of(endDate), monthlyRent, propertyAddress);
+    }
+
     public String getTenantName() {
         return tenantName;
     }
 
-    public Date getStartDate() {
-        return startDate;
+    public int getStartDay() {
+        return startDay;
+    }
+
+    public int getEndDay() {
+        return endDay;
+    }
+
+    public LocalDate getStartDate() {
+        return LeaseDates.toLocalDate(startDay);
     }
 
-    public Date getEndDate() {
-        return endDate;
+    public LocalDate getEndDate() {
+        return LeaseDates.toLocalDate(endDay);
     }
 
     public double getMonthlyRent() {
@@ -39,6 +56,10 @@ public class Lease implements IContract, Serializable {
     }
 
     public String getPropertyAddress() {
+        return propertyAddress.getValue();
+    }
+
+    public Address getParsedAddress() {
         return propertyAddress;
     }
 
@@ -58,8 +79,8 @@ public class Lease implements IContract, Serializable {
     public String toString() {
         return "Lease{" +
                 "tenantName='" + tenantName + '\'' +
-                ", startDate=" + startDate +
-                ", endDate=" + endDate +
+                ", startDate=" + LeaseDates.format(startDay) +
+                ", endDate=" + LeaseDates.format(endDay) +
                 ", monthlyRent=" + monthlyRent +
                 ", isTerminated=" + isTerminated +
                 '}';
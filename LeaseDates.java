@@ -0,0 +1,117 @@
+package org.example;
+
+import java.text.ParseException;
+import java.time.LocalDate;
+
+// Lease dates as epoch days (days since 1970-01-01, the same numbers as LocalDate.toEpochDay), so comparing
+// and overlapping leases and measuring their length is plain int arithmetic.
+// parseEpochDay reads strict yyyy-MM-dd without allocating and without shared state, so it is safe from the
+// task executor and the tenant server. Unlike the lenient SimpleDateFormat it replaces, out-of-range fields
+// such as 2024-13-01 or 2023-02-29 are rejected instead of rolled over into the next month or year.
+public class LeaseDates {
+    public static final int INVALID = Integer.MIN_VALUE;  // parseEpochDay result for anything that is not a date
+
+    private static final int DAYS_0000_TO_1970 = 719_528;
+
+    // Epoch day of a yyyy-MM-dd date (leading and trailing whitespace is ignored), or INVALID
+    public static int parseEpochDay(CharSequence text) {
+        if (text == null) {
+            return INVALID;
+        }
+        int from = 0;
+        int to = text.length();
+        while (from < to && Character.isWhitespace(text.charAt(from))) {
+            from++;
+        }
+        while (to > from && Character.isWhitespace(text.charAt(to - 1))) {
+            to--;
+        }
+        if (to - from != 10 || text.charAt(from + 4) != '-' || text.charAt(from + 7) != '-') {
+            return INVALID;
+        }
+        int year = digits(text, from, 4);
+        int month = digits(text, from + 5, 2);
+        int day = digits(text, from + 8, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)) {
+            return INVALID;  // digits() returns -1 for a non-digit, which fails these checks too
+        }
+        return epochDay(year, month, day);
+    }
+
+    // parseEpochDay for user input: the menu reports a ParseException as "please use yyyy-MM-dd"
+    public static int parse(String text) throws ParseException {
+        int epochDay = parseEpochDay(text);
+        if (epochDay == INVALID) {
+            throw new ParseException("Invalid date provided. Please check the date format and ensure it is a valid date.", 0);
+        }
+        return epochDay;
+    }
+
+    // Days since 1970-01-01 of a valid proleptic Gregorian date (the algorithm LocalDate.toEpochDay uses)
+    public static int epochDay(int year, int month, int day) {
+        long total = 365L * year;
+        if (year >= 0) {
+            total += (year + 3) / 4 - (year + 99) / 100 + (year + 399) / 400;
+        } else {
+            total -= year / -4 - year / -100 + year / -400;
+        }
+        total += (367 * month - 362) / 12;
+        total += day - 1;
+        if (month > 2) {
+            total -= isLeapYear(year) ? 1 : 2;
+        }
+        return (int) (total - DAYS_0000_TO_1970);
+    }
+
+    public static boolean isLeapYear(int year) {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    public static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return isLeapYear(year) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    public static int of(LocalDate date) {
+        return Math.toIntExact(date.toEpochDay());
+    }
+
+    public static LocalDate toLocalDate(int epochDay) {
+        return LocalDate.ofEpochDay(epochDay);
+    }
+
+    // For the DATE columns; java.sql.Date.valueOf(LocalDate) does not shift the day with the JVM time zone
+    public static java.sql.Date toSqlDate(int epochDay) {
+        return java.sql.Date.valueOf(toLocalDate(epochDay));
+    }
+
+    public static int fromSqlDate(java.sql.Date date) {
+        return of(date.toLocalDate());
+    }
+
+    public static String format(int epochDay) {
+        return toLocalDate(epochDay).toString();  // yyyy-MM-dd for years 0000-9999
+    }
+
+    // Non-negative value of `count` digits at `from`, or -1 if any of them is not an ASCII digit
+    private static int digits(CharSequence text, int from, int count) {
+        int value = 0;
+        for (int i = from; i < from + count; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,114 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Per-property index of leased date ranges, used to reject overlapping leases.
+// For each property the index keeps the union of its leases as disjoint [start, end] intervals (inclusive,
+// in epoch days, see LeaseDates) sorted by start. Because they are disjoint, only the interval starting closest before the
+// new lease's end can overlap it, so a check is a single TreeMap.floorEntry lookup: O(log n).
+public class LeaseIntervalIndex {
+    private final Map<String, TreeMap<Integer, Integer>> byProperty = new HashMap<>();
+
+    // Build an index from existing leases (overlaps that are already in the database are merged, not rejected)
+    public static LeaseIntervalIndex of(Collection<Lease> leases) {
+        LeaseIntervalIndex index = new LeaseIntervalIndex();
+        for (Lease lease : leases) {
+            index.merge(lease.getParsedAddress().getKey(), lease.getStartDay(), lease.getEndDay());
+        }
+        return index;
+    }
+
+    public synchronized boolean overlaps(String propertyAddress, int start, int end) {
+        TreeMap<Integer, Integer> intervals = byProperty.get(key(propertyAddress));
+        if (intervals == null) {
+            return false;
+        }
+        Map.Entry<Integer, Integer> candidate = intervals.floorEntry(end);
+        return candidate != null && candidate.getValue() >= start;
+    }
+
+    // Throws if the range overlaps an existing lease on the same property
+    public synchronized void checkAvailable(String propertyAddress, int start, int end) throws OverlappingLeaseException {
+        if (end < start) {
+            throw new IllegalArgumentException("Lease end date must not be before the start date.");
+        }
+        if (overlaps(propertyAddress, start, end)) {
+            throw new OverlappingLeaseException("The property " + propertyAddress + " is already leased for part of this period.");
+        }
+    }
+
+    // checkAvailable and add as one step, so two concurrent lease entries cannot both get the same dates
+    public synchronized void reserve(String propertyAddress, int start, int end) throws OverlappingLeaseException {
+        checkAvailable(propertyAddress, start, end);
+        add(propertyAddress, start, end);
+    }
+
+    // Record a lease that has been checked with checkAvailable and written to the database
+    public synchronized void add(String propertyAddress, int start, int end) {
+        merge(key(propertyAddress), start, end);
+    }
+
+    // Undo add() or reserve() for a lease the database did not take (a failed insert, or a queued lease that
+    // the WriteJournal's writer rejected). A checked lease never overlaps another, so add() stored its range
+    // as is; if the range has since been removed with its property, there is nothing to undo.
+    public synchronized void remove(String propertyAddress, int start, int end) {
+        String key = key(propertyAddress);
+        TreeMap<Integer, Integer> intervals = byProperty.get(key);
+        if (intervals != null && intervals.remove(start, end) && intervals.isEmpty()) {
+            byProperty.remove(key);
+        }
+    }
+
+    // terminateLease removes every lease on the property
+    public synchronized void removeProperty(String propertyAddress) {
+        byProperty.remove(key(propertyAddress));
+    }
+
+    private void merge(String key, int start, int end) {
+        TreeMap<Integer, Integer> intervals = byProperty.computeIfAbsent(key, k -> new TreeMap<>());
+        // Absorb every interval that touches [start, end]
+        Map.Entry<Integer, Integer> entry = intervals.floorEntry(end);
+        while (entry != null && entry.getValue() >= start) {
+            start = Math.min(start, entry.getKey());
+            end = Math.max(end, entry.getValue());
+            intervals.remove(entry.getKey());
+            entry = intervals.floorEntry(end);
+        }
+        intervals.put(start, end);
+    }
+
+    private static String key(String propertyAddress) {
+        return Address.normalize(propertyAddress);  // Same key as Address.getKey(), without interning an Address
+    }
+
+    // Portfolio-wide report in O(n log n): sort by (property, start) and sweep once per property.
+    // Every lease that overlaps an earlier lease on the same property is reported once, paired with the
+    // earlier lease that reaches furthest (listing every overlapping pair could be quadratic).
+    public static List<Lease[]> findAllOverlaps(Collection<Lease> leases) {
+        List<Lease> sorted = new ArrayList<>(leases);
+        sorted.sort(Comparator.comparing((Lease lease) -> lease.getParsedAddress().getKey())
+                .thenComparingInt(Lease::getStartDay));
+
+        List<Lease[]> overlaps = new ArrayList<>();
+        Lease reach = null;  // Lease with the latest end date seen so far on the current property
+        for (Lease lease : sorted) {
+            if (reach == null || !reach.getParsedAddress().equals(lease.getParsedAddress())) {
+                reach = lease;
+                continue;
+            }
+            if (lease.getStartDay() <= reach.getEndDay()) {
+                overlaps.add(new Lease[]{reach, lease});
+            }
+            if (lease.getEndDay() > reach.getEndDay()) {
+                reach = lease;
+            }
+        }
+        return overlaps;
+    }
+}
@@ -0,0 +1,100 @@
+package org.example;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32C;
+
+// The record framing shared by ChangeLog and WriteJournal: body length (int), CRC32C of the body (int), then
+// the body, little-endian. Strings are an unsigned short length and UTF-8 bytes.
+// A record is built in a heap buffer; the body may start with a fixed-size prefix (WriteJournal's sequence
+// number) that is filled in with putLong once it is known, before seal() writes the length and checksum.
+final class LogRecord {
+    static final int HEADER = 8;
+    static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    private ByteBuffer buffer = ByteBuffer.allocate(128).order(ORDER);
+    private String tooLong;  // Reported by the caller, inside its own error handling
+
+    LogRecord(byte type) {
+        this(0, type);
+    }
+
+    LogRecord(int prefix, byte type) {
+        buffer.position(HEADER + prefix);
+        buffer.put(type);
+    }
+
+    LogRecord put(int value) {
+        ensure(4).putInt(value);
+        return this;
+    }
+
+    LogRecord put(long value) {
+        ensure(8).putLong(value);
+        return this;
+    }
+
+    LogRecord put(double value) {
+        ensure(8).putDouble(value);
+        return this;
+    }
+
+    LogRecord put(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            tooLong = bytes.length + "-byte value";
+            return this;
+        }
+        ensure(2 + bytes.length).putShort((short) bytes.length).put(bytes);
+        return this;
+    }
+
+    // Writes into the body prefix; index counts from the start of the record
+    void putLong(int index, long value) {
+        buffer.putLong(index, value);
+    }
+
+    private ByteBuffer ensure(int bytes) {
+        if (buffer.remaining() < bytes) {
+            int capacity = Math.max(buffer.capacity() * 2, buffer.position() + bytes);
+            ByteBuffer grown = ByteBuffer.allocate(capacity).order(ORDER);
+            buffer.flip();
+            grown.put(buffer);
+            buffer = grown;
+        }
+        return buffer;
+    }
+
+    // Description of a string that did not fit, or null
+    String getTooLong() {
+        return tooLong;
+    }
+
+    int size() {  // Until sealed
+        return buffer.position();
+    }
+
+    // Fills in the length and checksum; returns the whole record, ready to be written. Only call once.
+    ByteBuffer seal() {
+        int length = buffer.position() - HEADER;
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.array(), HEADER, length);
+        buffer.putInt(0, length).putInt(4, (int) crc.getValue());
+        buffer.flip();
+        return buffer;
+    }
+
+    // CRC32C of the body's remaining bytes, leaving its position alone
+    static int checksum(CRC32C crc, ByteBuffer body) {
+        crc.reset();
+        crc.update(body.duplicate());
+        return (int) crc.getValue();
+    }
+
+    static String getString(ByteBuffer body) {
+        byte[] bytes = new byte[Short.toUnsignedInt(body.getShort())];
+        body.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
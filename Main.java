@@ -2,8 +2,13 @@ package org.example;
 
 import java.util.concurrent.*;
 import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -11,15 +16,46 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 
 public class Main {
-    // Thread pool for parallel tasks
-    private static final ExecutorService executorService = Executors.newFixedThreadPool(8);
+    // Queries shared by several methods; pooled connections prepare each once (see StatementRegistry)
+    static final String PET_ID_BY_TYPE = StatementRegistry.named("pet.idByType", "SELECT id FROM Pet WHERE type = ?");
+    static final String PET_ID_BY_TYPE_LOCKED = StatementRegistry.named("pet.idByTypeLocked", "SELECT id FROM Pet WHERE type = ? FOR UPDATE");
+    static final String INSERT_PET_TYPE = StatementRegistry.named("pet.insertType", "INSERT INTO Pet (type) VALUES (?)");
+    static final String LINK_PET_TO_PROPERTY = StatementRegistry.named("pet.linkToProperty",
+            "INSERT INTO PropertyPet (property_id, pet_id) VALUES ((SELECT id FROM Property WHERE address_key = ? LIMIT 1), ?)");
+    static final String PERSON_ID_BY_NAME = StatementRegistry.named("person.idByName", "SELECT id FROM Person WHERE name = ?");
+    static final String INSERT_PERSON = StatementRegistry.named("person.insert", "INSERT INTO Person (name) VALUES (?)");
+    static final String DELETE_LEASES = StatementRegistry.named("lease.deleteForProperty",
+            "DELETE FROM Lease WHERE property_id = (SELECT id FROM Property WHERE address_key = ?)");
+    static final String LEASE_DATES_FOR_PROPERTY = StatementRegistry.named("lease.datesForProperty",
+            "SELECT startDate, endDate FROM Lease WHERE property_id = (SELECT id FROM Property WHERE address_key = ?)");
+    static final String INSERT_LEASE = StatementRegistry.named("lease.insert",
+            "INSERT INTO Lease (tenant_id, property_id, startDate, endDate, monthlyRent) VALUES ((SELECT id FROM Person WHERE name = ?), (SELECT id FROM Property WHERE address_key = ?), ?, ?, ?)");
+    static final String INSERT_PROPERTY = StatementRegistry.named("property.insert",
+            "INSERT INTO Property (address, owner_id, floor, isGround, type, address_key) VALUES (?, ?, ?, ?, ?, ?)");
+    static final String ADDRESS_EXISTS = StatementRegistry.named("property.addressExists",
+            "SELECT COUNT(*) AS count FROM Property WHERE address_key = ?");
+
+    // Counted down once runCommand has closed everything, which serve()'s shutdown hook waits for
+    private static final CountDownLatch commandFinished = new CountDownLatch(1);
+
+    // Timings of the data-access methods (recorded only with -Dmetrics.enabled=true, see Metrics)
+    private static final Metrics.Operation TERMINATE_LEASE = Metrics.operation("main.terminateLease");
+    private static final Metrics.Operation ADDRESS_LOOKUP = Metrics.operation("main.queryAddressExists");
+    private static final Metrics.Operation SORT_BY_FLOOR = Metrics.operation("main.sortPropertiesByFloor");
+    private static final Metrics.Operation LOAD_PERSONS = Metrics.operation("main.getAllPersons");
+    private static final Metrics.Operation LOAD_PROPERTIES = Metrics.operation("main.getAllProperties");
+    private static final Metrics.Operation LOAD_LEASES = Metrics.operation("main.getAllLeases");
+    private static final Metrics.Operation ADD_PERSON = Metrics.operation("main.addPersonToDatabase");
+    private static final Metrics.Operation ADD_PET = Metrics.operation("main.addPetToDatabase");
+    private static final Metrics.Operation ADD_PROPERTY = Metrics.operation("main.addPropertyToDatabase");
+    private static final Metrics.Operation ADD_LEASE = Metrics.operation("main.addLeaseToDatabase");
 
     // Parallelized pet counting function
-    public static Future<Integer> countPetsAsync(IProperty property) {
-        return executorService.submit(() -> {
+    public static CompletableFuture<Integer> countPetsAsync(IProperty property) {
+        return TaskEngine.supply(() -> {
             //System.out.println(Thread.currentThread().getName() + " is processing " + property.getAddress());
             if (property instanceof House) {
-                return ((House) property).getPets().length;
+                return ((House) property).countPets();
             } else if (property instanceof Apartment) {
                 return ((Apartment) property).countPets();
             }
@@ -27,230 +63,144 @@ public class Main {
         });
     }
 
-    // Parallelized sorting function
-    public static Future<List<IProperty>> sortPropertiesByFloorAsync(List<IProperty> properties) {
-        return executorService.submit(() -> {
-            properties.sort((p1, p2) -> {
-                if (p1 instanceof House && p2 instanceof House) return 0;
-                if (p1 instanceof House) return -1;
-                if (p2 instanceof House) return 1;
-                return Integer.compare(((Apartment) p1).getFloor(), ((Apartment) p2).getFloor());
-            });
-            return properties;
-        });
+    // Parallelized sorting function: houses first (by street number), then apartments by floor
+    public static CompletableFuture<List<IProperty>> sortPropertiesByFloorAsync(List<IProperty> properties) {
+        return TaskEngine.supply(() -> PropertySorter.sort(properties,
+                PropertySorter.Key.TYPE, PropertySorter.Key.FLOOR, PropertySorter.Key.STREET_NUMBER));
     }
 
-    //parallelized function
+    // Group properties by owner name (fork/join over chunks, see OwnerGrouping)
     public static Map<String, List<IProperty>> groupPropertiesByOwner(List<IProperty> properties) {
-        Map<String, List<IProperty>> ownerGroups = new ConcurrentHashMap<>();  // Concurrent for thread safety
-
-        try {
-            // Submit tasks to group properties by owner
-            List<Future<?>> futures = new ArrayList<>();
-            for (IProperty property : properties) {
-                Future<?> future = executorService.submit(() -> {
-                    String ownerName = property instanceof House
-                            ? ((House) property).getOwner().getName()
-                            : ((Apartment) property).getOwner().getName();
-
-                    // Log the processing
-                    System.out.println(Thread.currentThread().getName() + " is processing " + property.getAddress());
-
-                    // Add to the group
-                    ownerGroups.computeIfAbsent(ownerName, k -> new ArrayList<>()).add(property);
-                });
-                futures.add(future);
-            }
-
-            // Ensure all grouping tasks complete
-            for (Future<?> future : futures) {
-                future.get();  // Wait for each task to finish
-            }
-
-            // Sort properties for each owner in parallel
-            List<Future<?>> sortFutures = new ArrayList<>();
-            for (Map.Entry<String, List<IProperty>> entry : ownerGroups.entrySet()) {
-                Future<?> sortFuture = executorService.submit(() -> {
-                    List<IProperty> propertiesForOwner = entry.getValue();
-                    propertiesForOwner.sort((p1, p2) -> {
-                        if (p1 instanceof House && p2 instanceof House) {
-                            return ((House) p1).compareTo((House) p2);  // Sort by address for houses
-                        } else if (p1 instanceof Apartment && p2 instanceof Apartment) {
-                            return ((Apartment) p1).compareTo((Apartment) p2);  // Sort apartments
-                        }
-                        return 0;  // No sorting needed for mixed types
-                    });
-                });
-                sortFutures.add(sortFuture);
-            }
-
-            // Ensure all sorting tasks complete
-            for (Future<?> sortFuture : sortFutures) {
-                sortFuture.get();  // Wait for sorting to finish
-            }
-
-        } catch (InterruptedException | ExecutionException e) {
-            e.printStackTrace();
-        } finally {
-            executorService.shutdown();  // Shutdown thread pool
-        }
-        return ownerGroups;
+        return OwnerGrouping.group(properties);
     }
 
-    // Parallelized Function to count pets by type from the database using PropertyPet table
-    public static Future<Map<String, Integer>> countPetsByTypeAsync() {
-        return executorService.submit(() -> {
-            Map<String, Integer> petCount = new ConcurrentHashMap<>();
-
-            // SQL query to count pets based on types from the PropertyPet table
-            String query = """
-            SELECT pe.type, COUNT(*) AS count 
-            FROM PropertyPet pp
-            JOIN Pet pe ON pp.pet_id = pe.id
-            GROUP BY pe.type
-        """;
-
-            try (Connection connection = DatabaseConnection.getConnection();
-                 PreparedStatement stmt = connection.prepareStatement(query);
-                 ResultSet rs = stmt.executeQuery()) {
-
-                while (rs.next()) {
-                    String petType = rs.getString("type");
-                    int count = rs.getInt("count");
-                    petCount.put(petType, count);  // Add the count for each pet type
-                }
-
+    // Pet counts by type, served from the in-process counters (PetTypeCounters); the database is only
+    // queried when the counters have not been seeded yet
+    public static CompletableFuture<Map<String, Integer>> countPetsByTypeAsync() {
+        if (PetTypeCounters.isSeeded()) {
+            return CompletableFuture.completedFuture(PetTypeCounters.snapshot());
+        }
+        return TaskEngine.supplyDb(TaskEngine.Database.ADMIN, () -> {
+            try {
+                PetTypeCounters.reconcile();
             } catch (SQLException e) {
                 e.printStackTrace();
             }
-
-            return petCount;
+            return PetTypeCounters.snapshot();
         });
     }
 
-    //Parallelized Function to group properties by pet type
-    public static Future<Map<String, List<IProperty>>> groupPropertiesByPetTypeAsync() {
-        return executorService.submit(() -> {
-            Map<String, List<IProperty>> petTypeGroups = new ConcurrentHashMap<>();
-
-            // Query to fetch pet types and corresponding property addresses
-            String query = """
-                SELECT p.address, p.type, p.owner_id, p.floor, p.isGround, pe.type AS petType, o.name AS owner_name
-                FROM Property p
-                JOIN PropertyPet pp ON p.id = pp.property_id
-                JOIN Pet pe ON pp.pet_id = pe.id
-                JOIN Person o ON p.owner_id = o.id
-                """;
-
-            try (Connection connection = DatabaseConnection.getConnection();
-                 PreparedStatement stmt = connection.prepareStatement(query);
-                 ResultSet rs = stmt.executeQuery()) {
-
-                while (rs.next()) {
-                    String address = rs.getString("address");
-                    String petType = rs.getString("petType");
-                    String ownerName = rs.getString("owner_name");
-                    String type = rs.getString("type");
-                    int floor = rs.getInt("floor");
-                    boolean isGround = rs.getBoolean("isGround");
-
-                    // Create owner and property
-                    Person owner = new Person(ownerName);
-                    IProperty property;
-                    if ("House".equalsIgnoreCase(type)) {
-                        property = new House(owner, new Pet[]{}, address, isGround);
-                    } else {
-                        property = new Apartment(owner, floor, address, new Pet[]{});
-                    }
-
-                    // Add property to the corresponding pet type group
-                    petTypeGroups.computeIfAbsent(petType, k -> Collections.synchronizedList(new ArrayList<>())).add(property);
-                }
+    //Parallelized Function to group properties by pet type, served from the in-memory PetTypeIndex
+    public static CompletableFuture<Map<String, List<IProperty>>> groupPropertiesByPetTypeAsync() {
+        return TaskEngine.supplyDb(TaskEngine.Database.ADMIN, () -> {
+            try {
+                return PetTypeIndex.get().groupByPetType();
             } catch (SQLException e) {
                 e.printStackTrace();
             }
-
-            return petTypeGroups;
+            return new HashMap<>();
         });
     }
 
+    // Properties that have a pet of every given type, e.g. a Dog and a Cat
+    public static CompletableFuture<List<IProperty>> findPropertiesWithAllPetTypesAsync(String... petTypes) {
+        return TaskEngine.supplyDb(TaskEngine.Database.ADMIN, () -> PetTypeIndex.get().propertiesWithAll(petTypes));
+    }
+
     public static void validateAddress(String address) throws InvalidAddressFormatException {
-        String addressPattern = "^\\d+\\s+[A-Za-z]+$";
-        if (!address.matches(addressPattern)) {
-            throw new InvalidAddressFormatException("Invalid address format. Please enter the address in the format '123 Abc'.");
-        }
+        Address.parse(address);  // Throws for anything that is not in the '123 Abc' format
     }
 
-    public static Date validateAndParseDate(String dateStr) throws ParseException {
-        // First, attempt to parse the date using the specified format
-        try {
-            Date date = dateFormat.parse(dateStr);
-            // Additional date validation logic can be added here if needed (e.g., check for logical validity)
-            return date;
-        } catch (ParseException e) {
-            throw new ParseException("Invalid date provided. Please check the date format and ensure it is a valid date.", 0);
-        }
+    // Strict yyyy-MM-dd to an epoch day (see LeaseDates); thread-safe, so lease entry can run from any thread
+    public static int validateAndParseDate(String dateStr) throws ParseException {
+        return LeaseDates.parse(dateStr);
     }
 
     public static void terminateLease(String propertyAddress) {
-        String query = "DELETE FROM Lease WHERE property_id = (SELECT id FROM Property WHERE address = ?)";
-        try (Connection connection = DatabaseConnection.getConnection();
-             PreparedStatement stmt = connection.prepareStatement(query)) {
-            stmt.setString(1, propertyAddress);
-            int rowsDeleted = stmt.executeUpdate();
+        if (WriteJournal.isOpen()) {
+            if (WriteJournal.leasesTerminated(propertyAddress)) {
+                unindexProperty(propertyAddress);  // Free for new leases at once, like a direct delete
+                System.out.println("Lease termination for property " + propertyAddress + " queued.");
+            }
+            return;
+        }
+        long started = TERMINATE_LEASE.start();
+        try (Connection connection = DatabaseConnection.getConnection()) {
+            int rowsDeleted = deleteLeases(connection, propertyAddress);
+            TERMINATE_LEASE.success(started, rowsDeleted);
+            leasesDeleted(propertyAddress, rowsDeleted);
             if (rowsDeleted > 0) {
                 System.out.println("Lease for property " + propertyAddress + " terminated.");
             } else {
                 System.out.println("No lease found for the provided property address.");
             }
         } catch (Exception e) {
+            TERMINATE_LEASE.failure(started);
             e.printStackTrace();
         }
     }
 
+    static int deleteLeases(Connection connection, String propertyAddress) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(DELETE_LEASES)) {
+            stmt.setString(1, Address.normalize(propertyAddress));
+            return stmt.executeUpdate();
+        }
+    }
+
+    static void leasesDeleted(String propertyAddress, int rowsDeleted) {
+        PortfolioCache.invalidateAll();
+        unindexProperty(propertyAddress);
+        if (rowsDeleted > 0) {
+            ChangeLog.leasesTerminated(propertyAddress);
+        }
+    }
+
     public static boolean isAddressValid(String address) {
-        String query = "SELECT COUNT(*) AS count FROM Property WHERE LOWER(TRIM(address)) = LOWER(TRIM(?))";
+        try {
+            return PortfolioCache.ADDRESSES.get(PortfolioCache.addressKey(address), key -> queryAddressExists(address));
+        } catch (Exception e) {
+            System.out.println("Error validating address: " + e.getMessage());
+            e.printStackTrace();
+        }
 
+        return false;
+    }
+
+    private static boolean queryAddressExists(String address) throws Exception {
+        String query = ADDRESS_EXISTS;  // Indexed normalised address
+
+        long started = ADDRESS_LOOKUP.start();
         try (Connection connection = DatabaseConnection.getConnection();
              PreparedStatement stmt = connection.prepareStatement(query)) {
-            stmt.setString(1, address.trim());
+            stmt.setString(1, Address.normalize(address));
             System.out.println("Checking address: " + address.trim());
             ResultSet rs = stmt.executeQuery();
 
             if (rs.next()) {
                 int count = rs.getInt("count");
+                ADDRESS_LOOKUP.success(started, 1);
                 System.out.println("Address count in database: " + count);
                 return count > 0; // If count > 0, address exists
             }
         } catch (Exception e) {
-            System.out.println("Error validating address: " + e.getMessage());
-            e.printStackTrace();
+            ADDRESS_LOOKUP.failure(started);
+            throw e;
         }
 
+        ADDRESS_LOOKUP.success(started, 0);
         return false;
     }
 
 
     public static void viewAllPetsForTenant(String propertyAddress) {
-        String query = """
-        SELECT pe.type 
-        FROM PropertyPet pp
-        JOIN Pet pe ON pp.pet_id = pe.id
-        JOIN Property p ON pp.property_id = p.id
-        WHERE p.address = ?
-    """;
-
-        try (Connection connection = DatabaseConnection.getConnection();
-             PreparedStatement stmt = connection.prepareStatement(query)) {
-            stmt.setString(1, propertyAddress);
-            ResultSet rs = stmt.executeQuery();
+        try (Connection connection = DatabaseConnection.getConnection()) {
+            List<TenantService.TenantPet> pets = TenantService.listPets(connection, propertyAddress);
 
             System.out.println("\nYour Pets:");
             int count = 0;
-            while (rs.next()) {
+            for (TenantService.TenantPet pet : pets) {
                 count++;
-                String petType = rs.getString("type");
-                System.out.println(count + ". " + petType);
+                System.out.println(count + ". " + pet.getType());
             }
 
             if (count == 0) {
@@ -267,48 +217,18 @@ public class Main {
         System.out.println("Enter the pet type (e.g., Dog, Cat, Bird, etc.):");
         String petType = scanner.nextLine().trim();
 
-        try (Connection connection = DatabaseConnection.getTenantConnection()) {  // Now handled properly
-            int petId = -1;
-
-            // Check if the pet type already exists
-            String getPetIdQuery = "SELECT id FROM Pet WHERE type = ?";
-            try (PreparedStatement getPetIdStmt = connection.prepareStatement(getPetIdQuery)) {
-                getPetIdStmt.setString(1, petType);
-                ResultSet rs = getPetIdStmt.executeQuery();
-                if (rs.next()) {
-                    petId = rs.getInt("id");
-                }
-            }
-
-            // If pet type does not exist, insert new pet type
-            if (petId == -1) {
-                String insertPetQuery = "INSERT INTO Pet (type) VALUES (?)";
-                try (PreparedStatement insertPetStmt = connection.prepareStatement(insertPetQuery)) {
-                    insertPetStmt.setString(1, petType);
-                    insertPetStmt.executeUpdate();
-                }
-
-                // Retrieve the newly inserted pet ID
-                try (PreparedStatement getPetIdStmt = connection.prepareStatement(getPetIdQuery)) {
-                    getPetIdStmt.setString(1, petType);
-                    ResultSet rs = getPetIdStmt.executeQuery();
-                    if (rs.next()) {
-                        petId = rs.getInt("id");
-                    }
-                }
+        if (WriteJournal.isOpen()) {
+            if (WriteJournal.petAdded(propertyAddress, petType)) {
+                System.out.println("Pet added successfully (queued).");
             }
-
-            // Link the pet to the property
-            String linkPetToPropertyQuery = "INSERT INTO PropertyPet (property_id, pet_id) VALUES ((SELECT id FROM Property WHERE address = ? LIMIT 1), ?)";
-            try (PreparedStatement linkStmt = connection.prepareStatement(linkPetToPropertyQuery)) {
-                linkStmt.setString(1, propertyAddress);
-                linkStmt.setInt(2, petId);
-                int rowsAffected = linkStmt.executeUpdate();
-                if (rowsAffected > 0) {
-                    System.out.println("Pet added successfully.");
-                } else {
-                    System.out.println("Failed to add pet. Please check the property address.");
-                }
+            return;
+        }
+        try (Connection connection = DatabaseConnection.getTenantConnection()) {  // Now handled properly
+            // Looks up (or inserts) the pet type and links it to the property
+            if (TenantService.addPet(connection, propertyAddress, petType)) {
+                System.out.println("Pet added successfully.");
+            } else {
+                System.out.println("Failed to add pet. Please check the property address.");
             }
 
         } catch (Exception e) {  // Catching the generic Exception since getTenantConnection throws Exception
@@ -318,28 +238,14 @@ public class Main {
     }
 
     public static void deletePetForTenant(Scanner scanner, String propertyAddress) {
-        String getPetsQuery = """
-        SELECT pe.id, pe.type 
-        FROM PropertyPet pp
-        JOIN Pet pe ON pp.pet_id = pe.id
-        JOIN Property p ON pp.property_id = p.id
-        WHERE p.address = ?
-    """;
-
-        try (Connection connection = DatabaseConnection.getTenantConnection();  // Use tenant connection with proper handling
-             PreparedStatement stmt = connection.prepareStatement(getPetsQuery)) {
-            stmt.setString(1, propertyAddress);
-            ResultSet rs = stmt.executeQuery();
+        try (Connection connection = DatabaseConnection.getTenantConnection()) {  // Use tenant connection with proper handling
+            List<TenantService.TenantPet> pets = TenantService.listPets(connection, propertyAddress);
 
-            List<Integer> petIds = new ArrayList<>();
             System.out.println("\nYour Pets:");
             int count = 0;
-            while (rs.next()) {
+            for (TenantService.TenantPet pet : pets) {
                 count++;
-                int petId = rs.getInt("id");
-                String petType = rs.getString("type");
-                petIds.add(petId);
-                System.out.println(count + ". " + petType);
+                System.out.println(count + ". " + pet.getType());
             }
 
             if (count == 0) {
@@ -356,22 +262,21 @@ public class Main {
                 return;
             }
 
-            if (choice < 1 || choice > petIds.size()) {
+            if (choice < 1 || choice > pets.size()) {
                 System.out.println("Invalid choice.");
                 return;
             }
 
-            int petIdToDelete = petIds.get(choice - 1);
-            String deleteQuery = "DELETE FROM PropertyPet WHERE property_id = (SELECT id FROM Property WHERE address = ?) AND pet_id = ?";
-            try (PreparedStatement deleteStmt = connection.prepareStatement(deleteQuery)) {
-                deleteStmt.setString(1, propertyAddress);
-                deleteStmt.setInt(2, petIdToDelete);
-                int rowsDeleted = deleteStmt.executeUpdate();
-                if (rowsDeleted > 0) {
-                    System.out.println("Pet deleted successfully.");
-                } else {
-                    System.out.println("Failed to delete pet.");
+            if (WriteJournal.isOpen()) {
+                if (WriteJournal.petTypeRemoved(propertyAddress, pets.get(choice - 1).getType())) {
+                    System.out.println("Pet deleted successfully (queued).");
                 }
+                return;
+            }
+            if (TenantService.removePet(connection, propertyAddress, pets.get(choice - 1)) > 0) {
+                System.out.println("Pet deleted successfully.");
+            } else {
+                System.out.println("Failed to delete pet.");
             }
 
         } catch (Exception e) {  // Catching the exception thrown by getTenantConnection
@@ -385,66 +290,30 @@ public class Main {
         double paymentAmount = scanner.nextDouble();
         scanner.nextLine(); // Consume newline
 
-        String checkLeaseQuery = """
-    SELECT l.monthlyRent, l.id, t.name AS tenant_name 
-    FROM Lease l
-    JOIN Person t ON l.tenant_id = t.id
-    WHERE l.property_id = (SELECT id FROM Property WHERE address = ?)
-    """;
-
-        try (Connection connection = DatabaseConnection.getTenantConnection();  // Tenant connection
-             PreparedStatement checkLeaseStmt = connection.prepareStatement(checkLeaseQuery)) {
-
-            checkLeaseStmt.setString(1, propertyAddress);
-            ResultSet rs = checkLeaseStmt.executeQuery();
-
-            if (rs.next()) {
-                double monthlyRent = rs.getDouble("monthlyRent");
-                int leaseId = rs.getInt("id");
-                String tenantName = rs.getString("tenant_name");  // Fetch the tenant's name
-
-                // Check if payment has already been made for the current month
-                String checkPaymentQuery = """
-            SELECT COUNT(*) AS count 
-            FROM RentPayments 
-            WHERE lease_id = ? AND MONTH(payment_date) = MONTH(CURRENT_DATE()) AND YEAR(payment_date) = YEAR(CURRENT_DATE())
-            """;
-                try (PreparedStatement checkPaymentStmt = connection.prepareStatement(checkPaymentQuery)) {
-                    checkPaymentStmt.setInt(1, leaseId);
-                    ResultSet paymentRs = checkPaymentStmt.executeQuery();
-                    if (paymentRs.next() && paymentRs.getInt("count") > 0) {
-                        System.out.println("You have already paid the rent for this month.");
-                        return;  // Exit if the rent has already been paid
-                    }
-                }
-
-                validateMonthlyRent(monthlyRent);  // Validate that rent is positive
-
-                if (paymentAmount == monthlyRent) {
-                    String insertPaymentQuery = """
-                INSERT INTO RentPayments (property_address, tenant_name, payment_date, amount_paid, lease_id) 
-                VALUES (?, ?, NOW(), ?, ?)
-                """;
-                    try (PreparedStatement insertPaymentStmt = connection.prepareStatement(insertPaymentQuery)) {
-                        insertPaymentStmt.setString(1, propertyAddress);
-                        insertPaymentStmt.setString(2, tenantName);
-                        insertPaymentStmt.setDouble(3, paymentAmount);
-                        insertPaymentStmt.setInt(4, leaseId);
-
-                        int rowsInserted = insertPaymentStmt.executeUpdate();
-                        if (rowsInserted > 0) {
-                            System.out.println("Payment successful! You have paid: $" + paymentAmount);
-                        } else {
-                            System.out.println("Failed to record payment.");
-                        }
-                    }
-                } else {
-                    System.out.println("Error: The payment amount must match the monthly rent: $" + monthlyRent);
-                }
-            } else {
-                System.out.println("This property does not have a lease. Please contact the admin to create a lease before making a payment.");
+        if (WriteJournal.isOpen()) {
+            // Checked against the lease when it is written; a payment that fails the checks goes to the rejects file
+            if (WriteJournal.rentPaid(propertyAddress, paymentAmount, System.currentTimeMillis())) {
+                System.out.println("Payment of $" + paymentAmount + " accepted; it will be checked against your lease and posted shortly.");
+            }
+            return;
+        }
+        try (Connection connection = DatabaseConnection.getTenantConnection()) {  // Tenant connection
+            // Lease lookup plus one insert; the unique (lease_id, payment_period) key rejects a second payment
+            PaymentEngine.Result result = TenantService.payRent(connection, propertyAddress, paymentAmount);
+            switch (result.getOutcome()) {
+                case PAID:
+                    System.out.println("Payment successful! You have paid: $" + paymentAmount);
+                    break;
+                case ALREADY_PAID:
+                    System.out.println("You have already paid the rent for this month.");
+                    break;
+                case AMOUNT_MISMATCH:
+                    System.out.println("Error: The payment amount must match the monthly rent: $" + result.getMonthlyRent());
+                    break;
+                case NO_LEASE:
+                    System.out.println("This property does not have a lease. Please contact the admin to create a lease before making a payment.");
+                    break;
             }
-
         } catch (Exception e) {  // Catching the general Exception since getTenantConnection throws Exception
             System.out.println("Error processing payment: " + e.getMessage());
             e.printStackTrace();
@@ -472,10 +341,27 @@ public class Main {
         }
     }
 
-
-    private static final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+    private static final int PET_COUNT_WINDOW = 256;  // Pet counts in flight at once in "Number of Pets per Property"
 
     public static void main(String[] args) throws InterruptedException, ExecutionException {
+        SchemaMigrations.applyQuietly();  // Make sure columns and indexes the queries rely on exist
+        PetTypeDictionary.syncQuietly();
+        Metrics.startReporter();  // Periodic metrics log line, when -Dmetrics.enabled=true
+        String snapshotFile = System.getProperty("snapshot.file");
+        if (snapshotFile != null) {
+            WarmStart.start(java.nio.file.Path.of(snapshotFile));  // Portfolio from the local snapshot and change log
+        }
+        String journalFile = System.getProperty("journal.file");
+        if (journalFile != null) {
+            WriteJournal.openQuietly(java.nio.file.Path.of(journalFile));  // Journaled writes, drained in the background
+        }
+
+        if (args.length > 0) {
+            runCommand(args);  // Non-interactive modes
+            return;
+        }
+
+        PetTypeCounters.start();  // Seed the pet counts and keep them reconciled in the background
         Scanner scanner = new Scanner(System.in);  // Scanner for user input
 
         System.out.println("Enter your role (admin/tenant): ");
@@ -503,14 +389,133 @@ public class Main {
             e.printStackTrace();
         } finally {
             try {
-                if (connection != null) connection.close();  // Close connection
+                if (connection != null) connection.close();  // Return connection to the pool
             } catch (Exception e) {
                 e.printStackTrace();
             }
+            PetTypeCounters.stop();
+            TaskEngine.shutdown();  // Let running tasks finish
+            if (Boolean.getBoolean("stats.onExit")) {  // -Dstats.onExit=true prints pool, cache and query statistics
+                System.out.println(DatabaseConnection.poolStats());
+                System.out.println(PortfolioCache.stats());
+                System.out.println(StatementRegistry.report());
+                if (Metrics.isEnabled()) {
+                    System.out.print(Metrics.prometheus());
+                }
+            }
+            Metrics.stopReporter();
+            WriteJournal.close();  // Waits a while for queued writes; the rest are written on the next start
+            ChangeLog.close();
+            DatabaseConnection.shutdown();  // Close pooled connections
             scanner.close();  // Close scanner
         }
     }
 
+    // Command line modes, e.g. "--import properties.csv" or "--post-rent payments.csv"
+    private static void runCommand(String[] args) {
+        try {
+            switch (args[0]) {
+                case "--import":
+                    if (args.length < 2) {
+                        System.out.println("Usage: --import <file.csv|file.jsonl>");
+                        return;
+                    }
+                    System.out.println("Importing properties from " + args[1] + "...");
+                    BulkPropertyImporter.Result result = BulkPropertyImporter.importFile(java.nio.file.Path.of(args[1]));
+                    System.out.println(result);
+                    result.getRejects().forEach(reject -> System.out.println("  rejected " + reject));
+                    break;
+
+                case "--post-rent":
+                    if (args.length < 2) {
+                        System.out.println("Usage: --post-rent <file.csv|file.jsonl> [rejects.csv]");
+                        return;
+                    }
+                    java.nio.file.Path rejectsFile = java.nio.file.Path.of(args.length > 2 ? args[2] : args[1] + ".rejects.csv");
+                    System.out.println("Posting rent payments from " + args[1] + "...");
+                    BulkRentPosting.Result posting = BulkRentPosting.postFile(java.nio.file.Path.of(args[1]), rejectsFile);
+                    System.out.println(posting);
+                    if (posting.getRejected() > 0) {
+                        System.out.println("Rejected records written to " + rejectsFile);
+                    }
+                    break;
+
+                case "--rent-roll":
+                    if (args.length < 4) {
+                        System.out.println("Usage: --rent-roll <from yyyy-MM> <to yyyy-MM> <arrears.csv>");
+                        return;
+                    }
+                    java.nio.file.Path arrearsFile = java.nio.file.Path.of(args[3]);
+                    java.nio.file.Path summaryFile = java.nio.file.Path.of(args[3] + ".summary.csv");
+                    RentRollReport.Result rentRoll;
+                    try (java.io.BufferedWriter arrears = java.nio.file.Files.newBufferedWriter(arrearsFile)) {
+                        rentRoll = RentRollReport.run(RentRollReport.parsePeriod(args[1]), RentRollReport.parsePeriod(args[2]), arrears);
+                    }
+                    try (java.io.BufferedWriter summary = java.nio.file.Files.newBufferedWriter(summaryFile)) {
+                        RentRollReport.writeSummaryCsv(rentRoll, summary);
+                    }
+                    System.out.println(rentRoll);
+                    System.out.println("Arrears written to " + arrearsFile + ", monthly totals to " + summaryFile);
+                    break;
+
+                case "--serve":
+                    serve(args.length > 1 ? Integer.parseInt(args[1]) : 8080);
+                    break;
+
+                case "--snapshot":
+                    if (args.length < 2) {
+                        System.out.println("Usage: --snapshot <file>");
+                        return;
+                    }
+                    System.out.println("Writing portfolio snapshot to " + args[1] + "...");
+                    System.out.println(PortfolioSnapshot.export(java.nio.file.Path.of(args[1]), ChangeLog.position()));
+                    break;
+
+                default:
+                    System.out.println("Unknown option: " + args[0]);
+                    System.out.println("Options: --import <file>, --post-rent <file> [rejects-file], --rent-roll <from> <to> <arrears.csv>, --serve [port], --snapshot <file>");
+            }
+        } catch (Exception e) {
+            System.out.println("Error: " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            Metrics.stopReporter();
+            TaskEngine.shutdown();
+            WriteJournal.close();  // Drains queued writes, so before the pools close
+            ChangeLog.close();
+            DatabaseConnection.shutdown();
+            commandFinished.countDown();
+        }
+    }
+
+    // Runs the tenant HTTP server until the process is stopped (Ctrl+C / SIGTERM)
+    private static void serve(int port) throws Exception {
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");  // See TenantServer; an explicit -D wins
+        }
+        PetTypeCounters.start();
+        TenantServer server = TenantServer.start(port);
+        System.out.println("Tenant server listening on port " + server.getPort());
+
+        CountDownLatch stopping = new CountDownLatch(1);
+        Thread hook = new Thread(() -> {
+            server.stop(2);  // Let in-flight requests finish
+            stopping.countDown();
+            try {
+                commandFinished.await(15, TimeUnit.SECONDS);  // Wait for runCommand to close the journal and pools
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "tenant-server-shutdown");
+        Runtime.getRuntime().addShutdownHook(hook);
+        try {
+            stopping.await();
+            System.out.println("Tenant server stopped. Requests: " + server.getLatency());
+        } finally {
+            PetTypeCounters.stop();  // The rest is closed by runCommand
+        }
+    }
+
     // Admin Menu
     private static void adminMenu(Scanner scanner, Connection connection) {
         int choice;
@@ -530,13 +535,14 @@ public class Main {
                     System.out.println("Managing Pets...");
                     int petChoice = 0;
 
-                    while (petChoice != 4) { // Exit the Manage Pets menu when user enters 4
+                    while (petChoice != 5) { // Exit the Manage Pets menu when user enters 5
                         System.out.println("\nManage Pets Options:");
                         System.out.println("1. Count Pets");
                         System.out.println("2. Group Properties by Pet Type");
                         System.out.println("3. Number of Pets per Property");
-                        System.out.println("4. Back to Admin Menu");
-                        System.out.print("Enter your choice (1 to 4): ");
+                        System.out.println("4. Properties with All Pet Types");
+                        System.out.println("5. Back to Admin Menu");
+                        System.out.print("Enter your choice (1 to 5): ");
 
                         if (scanner.hasNextInt()) {
                             petChoice = scanner.nextInt(); // Read pet management choice
@@ -545,7 +551,7 @@ public class Main {
                                 case 1:  // Count Pets
                                     System.out.println("Counting pets by type asynchronously...");
                                     try {
-                                        Future<Map<String, Integer>> petCountsFuture = countPetsByTypeAsync();  // Async call
+                                        CompletableFuture<Map<String, Integer>> petCountsFuture = countPetsByTypeAsync();  // Async call
                                         Map<String, Integer> petCounts = petCountsFuture.get();  // Wait for result
 
                                         System.out.println("Pet counts by type:");
@@ -562,7 +568,7 @@ public class Main {
                                     System.out.println("Grouping properties by pet type asynchronously...");
 
                                     try {
-                                        Future<Map<String, List<IProperty>>> petGroupsFuture = groupPropertiesByPetTypeAsync();
+                                        CompletableFuture<Map<String, List<IProperty>>> petGroupsFuture = groupPropertiesByPetTypeAsync();
                                         Map<String, List<IProperty>> petGroups = petGroupsFuture.get();  // Wait for the result
 
                                         System.out.println("Properties grouped by pet type:");
@@ -584,35 +590,68 @@ public class Main {
                                 case 3: // Number of Pets per Property
                                     System.out.println("Number of pets per property:");
 
-                                    // Fetch properties from the database
-                                    List<IProperty> properties = getAllProperties();
-
-                                    if (properties.isEmpty()) {
-                                        System.out.println("No properties found.");
-                                    } else {
-                                        for (IProperty property : properties) {
+                                    // Stream properties from the database and count them in windows of async tasks,
+                                    // printing each window in order once all of its counts have completed
+                                    try (Stream<IProperty> properties = PropertyRepository.streamProperties()) {
+                                        int listed = 0;
+                                        List<CompletableFuture<String>> window = new ArrayList<>(PET_COUNT_WINDOW);
+                                        for (Iterator<IProperty> it = properties.iterator(); it.hasNext(); listed++) {
+                                            IProperty property = it.next();
                                             String address = property.getAddress();
-                                            try {
-                                                // Asynchronously count pets for the current property
-                                                int numberOfPets = countPetsAsync(property).get();  // Future.get() waits for result
-                                                System.out.println(address + ": " + numberOfPets + " pets");
-                                            } catch (InterruptedException | ExecutionException e) {
-                                                System.out.println("Error counting pets for property: " + address);
-                                                e.printStackTrace();
+                                            window.add(countPetsAsync(property)
+                                                    .thenApply(numberOfPets -> address + ": " + numberOfPets + " pets")
+                                                    .exceptionally(e -> "Error counting pets for property: " + address));
+                                            if (window.size() == PET_COUNT_WINDOW || !it.hasNext()) {
+                                                CompletableFuture.allOf(window.toArray(new CompletableFuture<?>[0]))
+                                                        .thenRun(() -> window.forEach(line -> System.out.println(line.join())))
+                                                        .join();
+                                                window.clear();
                                             }
                                         }
+                                        if (listed == 0) {
+                                            System.out.println("No properties found.");
+                                        }
+                                    } catch (Exception e) {
+                                        System.out.println("Error fetching properties: " + e.getMessage());
+                                        e.printStackTrace();
                                     }
                                     break;
 
-                                case 4:
+                                case 4:  // Properties with All Pet Types
+                                    scanner.nextLine();  // Consume newline
+                                    System.out.println("Enter the pet types, separated by commas (e.g., Dog, Cat):");
+                                    String[] wantedTypes = Arrays.stream(scanner.nextLine().split(","))
+                                            .map(String::trim)
+                                            .filter(type -> !type.isEmpty())
+                                            .toArray(String[]::new);
+                                    if (wantedTypes.length == 0) {
+                                        System.out.println("No pet types entered.");
+                                        break;
+                                    }
+                                    try {
+                                        List<IProperty> matches = findPropertiesWithAllPetTypesAsync(wantedTypes).get();
+                                        System.out.println(matches.size() + " properties with " + String.join(" and ", wantedTypes) + ":");
+                                        for (IProperty property : matches) {
+                                            System.out.println(" - " + property.getAddress());
+                                        }
+                                    } catch (InterruptedException e) {
+                                        System.err.println("The operation was interrupted: " + e.getMessage());
+                                        Thread.currentThread().interrupt();  // Restore interrupt status
+                                    } catch (ExecutionException e) {
+                                        System.err.println("An error occurred while searching properties: " + e.getCause());
+                                        e.printStackTrace();
+                                    }
+                                    break;
+
+                                case 5:
                                     System.out.println("Returning to Admin Menu...");
                                     break;
 
                                 default:
-                                    System.out.println("Invalid choice. Please enter a number between 1 and 4.");
+                                    System.out.println("Invalid choice. Please enter a number between 1 and 5.");
                             }
                         } else {
-                            System.out.println("Invalid input. Please enter a number between 1 and 4.");
+                            System.out.println("Invalid input. Please enter a number between 1 and 5.");
                             scanner.next(); // Consume invalid input
                         }
                     }
@@ -622,13 +661,14 @@ public class Main {
                     System.out.println("Managing Properties...");
                     int managePropertiesChoice = 0;
 
-                    while (managePropertiesChoice != 4) {  // Exit when the user selects 4
+                    while (managePropertiesChoice != 5) {  // Exit when the user selects 5
                         System.out.println("\nManage Properties Options:");
                         System.out.println("1. Properties Sorted by Floor");
                         System.out.println("2. Group Properties by Owner");
                         System.out.println("3. Contract Details");
-                        System.out.println("4. Back to Admin Menu");
-                        System.out.print("Enter your choice (1 to 4): ");
+                        System.out.println("4. Lease Overlap Report");
+                        System.out.println("5. Back to Admin Menu");
+                        System.out.print("Enter your choice (1 to 5): ");
 
                         if (scanner.hasNextInt()) {
                             managePropertiesChoice = scanner.nextInt();  // Read user's choice
@@ -638,40 +678,32 @@ public class Main {
                                 case 1:  // Sort Properties by Floor
                                     System.out.println("Starting sorting...");
 
-                                    // Fetch properties from the database
-                                    List<IProperty> properties = getAllProperties();  // Get properties from the DB
-
-                                    if (properties.isEmpty()) {
-                                        System.out.println("No properties found to sort.");
-                                    } else {
-                                        try {
-                                            // Measure start time
-                                            long startTime = System.currentTimeMillis();
-
-                                            // Call asynchronous sorting method
-                                            Future<List<IProperty>> sortedFuture = sortPropertiesByFloorAsync(properties);
-                                            List<IProperty> sortedProperties = sortedFuture.get();  // Wait for result
-
-                                            // Measure end time
-                                            long endTime = System.currentTimeMillis();
-                                            System.out.println("Time taken for sorting: " + (endTime - startTime) + " ms");
-
-                                            // Display sorted properties
+                                    // Same order as sortPropertiesByFloorAsync everywhere else: houses by street number, then apartments by floor
+                                    try {
+                                        List<IProperty> properties = getAllProperties();
+                                        long startTime = System.nanoTime();
+                                        long started = SORT_BY_FLOOR.start();
+                                        List<IProperty> sorted = sortPropertiesByFloorAsync(properties).get();
+                                        SORT_BY_FLOOR.success(started, sorted.size());
+                                        long sortMillis = (System.nanoTime() - startTime) / 1_000_000;  // The sort alone, not the printing
+
+                                        if (sorted.isEmpty()) {
+                                            System.out.println("No properties found to sort.");
+                                        } else {
                                             System.out.println("Properties sorted by floor:");
-                                            for (IProperty property : sortedProperties) {
+                                            for (IProperty property : sorted) {
                                                 String address = property.getAddress();
-                                                String owner = property instanceof House ? ((House) property).getOwner().getName() : ((Apartment) property).getOwner().getName();
-                                                String floorDescription = property instanceof House ? "ground" : String.valueOf(((Apartment) property).getFloor());
+                                                String owner = property.getOwner().getName();
+                                                String floorDescription = property instanceof House ? "ground" : String.valueOf(property.getFloor());
                                                 String typeDescription = property instanceof House ? "The house on " : "The apartment on ";
 
                                                 System.out.println(typeDescription + address + " owned by " + owner + " - floor " + floorDescription);
                                             }
-                                        } catch (InterruptedException e) {
-                                            System.out.println("The sorting operation was interrupted.");
-                                            Thread.currentThread().interrupt();  // Restore interrupted status
-                                        } catch (ExecutionException e) {
-                                            System.out.println("An error occurred during sorting: " + e.getCause());
+                                            System.out.println("Time taken for sorting: " + sortMillis + " ms");
                                         }
+                                    } catch (Exception e) {
+                                        System.out.println("An error occurred during sorting: " + e.getMessage());
+                                        e.printStackTrace();
                                     }
                                     break;
 
@@ -722,15 +754,28 @@ public class Main {
                                     }
                                     break;
 
-                                case 4:
+                                case 4:  // Lease Overlap Report
+                                    System.out.println("Checking all leases for overlaps...");
+                                    List<Lease[]> overlaps = LeaseIntervalIndex.findAllOverlaps(getAllLeases());
+                                    if (overlaps.isEmpty()) {
+                                        System.out.println("No overlapping leases found.");
+                                    }
+                                    for (Lease[] pair : overlaps) {
+                                        System.out.println(pair[0].getPropertyAddress() + ": lease of " + pair[1].getTenantName()
+                                                + " (" + pair[1].getStartDate() + " - " + pair[1].getEndDate() + ") overlaps lease of "
+                                                + pair[0].getTenantName() + " (" + pair[0].getStartDate() + " - " + pair[0].getEndDate() + ")");
+                                    }
+                                    break;
+
+                                case 5:
                                     System.out.println("Returning to Admin Menu...");
                                     break;
 
                                 default:
-                                    System.out.println("Invalid choice. Please enter a number between 1 and 4.");
+                                    System.out.println("Invalid choice. Please enter a number between 1 and 5.");
                             }
                         } else {
-                            System.out.println("Invalid input. Please enter a number between 1 and 4.");
+                            System.out.println("Invalid input. Please enter a number between 1 and 5.");
                             scanner.next();  // Consume invalid input
                         }
                     }
@@ -902,8 +947,8 @@ public class Main {
                                     }
                                 }
 
-                                Date leaseStartDate = null, leaseEndDate = null;
-                                while (leaseStartDate == null) {
+                                int leaseStartDay = LeaseDates.INVALID, leaseEndDay = LeaseDates.INVALID;
+                                while (leaseStartDay == LeaseDates.INVALID) {
                                     System.out.println("Enter lease start date (yyyy-MM-dd):");
                                     String dateInput = scanner.nextLine().trim();
                                     if (dateInput.isEmpty()) {
@@ -911,13 +956,13 @@ public class Main {
                                         continue;
                                     }
                                     try {
-                                        leaseStartDate = validateAndParseDate(dateInput);
+                                        leaseStartDay = validateAndParseDate(dateInput);
                                     } catch (ParseException e) {
                                         System.out.println("Invalid date format. Please use yyyy-MM-dd.");
                                     }
                                 }
 
-                                while (leaseEndDate == null) {
+                                while (leaseEndDay == LeaseDates.INVALID) {
                                     System.out.println("Enter lease end date (yyyy-MM-dd):");
                                     String dateInput = scanner.nextLine().trim();
                                     if (dateInput.isEmpty()) {
@@ -925,15 +970,21 @@ public class Main {
                                         continue;
                                     }
                                     try {
-                                        leaseEndDate = validateAndParseDate(dateInput);
+                                        leaseEndDay = validateAndParseDate(dateInput);
                                     } catch (ParseException e) {
                                         System.out.println("Invalid date format. Please use yyyy-MM-dd.");
                                     }
                                 }
 
-                                Lease lease = new Lease(leaseTenantName, leaseStartDate, leaseEndDate, monthlyRent, propertyAddress);
-                                addLeaseToDatabase(lease);
-                                System.out.println("Lease added successfully.");
+                                Lease lease = new Lease(leaseTenantName, leaseStartDay, leaseEndDay, monthlyRent, propertyAddress);
+                                try {
+                                    addLeaseToDatabase(lease);
+                                    System.out.println("Lease added successfully.");
+                                } catch (OverlappingLeaseException | IllegalArgumentException e) {
+                                    System.out.println("Lease not added: " + e.getMessage());
+                                } catch (Exception e) {
+                                    System.out.println("Lease not added: could not save it (" + e.getMessage() + ").");
+                                }
                                 break;
 
                             case 3:
@@ -963,14 +1014,23 @@ public class Main {
                             switch (aboutPropertiesChoice) {
                                 case 1:  // Describe Properties
                                     System.out.println("Describing all properties...");
-                                    List<IProperty> properties = getAllProperties();  // Use the existing method to fetch properties from the DB
-
-                                    if (properties.isEmpty()) {
-                                        System.out.println("No properties found.");
-                                    } else {
-                                        for (IProperty property : properties) {
-                                            System.out.println("Property: " + property.getDescription());  // Assuming getDescription() is implemented in IProperty
+                                    // Descriptions are rendered straight into a buffered writer, one flush at the end
+                                    PrintWriter report = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16), false);
+                                    try (Stream<IProperty> properties = PropertyRepository.streamProperties()) {
+                                        int described = 0;
+                                        for (Iterator<IProperty> it = properties.iterator(); it.hasNext(); described++) {
+                                            report.append("Property: ");
+                                            it.next().describeTo(report);
+                                            report.println();
                                         }
+                                        report.flush();
+                                        if (described == 0) {
+                                            System.out.println("No properties found.");
+                                        }
+                                    } catch (Exception e) {
+                                        report.flush();  // Keep the descriptions written before the failure
+                                        System.out.println("Error fetching properties: " + e.getMessage());
+                                        e.printStackTrace();
                                     }
                                     break;
 
@@ -1060,231 +1120,327 @@ public class Main {
 
     // Fetch all persons from database
     private static List<Person> getAllPersons() {
-        List<Person> persons = new ArrayList<>();
-        try (Connection connection = DatabaseConnection.getConnection();
-             PreparedStatement stmt = connection.prepareStatement("SELECT * FROM Person");
-             ResultSet rs = stmt.executeQuery()) {
-            while (rs.next()) {
-                persons.add(new Person(rs.getString("name")));
-            }
+        try {
+            return PortfolioCache.PERSONS.get(PortfolioCache.ALL, key -> {
+                long started = LOAD_PERSONS.start();
+                try (Stream<Person> persons = PropertyRepository.streamPersons(PropertyRepository.DEFAULT_FETCH_SIZE)) {
+                    List<Person> loaded = Collections.unmodifiableList(persons.collect(Collectors.toList()));
+                    LOAD_PERSONS.success(started, loaded.size());
+                    return loaded;
+                } catch (Exception e) {
+                    LOAD_PERSONS.failure(started);
+                    throw e;
+                }
+            });
         } catch (Exception e) {
             e.printStackTrace();
         }
-        return persons;
+        return new ArrayList<>();
     }
 
-    // Fetch all properties from database
+    // Fetch all properties from database (owners and pets are loaded in the same query)
     private static List<IProperty> getAllProperties() {
-        List<IProperty> properties = new ArrayList<>();
-        try (Connection connection = DatabaseConnection.getConnection();
-             PreparedStatement stmt = connection.prepareStatement(
-                     "SELECT p.*, o.name AS owner_name FROM Property p JOIN Person o ON p.owner_id = o.id")) {
-            ResultSet rs = stmt.executeQuery();
-            while (rs.next()) {
-                Person owner = new Person(rs.getString("owner_name"));
-                String type = rs.getString("type");
-                String address = rs.getString("address");
-                int floor = rs.getInt("floor");
-                boolean isGround = rs.getBoolean("isGround");
-                List<Pet> pets = getPetsForProperty(rs.getInt("id"));
-
-                if ("House".equalsIgnoreCase(type)) {
-                    properties.add(new House(owner, pets.toArray(new Pet[0]), address, isGround));
-                } else {
-                    properties.add(new Apartment(owner, floor, address, pets.toArray(new Pet[0])));
+        try {
+            return PortfolioCache.PROPERTIES.get(PortfolioCache.ALL, key -> {
+                long started = LOAD_PROPERTIES.start();
+                try (Connection connection = DatabaseConnection.getConnection()) {
+                    List<IProperty> loaded = Collections.unmodifiableList(PropertyLoader.loadAll(connection));
+                    LOAD_PROPERTIES.success(started, loaded.size());
+                    return loaded;
+                } catch (Exception e) {
+                    LOAD_PROPERTIES.failure(started);
+                    throw e;
                 }
-            }
+            });
         } catch (Exception e) {
             e.printStackTrace();
         }
-        return properties;
+        return new ArrayList<>();
     }
 
-    // Fetch pets for a specific property
-    private static List<Pet> getPetsForProperty(int propertyId) {
-        List<Pet> pets = new ArrayList<>();
-        try (Connection connection = DatabaseConnection.getConnection();
-             PreparedStatement stmt = connection.prepareStatement("SELECT type FROM Pet WHERE id IN (SELECT pet_id FROM PropertyPet WHERE property_id = ?)")) {
-            stmt.setInt(1, propertyId);
-            ResultSet rs = stmt.executeQuery();
-            while (rs.next()) {
-                pets.add(new Pet(rs.getString("type")));
-            }
+    // Fetch all leases from database
+    public static List<Lease> getAllLeases() {
+        try {
+            return loadLeases();
         } catch (Exception e) {
             e.printStackTrace();
         }
-        return pets;
+        return new ArrayList<>();
     }
 
-    // Fetch all leases from database
-    public static List<Lease> getAllLeases() {
-        List<Lease> leases = new ArrayList<>();
-        String query = "SELECT l.*, t.name AS tenant_name, p.address, p.type, p.floor, p.isGround " +
-                "FROM Lease l " +
-                "JOIN Person t ON l.tenant_id = t.id " +
-                "JOIN Property p ON l.property_id = p.id";
-        try (Connection connection = DatabaseConnection.getConnection();
-             PreparedStatement stmt = connection.prepareStatement(query)) {
-            ResultSet rs = stmt.executeQuery();
-            while (rs.next()) {
-                String tenantName = rs.getString("tenant_name");
-                String address = rs.getString("address");
-                String type = rs.getString("type");
-                int floor = rs.getInt("floor");
-                boolean isGround = rs.getBoolean("isGround");
-                Date startDate = rs.getDate("startDate");
-                Date endDate = rs.getDate("endDate");
-                double monthlyRent = rs.getDouble("monthlyRent");
-
-                // Create a description for the property type
-                String propertyDescription = type.equals("House")
-                        ? (isGround ? "House (Ground level)" : "House")
-                        : "Apartment (Floor: " + floor + ")";
+    private static List<Lease> loadLeases() throws Exception {
+        long started = LOAD_LEASES.start();
+        try (Stream<Lease> leases = PropertyRepository.streamLeases(PropertyRepository.DEFAULT_FETCH_SIZE)) {
+            List<Lease> loaded = leases.collect(Collectors.toList());
+            LOAD_LEASES.success(started, loaded.size());
+            return loaded;
+        } catch (Exception e) {
+            LOAD_LEASES.failure(started);
+            throw e;
+        }
+    }
 
-                Lease lease = new Lease(tenantName, startDate, endDate, monthlyRent, address);
+    public static void addPersonToDatabase(Person person) {
+        if (WriteJournal.isOpen()) {
+            WriteJournal.personAdded(person.getName());
+            return;
+        }
+        long started = ADD_PERSON.start();
+        try (Connection connection = DatabaseConnection.getConnection()) {
+            ADD_PERSON.success(started, insertPerson(connection, person.getName()));
+            PortfolioCache.invalidateAll();
+        } catch (Exception e) {
+            ADD_PERSON.failure(started);
+            e.printStackTrace();
+        }
+    }
 
+    static int insertPerson(Connection connection, String name) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(INSERT_PERSON)) {
+            stmt.setString(1, name);
+            return stmt.executeUpdate();
+        }
+    }
 
-                leases.add(lease);
+    public static void addPetToDatabase(Pet pet, String propertyAddress) throws Exception {
+        if (WriteJournal.isOpen()) {
+            if (!WriteJournal.petAdded(propertyAddress, pet.getPetType())) {
+                throw new IOException("Could not queue the pet in the write journal.");
             }
+            return;
+        }
+        long started = ADD_PET.start();
+        try (Connection connection = DatabaseConnection.getConnection()) {
+            int petId = linkPet(connection, pet.getPetType(), propertyAddress);
+            petLinked(petId, pet.getPetType(), propertyAddress);
+            ADD_PET.success(started, 1);
         } catch (Exception e) {
-            e.printStackTrace();
+            ADD_PET.failure(started);
+            throw e;
         }
-        return leases;
     }
 
-    public static void addPersonToDatabase(Person person) {
-        String query = "INSERT INTO Person (name) VALUES (?)";
-        try (Connection connection = DatabaseConnection.getConnection();
-             PreparedStatement stmt = connection.prepareStatement(query)) {
-            stmt.setString(1, person.getName());
-            stmt.executeUpdate();
+    // Links one pet of the type to the property, inserting the type if it is new; returns the type's id
+    static int linkPet(Connection connection, String petType, String propertyAddress) throws SQLException {
+        int petId = TenantService.petTypeId(connection, petType);
+        try (PreparedStatement linkStmt = connection.prepareStatement(LINK_PET_TO_PROPERTY)) {
+            linkStmt.setString(1, Address.normalize(propertyAddress));
+            linkStmt.setInt(2, petId);
+            if (linkStmt.executeUpdate() == 0) {
+                throw new SQLException("Failed to link pet to property. Property address may be invalid.");
+            }
+        }
+        return petId;
+    }
+
+    static void petLinked(int petId, String petType, String propertyAddress) {
+        PetTypeDictionary.register(petId, petType);
+        PortfolioCache.invalidateAll();
+        PetTypeCounters.added(PetTypeDictionary.code(petId, petType), 1);
+        PetTypeIndex.petAdded(propertyAddress, PetTypeDictionary.code(petId, petType), 1);
+        ChangeLog.petAdded(propertyAddress, petType);
+    }
+
+    public static void addPropertyToDatabase(IProperty property) {
+        if (WriteJournal.isOpen()) {
+            if (WriteJournal.propertyAdded(property)) {  // The property and its pets, written in one transaction
+                System.out.println("Property added successfully (queued).");
+            }
+            return;
+        }
+        long started = ADD_PROPERTY.start();
+        try (Connection connection = DatabaseConnection.getConnection()) {
+            insertProperty(connection, property);
+            propertyInserted(property);
+
+            // Link pets to the property
+            for (Pet pet : property.getPets()) {
+                addPetToDatabase(pet, property.getAddress());
+            }
+
+            ADD_PROPERTY.success(started, 1);
+            System.out.println("Property added successfully.");
+        } catch (SQLException e) {
+            ADD_PROPERTY.failure(started);
+            System.err.println("Error: " + e.getMessage());
         } catch (Exception e) {
+            ADD_PROPERTY.failure(started);
             e.printStackTrace();
         }
     }
 
-    public static void addPetToDatabase(Pet pet, String propertyAddress) throws Exception {
-        String checkPetTypeQuery = "SELECT id FROM Pet WHERE type = ?";
-        String insertPetTypeQuery = "INSERT INTO Pet (type) VALUES (?)";
-        String linkPetToPropertyQuery = "INSERT INTO PropertyPet (property_id, pet_id) VALUES ((SELECT id FROM Property WHERE address = ? LIMIT 1), ?)";
+    // The owner (inserted if new) and the property row, without its pets
+    static void insertProperty(Connection connection, IProperty property) throws SQLException {
+        int ownerId;
 
-        try (Connection connection = DatabaseConnection.getConnection()) {
-            int petId;
-
-            // Check if the pet type already exists
-            try (PreparedStatement checkPetTypeStmt = connection.prepareStatement(checkPetTypeQuery)) {
-                checkPetTypeStmt.setString(1, pet.getPetType());
-                ResultSet rs = checkPetTypeStmt.executeQuery();
-                if (rs.next()) {
-                    petId = rs.getInt("id");  // Pet type exists, get the pet ID
-                } else {
-                    // Insert new pet type if it doesn't exist
-                    try (PreparedStatement insertPetTypeStmt = connection.prepareStatement(insertPetTypeQuery, PreparedStatement.RETURN_GENERATED_KEYS)) {
-                        insertPetTypeStmt.setString(1, pet.getPetType());
-                        insertPetTypeStmt.executeUpdate();
-
-                        // Get the generated ID of the new pet type
-                        ResultSet generatedKeys = insertPetTypeStmt.getGeneratedKeys();
-                        if (generatedKeys.next()) {
-                            petId = generatedKeys.getInt(1);
-                        } else {
-                            throw new SQLException("Failed to insert new pet type: " + pet.getPetType());
-                        }
+        // Check if the owner exists in the Person table
+        try (PreparedStatement checkOwnerStmt = connection.prepareStatement(PERSON_ID_BY_NAME)) {
+            checkOwnerStmt.setString(1, property.getOwner().getName());
+            ResultSet rs = checkOwnerStmt.executeQuery();
+
+            if (rs.next()) {
+                // Owner exists, get the owner ID
+                ownerId = rs.getInt("id");
+            } else {
+                // Owner does not exist, insert new owner
+                try (PreparedStatement insertOwnerStmt = connection.prepareStatement(INSERT_PERSON, PreparedStatement.RETURN_GENERATED_KEYS)) {
+                    insertOwnerStmt.setString(1, property.getOwner().getName());
+                    insertOwnerStmt.executeUpdate();
+
+                    // Get generated owner ID
+                    ResultSet generatedKeys = insertOwnerStmt.getGeneratedKeys();
+                    if (generatedKeys.next()) {
+                        ownerId = generatedKeys.getInt(1);
+                    } else {
+                        throw new SQLException("Failed to retrieve owner ID after insertion.");
                     }
                 }
             }
+        }
 
-            // Link the pet to the property
-            try (PreparedStatement linkStmt = connection.prepareStatement(linkPetToPropertyQuery)) {
-                linkStmt.setString(1, propertyAddress);
-                linkStmt.setInt(2, petId);
-                int rowsAffected = linkStmt.executeUpdate();
-                if (rowsAffected == 0) {
-                    throw new SQLException("Failed to link pet to property. Property address may be invalid.");
-                }
+        // Insert the property using the owner ID
+        try (PreparedStatement insertPropertyStmt = connection.prepareStatement(INSERT_PROPERTY)) {
+            insertPropertyStmt.setString(1, property.getAddress());
+            insertPropertyStmt.setInt(2, ownerId);
+            insertPropertyStmt.setString(6, Address.normalize(property.getAddress()));
+
+            if (property instanceof House) {
+                insertPropertyStmt.setNull(3, java.sql.Types.INTEGER);  // No floor for houses
+                insertPropertyStmt.setBoolean(4, true);  // Ground level for houses
+                insertPropertyStmt.setString(5, "House");
+            } else if (property instanceof Apartment) {
+                Apartment apartment = (Apartment) property;
+                insertPropertyStmt.setInt(3, apartment.getFloor());
+                insertPropertyStmt.setBoolean(4, false);  // Not ground level for apartments
+                insertPropertyStmt.setString(5, "Apartment");
             }
+
+            insertPropertyStmt.executeUpdate();
         }
     }
 
-    public static void addPropertyToDatabase(IProperty property) {
-        String checkOwnerQuery = "SELECT id FROM Person WHERE name = ?";
-        String insertOwnerQuery = "INSERT INTO Person (name) VALUES (?)";
-        String insertPropertyQuery = "INSERT INTO Property (address, owner_id, floor, isGround, type) VALUES (?, ?, ?, ?, ?)";
+    static void propertyInserted(IProperty property) {
+        PortfolioCache.invalidateAll();  // Covers a newly inserted owner as well
+        PetTypeIndex.invalidate();  // The index learns the new property's id on its next rebuild
+        ChangeLog.propertyAdded(property);  // Before its pets, which petLinked logs
+    }
 
-        try (Connection connection = DatabaseConnection.getConnection()) {
-            int ownerId;
-
-            // Check if the owner exists in the Person table
-            try (PreparedStatement checkOwnerStmt = connection.prepareStatement(checkOwnerQuery)) {
-                checkOwnerStmt.setString(1, property.getOwner().getName());
-                ResultSet rs = checkOwnerStmt.executeQuery();
-
-                if (rs.next()) {
-                    // Owner exists, get the owner ID
-                    ownerId = rs.getInt("id");
-                } else {
-                    // Owner does not exist, insert new owner
-                    try (PreparedStatement insertOwnerStmt = connection.prepareStatement(insertOwnerQuery, PreparedStatement.RETURN_GENERATED_KEYS)) {
-                        insertOwnerStmt.setString(1, property.getOwner().getName());
-                        insertOwnerStmt.executeUpdate();
-
-                        // Get generated owner ID
-                        ResultSet generatedKeys = insertOwnerStmt.getGeneratedKeys();
-                        if (generatedKeys.next()) {
-                            ownerId = generatedKeys.getInt(1);
-                        } else {
-                            throw new SQLException("Failed to retrieve owner ID after insertion.");
-                        }
-                    }
-                }
+    // Lazily built from the Lease table, then kept in sync by addLeaseToDatabase and terminateLease. Leases and
+    // terminations still queued in the WriteJournal are not in the table, so they are applied on top of it.
+    private static LeaseIntervalIndex leaseIndex;
+
+    // Used by WarmStart, which has the leases without querying the table
+    static synchronized void seedLeaseIndex(Collection<Lease> leases) {
+        leaseIndex = withQueued(LeaseIntervalIndex.of(leases), WriteJournal.queued());
+    }
+
+    // A failed load leaves the index unset, so the next lease entry tries again instead of checking against nothing
+    private static synchronized LeaseIntervalIndex leaseIndex() throws Exception {
+        if (leaseIndex == null) {
+            List<WriteJournal.Entry> queued = WriteJournal.queued();  // First: a record written in between is in both
+            leaseIndex = withQueued(LeaseIntervalIndex.of(loadLeases()), queued);
+        }
+        return leaseIndex;
+    }
+
+    // WriteJournal.open: the records recovered from the last run were never in this index
+    static synchronized void leasesRecovered(List<WriteJournal.Entry> queued) {
+        if (leaseIndex != null) {
+            withQueued(leaseIndex, queued);
+        }
+    }
+
+    // The journal's writer found recovered lease records already in the database or rejected; reloaded on next use
+    static synchronized void resetLeaseIndex() {
+        leaseIndex = null;
+    }
+
+    // In sequence order, so a lease queued after a termination on the same property is kept
+    private static LeaseIntervalIndex withQueued(LeaseIntervalIndex index, List<WriteJournal.Entry> queued) {
+        for (WriteJournal.Entry entry : queued) {
+            if (entry.operation == WriteJournal.LEASE_ADDED) {
+                index.add(entry.address, entry.startDay, entry.endDay);
+            } else if (entry.operation == WriteJournal.LEASES_TERMINATED) {
+                index.removeProperty(entry.address);
             }
+        }
+        return index;
+    }
 
-            // Insert the property using the owner ID
-            try (PreparedStatement insertPropertyStmt = connection.prepareStatement(insertPropertyQuery)) {
-                insertPropertyStmt.setString(1, property.getAddress());
-                insertPropertyStmt.setInt(2, ownerId);
-
-                if (property instanceof House) {
-                    insertPropertyStmt.setNull(3, java.sql.Types.INTEGER);  // No floor for houses
-                    insertPropertyStmt.setBoolean(4, true);  // Ground level for houses
-                    insertPropertyStmt.setString(5, "House");
-                } else if (property instanceof Apartment) {
-                    Apartment apartment = (Apartment) property;
-                    insertPropertyStmt.setInt(3, apartment.getFloor());
-                    insertPropertyStmt.setBoolean(4, false);  // Not ground level for apartments
-                    insertPropertyStmt.setString(5, "Apartment");
-                }
+    // Removals only matter once the index is loaded; a later load reads them from the table
+    private static synchronized void unindexProperty(String propertyAddress) {
+        if (leaseIndex != null) {
+            leaseIndex.removeProperty(propertyAddress);
+        }
+    }
 
-                insertPropertyStmt.executeUpdate();
+    // A queued lease that the journal's writer could not insert no longer blocks its dates
+    static synchronized void leaseRejected(Lease lease) {
+        if (leaseIndex != null) {
+            leaseIndex.remove(lease.getPropertyAddress(), lease.getStartDay(), lease.getEndDay());
+        }
+    }
 
-                // Link pets to the property
-                for (Pet pet : property.getPets()) {
-                    addPetToDatabase(pet, property.getAddress());
+    // Start and end day of each lease on the property, i.e. the rows a termination deletes
+    static List<int[]> leaseDates(Connection connection, String propertyAddress) throws SQLException {
+        List<int[]> dates = new ArrayList<>();
+        try (PreparedStatement stmt = connection.prepareStatement(LEASE_DATES_FOR_PROPERTY)) {
+            stmt.setString(1, Address.normalize(propertyAddress));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    dates.add(new int[]{LeaseDates.fromSqlDate(rs.getDate(1)), LeaseDates.fromSqlDate(rs.getDate(2))});
                 }
+            }
+        }
+        return dates;
+    }
 
-                System.out.println("Property added successfully.");
+    // A queued termination that the journal's writer could not apply: the leases it would have deleted block
+    // their dates again. Leases queued after it were never unindexed, and are not in the table yet.
+    static synchronized void leaseTerminationRejected(String propertyAddress, List<int[]> kept) {
+        if (leaseIndex != null) {
+            for (int[] dates : kept) {
+                leaseIndex.add(propertyAddress, dates[0], dates[1]);
+            }
+        }
+    }
+
+    // Throws OverlappingLeaseException for taken dates, or the database (or journal) error if the lease was not saved
+    public static void addLeaseToDatabase(Lease lease) throws Exception {
+        int start = lease.getStartDay();
+        int end = lease.getEndDay();
+        LeaseIntervalIndex index = leaseIndex();
 
+        // Reserving the dates is the only locked step, so two lease entries cannot both pass the check while
+        // neither holds the index during the insert; a failed insert gives the dates back
+        index.reserve(lease.getPropertyAddress(), start, end);
+
+        if (WriteJournal.isOpen()) {
+            if (!WriteJournal.leaseAdded(lease)) {  // Queued leases keep their reservation until written or rejected
+                index.remove(lease.getPropertyAddress(), start, end);
+                throw new IOException("Could not queue the lease in the write journal.");
             }
-        } catch (SQLException e) {
-            System.err.println("Error: " + e.getMessage());
+            return;
+        }
+        long started = ADD_LEASE.start();
+        try (Connection connection = DatabaseConnection.getConnection()) {
+            ADD_LEASE.success(started, insertLease(connection, lease));
         } catch (Exception e) {
-            e.printStackTrace();
+            ADD_LEASE.failure(started);
+            index.remove(lease.getPropertyAddress(), start, end);
+            throw e;
         }
+        ChangeLog.leaseAdded(lease);
     }
 
-    public static void addLeaseToDatabase(Lease lease) {
-        String query = "INSERT INTO Lease (tenant_id, property_id, startDate, endDate, monthlyRent) VALUES ((SELECT id FROM Person WHERE name = ?), (SELECT id FROM Property WHERE address = ?), ?, ?, ?)";
-
-        try (Connection connection = DatabaseConnection.getConnection();
-             PreparedStatement stmt = connection.prepareStatement(query)) {
+    static int insertLease(Connection connection, Lease lease) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(INSERT_LEASE)) {
             stmt.setString(1, lease.getTenantName());
-            stmt.setString(2, lease.getPropertyAddress());
-            stmt.setDate(3, new java.sql.Date(lease.getStartDate().getTime()));
-            stmt.setDate(4, new java.sql.Date(lease.getEndDate().getTime()));
+            stmt.setString(2, lease.getParsedAddress().getKey());
+            stmt.setDate(3, LeaseDates.toSqlDate(lease.getStartDay()));
+            stmt.setDate(4, LeaseDates.toSqlDate(lease.getEndDay()));
             stmt.setDouble(5, lease.getMonthlyRent());
-            stmt.executeUpdate();
-        } catch (Exception e) {
-            e.printStackTrace();
+            return stmt.executeUpdate();
         }
     }
-}
\ No newline at end of file
+}
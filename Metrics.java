@@ -0,0 +1,206 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// Process-wide metrics: one Operation (latency histogram, calls, errors, rows) per data-access method, plus gauges
+// such as the task queue depth. Off unless -Dmetrics.enabled=true (or setEnabled(true)); when off, start() returns
+// OFF without reading the clock and success()/failure() return at once, so instrumented code pays one volatile read.
+//
+//   long started = LOAD.start();
+//   ... LOAD.success(started, rows);   or, in the catch block,   LOAD.failure(started);
+//
+// prometheus() renders everything (and StatementRegistry's per-statement timings) in the Prometheus text format;
+// startReporter() logs a one-line summary every metrics.logSeconds seconds.
+public class Metrics {
+    public static final long OFF = Long.MIN_VALUE;  // start() result while metrics are disabled
+
+    private static final long REPORT_SECONDS = Long.getLong("metrics.logSeconds", 60L);
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private static volatile boolean enabled = Boolean.getBoolean("metrics.enabled");
+    private static final Map<String, Operation> operations = new ConcurrentHashMap<>();
+    private static final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+    private static ScheduledExecutorService reporter;
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    // The operation with this name, created on first use; meant for static final fields
+    public static Operation operation(String name) {
+        return operations.computeIfAbsent(name, Operation::new);
+    }
+
+    // A value read when metrics are rendered, e.g. a queue length; replaces any gauge with the same name
+    public static void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    public static void reset() {
+        operations.values().forEach(Operation::reset);
+    }
+
+    public static class Operation {
+        private final String name;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+
+        Operation(String name) {
+            this.name = name;
+        }
+
+        public long start() {
+            return enabled ? System.nanoTime() : OFF;
+        }
+
+        public void success(long started, long rowCount) {
+            if (started != OFF) {
+                latency.record(System.nanoTime() - started);
+                rows.add(rowCount);
+            }
+        }
+
+        public void failure(long started) {
+            if (started != OFF) {
+                latency.record(System.nanoTime() - started);
+                errors.increment();
+            }
+        }
+
+        public String getName() { return name; }
+        public long getCalls() { return latency.getCount(); }
+        public long getErrors() { return errors.sum(); }
+        public long getRows() { return rows.sum(); }
+        public LatencyHistogram getLatency() { return latency; }
+
+        void reset() {
+            latency.reset();
+            errors.reset();
+            rows.reset();
+        }
+    }
+
+    // Prometheus text exposition format (version 0.0.4)
+    public static String prometheus() {
+        StringBuilder out = new StringBuilder(4096);
+        Map<String, Operation> sorted = new TreeMap<>(operations);
+
+        out.append("# HELP properties_operation_seconds Latency of database operations and tasks.\n");
+        out.append("# TYPE properties_operation_seconds summary\n");
+        for (Operation op : sorted.values()) {
+            summary(out, "properties_operation_seconds", "op", op.name, op.latency);
+        }
+        out.append("# HELP properties_operation_errors_total Operations that failed.\n");
+        out.append("# TYPE properties_operation_errors_total counter\n");
+        for (Operation op : sorted.values()) {
+            sample(out, "properties_operation_errors_total", "op", op.name, null, op.getErrors());
+        }
+        out.append("# HELP properties_operation_rows_total Rows returned or written by operations.\n");
+        out.append("# TYPE properties_operation_rows_total counter\n");
+        for (Operation op : sorted.values()) {
+            sample(out, "properties_operation_rows_total", "op", op.name, null, op.getRows());
+        }
+
+        out.append("# HELP properties_statement_seconds Execution time of SQL statements on pooled connections.\n");
+        out.append("# TYPE properties_statement_seconds summary\n");
+        for (StatementRegistry.Stats stats : StatementRegistry.snapshot()) {
+            summary(out, "properties_statement_seconds", "statement", stats.getName(), stats.getLatency());
+        }
+        out.append("# TYPE properties_statement_failures_total counter\n");
+        for (StatementRegistry.Stats stats : StatementRegistry.snapshot()) {
+            sample(out, "properties_statement_failures_total", "statement", stats.getName(), null, stats.getFailures());
+        }
+
+        for (Map.Entry<String, LongSupplier> gauge : new TreeMap<>(gauges).entrySet()) {
+            String name = "properties_" + gauge.getKey();
+            out.append("# TYPE ").append(name).append(" gauge\n");
+            out.append(name).append(' ').append(gauge.getValue().getAsLong()).append('\n');
+        }
+        return out.toString();
+    }
+
+    private static void summary(StringBuilder out, String metric, String label, String value, LatencyHistogram latency) {
+        for (double quantile : QUANTILES) {
+            sample(out, metric, label, value, "quantile=\"" + quantile + "\"", seconds(latency.percentile(quantile * 100)));
+        }
+        sample(out, metric + "_sum", label, value, null, seconds(latency.getTotalNanos()));
+        sample(out, metric + "_count", label, value, null, latency.getCount());
+    }
+
+    private static void sample(StringBuilder out, String metric, String label, String value, String extraLabel, Object sample) {
+        out.append(metric).append('{').append(label).append("=\"").append(escapeLabel(value)).append('"');
+        if (extraLabel != null) {
+            out.append(',').append(extraLabel);
+        }
+        out.append("} ").append(sample).append('\n');
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+    }
+
+    static String escapeLabel(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    // One line: totals, the three operations with the most total time, and every gauge
+    public static String summaryLine() {
+        long calls = 0;
+        long errors = 0;
+        List<Operation> busiest = new ArrayList<>();
+        for (Operation op : operations.values()) {
+            calls += op.getCalls();
+            errors += op.getErrors();
+            if (op.getCalls() > 0) {
+                busiest.add(op);
+            }
+        }
+        busiest.sort((a, b) -> Long.compare(b.latency.getTotalNanos(), a.latency.getTotalNanos()));
+
+        StringBuilder line = new StringBuilder("metrics: calls=").append(calls).append(", errors=").append(errors);
+        for (int i = 0; i < Math.min(3, busiest.size()); i++) {
+            Operation op = busiest.get(i);
+            line.append(String.format(Locale.ROOT, " | %s n=%d p50=%.3fms p99=%.3fms", op.name, op.getCalls(),
+                    op.latency.percentile(50) / 1e6, op.latency.percentile(99) / 1e6));
+        }
+        for (Map.Entry<String, LongSupplier> gauge : new TreeMap<>(gauges).entrySet()) {
+            line.append(" | ").append(gauge.getKey()).append('=').append(gauge.getValue().getAsLong());
+        }
+        return line.toString();
+    }
+
+    // Log summaryLine() periodically; does nothing while metrics are disabled
+    public static synchronized void startReporter() {
+        if (reporter != null || !enabled || REPORT_SECONDS <= 0) {
+            return;
+        }
+        reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(() -> System.out.println(summaryLine()), REPORT_SECONDS, REPORT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public static synchronized void stopReporter() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Groups properties by owner name with fork/join.
+// The input is split into chunks; each chunk is grouped into its own HashMap by the worker that owns it,
+// and the partial maps are merged pairwise on the way back up. No map or list is ever shared between
+// threads while it is being written, so no locking is needed and no entries can be lost.
+public class OwnerGrouping {
+    private static final int CHUNK_SIZE = 4_096;  // Below this a chunk is grouped sequentially
+
+    // Houses first (by street number), then apartments (by floor)
+    static final Comparator<IProperty> PROPERTY_ORDER = (p1, p2) -> {
+        if (p1 instanceof House && p2 instanceof House) {
+            return ((House) p1).compareTo((House) p2);
+        } else if (p1 instanceof Apartment && p2 instanceof Apartment) {
+            return ((Apartment) p1).compareTo((Apartment) p2);
+        }
+        return p1 instanceof House ? -1 : p2 instanceof House ? 1 : 0;
+    };
+
+    public static Map<String, List<IProperty>> group(List<IProperty> properties) {
+        Map<String, List<IProperty>> groups = properties.size() <= CHUNK_SIZE
+                ? groupRange(properties, 0, properties.size())
+                : ForkJoinPool.commonPool().invoke(new GroupTask(properties, 0, properties.size()));
+
+        // Each owner's list is private to its group, so they can be sorted independently
+        groups.values().parallelStream().forEach(list -> list.sort(PROPERTY_ORDER));
+        return groups;
+    }
+
+    private static Map<String, List<IProperty>> groupRange(List<IProperty> properties, int from, int to) {
+        Map<String, List<IProperty>> groups = new HashMap<>();
+        for (int i = from; i < to; i++) {
+            IProperty property = properties.get(i);
+            groups.computeIfAbsent(property.getOwner().getName(), k -> new ArrayList<>()).add(property);
+        }
+        return groups;
+    }
+
+    // Merge the smaller map into the larger one
+    private static Map<String, List<IProperty>> merge(Map<String, List<IProperty>> left, Map<String, List<IProperty>> right) {
+        if (left.size() < right.size()) {
+            Map<String, List<IProperty>> swap = left;
+            left = right;
+            right = swap;
+        }
+        for (Map.Entry<String, List<IProperty>> entry : right.entrySet()) {
+            List<IProperty> existing = left.putIfAbsent(entry.getKey(), entry.getValue());
+            if (existing != null) {
+                existing.addAll(entry.getValue());
+            }
+        }
+        return left;
+    }
+
+    private static class GroupTask extends RecursiveTask<Map<String, List<IProperty>>> {
+        private static final long serialVersionUID = 1L;  // ForkJoinTask is Serializable; these tasks never are serialized
+
+        private final List<IProperty> properties;
+        private final int from;
+        private final int to;
+
+        GroupTask(List<IProperty> properties, int from, int to) {
+            this.properties = properties;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Map<String, List<IProperty>> compute() {
+            if (to - from <= CHUNK_SIZE) {
+                return groupRange(properties, from, to);
+            }
+            int middle = (from + to) >>> 1;
+            GroupTask left = new GroupTask(properties, from, middle);
+            left.fork();
+            Map<String, List<IProperty>> right = new GroupTask(properties, middle, to).compute();
+            return merge(left.join(), right);
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package org.example;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+// Rent payments as one atomic step.
+// RentPayments has a UNIQUE (lease_id, payment_period) key (added by SchemaMigrations), where
+// payment_period is the calendar month as yyyymm. A payment is a lease lookup followed by a plain INSERT:
+// if the month is already paid the insert fails on the unique key, so two concurrent payments can never
+// both succeed, and no separate "already paid" query (or lock) is needed. That is two round trips at most.
+// If the key is missing (SchemaMigrations could not add it, e.g. because of months paid twice before it
+// existed), the check and insert run in one transaction holding the lease row's lock instead.
+public class PaymentEngine {
+    // The lease in force on the payment date, as a property can have several back-to-back leases
+    static final String LEASE_FOR_PROPERTY = StatementRegistry.named("payment.leaseForProperty", """
+            SELECT l.monthlyRent, l.id, t.name AS tenant_name
+            FROM Lease l
+            JOIN Person t ON l.tenant_id = t.id
+            WHERE l.property_id = (SELECT id FROM Property WHERE address_key = ?)
+              AND l.startDate <= CURRENT_DATE AND l.endDate >= CURRENT_DATE
+            """);
+    static final String LEASE_FOR_PROPERTY_ON = StatementRegistry.named("payment.leaseForPropertyOn", """
+            SELECT l.monthlyRent, l.id, t.name AS tenant_name
+            FROM Lease l
+            JOIN Person t ON l.tenant_id = t.id
+            WHERE l.property_id = (SELECT id FROM Property WHERE address_key = ?)
+              AND l.startDate <= ? AND l.endDate >= ?
+            """);
+    // The period comes from the database clock, like payment_date, so both always agree
+    static final String INSERT_PAYMENT = StatementRegistry.named("payment.insert", """
+            INSERT INTO RentPayments (property_address, tenant_name, payment_date, amount_paid, lease_id, payment_period)
+            VALUES (?, ?, NOW(), ?, ?, YEAR(CURRENT_DATE) * 100 + MONTH(CURRENT_DATE))
+            """);
+    // A payment accepted earlier (WriteJournal) keeps the time and month it was made in
+    static final String INSERT_PAYMENT_AT = StatementRegistry.named("payment.insertAt", """
+            INSERT INTO RentPayments (property_address, tenant_name, payment_date, amount_paid, lease_id, payment_period)
+            VALUES (?, ?, ?, ?, ?, ?)
+            """);
+
+    // Used only without the unique key
+    static final String LOCK_LEASE = StatementRegistry.named("payment.lockLease", "SELECT id FROM Lease WHERE id = ? FOR UPDATE");
+    static final String PAID_THIS_PERIOD = StatementRegistry.named("payment.paidThisPeriod",
+            "SELECT 1 FROM RentPayments WHERE lease_id = ? AND payment_period = YEAR(CURRENT_DATE) * 100 + MONTH(CURRENT_DATE)");
+    static final String PAID_IN_PERIOD = StatementRegistry.named("payment.paidInPeriod",
+            "SELECT 1 FROM RentPayments WHERE lease_id = ? AND payment_period = ?");
+
+    private static final int MYSQL_DUPLICATE_KEY = 1062;
+
+    // Whether RentPayments has the unique (lease_id, payment_period) key: recorded by SchemaMigrations,
+    // otherwise looked up on the first payment
+    private static volatile Boolean uniqueKey;
+
+    public enum Outcome {
+        PAID,
+        ALREADY_PAID,     // A payment for this lease and month already exists
+        NO_LEASE,
+        AMOUNT_MISMATCH   // The amount must equal the monthly rent
+    }
+
+    public static class Result {
+        private final Outcome outcome;
+        private final double monthlyRent;
+
+        Result(Outcome outcome, double monthlyRent) {
+            this.outcome = outcome;
+            this.monthlyRent = monthlyRent;
+        }
+
+        public Outcome getOutcome() {
+            return outcome;
+        }
+
+        public double getMonthlyRent() {
+            return monthlyRent;
+        }
+    }
+
+    public static Result pay(Connection connection, String propertyAddress, double amount) throws SQLException {
+        return pay(connection, propertyAddress, amount, null);
+    }
+
+    // A payment made at `paidAtMillis` (by the JVM's clock and time zone) rather than now
+    public static Result pay(Connection connection, String propertyAddress, double amount, long paidAtMillis) throws SQLException {
+        return pay(connection, propertyAddress, amount, new Timestamp(paidAtMillis));
+    }
+
+    private static Result pay(Connection connection, String propertyAddress, double amount, Timestamp paidAt) throws SQLException {
+        double monthlyRent;
+        int leaseId;
+        String tenantName;
+        try (PreparedStatement stmt = connection.prepareStatement(paidAt == null ? LEASE_FOR_PROPERTY : LEASE_FOR_PROPERTY_ON)) {
+            stmt.setString(1, Address.normalize(propertyAddress));
+            if (paidAt != null) {
+                Date paidOn = Date.valueOf(paidAt.toLocalDateTime().toLocalDate());
+                stmt.setDate(2, paidOn);
+                stmt.setDate(3, paidOn);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return new Result(Outcome.NO_LEASE, 0);
+                }
+                monthlyRent = rs.getDouble("monthlyRent");
+                leaseId = rs.getInt("id");
+                tenantName = rs.getString("tenant_name");
+            }
+        }
+
+        Main.validateMonthlyRent(monthlyRent);  // Validate that rent is positive
+        if (amount != monthlyRent) {
+            return new Result(Outcome.AMOUNT_MISMATCH, monthlyRent);
+        }
+        if (!hasUniqueKey(connection)) {
+            return payLocked(connection, propertyAddress, tenantName, amount, leaseId, monthlyRent, paidAt);
+        }
+        return insert(connection, propertyAddress, tenantName, amount, leaseId, monthlyRent, paidAt);
+    }
+
+    private static Result insert(Connection connection, String propertyAddress, String tenantName, double amount,
+                                 int leaseId, double monthlyRent, Timestamp paidAt) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(paidAt == null ? INSERT_PAYMENT : INSERT_PAYMENT_AT)) {
+            stmt.setString(1, propertyAddress);
+            stmt.setString(2, tenantName);
+            if (paidAt == null) {
+                stmt.setDouble(3, amount);
+                stmt.setInt(4, leaseId);
+            } else {
+                stmt.setTimestamp(3, paidAt);
+                stmt.setDouble(4, amount);
+                stmt.setInt(5, leaseId);
+                stmt.setInt(6, period(paidAt));
+            }
+            stmt.executeUpdate();
+            return new Result(Outcome.PAID, monthlyRent);
+        } catch (SQLException e) {
+            if (isDuplicateKey(e)) {
+                return new Result(Outcome.ALREADY_PAID, monthlyRent);
+            }
+            throw e;
+        }
+    }
+
+    // Nothing in the database stops a second payment for the month, so the lease row's lock serialises payments
+    // for the lease while the month is checked and the payment inserted. Inside a caller's transaction (e.g. the
+    // WriteJournal's batch) the lock is held until the caller commits.
+    private static Result payLocked(Connection connection, String propertyAddress, String tenantName, double amount,
+                                    int leaseId, double monthlyRent, Timestamp paidAt) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            try (PreparedStatement stmt = connection.prepareStatement(LOCK_LEASE)) {
+                stmt.setInt(1, leaseId);
+                stmt.executeQuery().close();
+            }
+            boolean paid;
+            try (PreparedStatement stmt = connection.prepareStatement(paidAt == null ? PAID_THIS_PERIOD : PAID_IN_PERIOD)) {
+                stmt.setInt(1, leaseId);
+                if (paidAt != null) {
+                    stmt.setInt(2, period(paidAt));
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    paid = rs.next();
+                }
+            }
+            Result result = paid
+                    ? new Result(Outcome.ALREADY_PAID, monthlyRent)
+                    : insert(connection, propertyAddress, tenantName, amount, leaseId, monthlyRent, paidAt);
+            if (autoCommit) {
+                connection.commit();
+            }
+            return result;
+        } catch (SQLException e) {
+            if (autoCommit) {
+                connection.rollback();
+            }
+            throw e;
+        } finally {
+            if (autoCommit) {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    private static int period(Timestamp paidAt) {
+        LocalDateTime local = paidAt.toLocalDateTime();
+        return local.getYear() * 100 + local.getMonthValue();
+    }
+
+    static boolean hasUniqueKey(Connection connection) throws SQLException {
+        Boolean known = uniqueKey;
+        if (known == null) {
+            known = SchemaMigrations.hasIndex(connection, "RentPayments", "uq_rent_payment_period");
+            uniqueKey = known;
+        }
+        return known;
+    }
+
+    static void uniqueKeyChecked(boolean present) {
+        uniqueKey = present;
+    }
+
+    // MySQL reports error 1062 (SQLState 23000, shared with other constraint errors); standard SQL uses 23505
+    static boolean isDuplicateKey(SQLException e) {
+        return e.getErrorCode() == MYSQL_DUPLICATE_KEY || "23505".equals(e.getSQLState());
+    }
+}
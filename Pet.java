@@ -34,4 +34,9 @@ public class Pet implements IAnimal,Serializable {
     public String getInfo() {
         return "Pet type: " + petType;
     }
+
+    // Description of this pet; subclasses such as Dog add their own details
+    public String getPetInfo() {
+        return getInfo();
+    }
 }
\ No newline at end of file
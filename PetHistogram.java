@@ -0,0 +1,70 @@
+package org.example;
+
+import java.io.IOException;
+
+// Pet counts per type for one property, built once from its pet type codes (see PetTypeDictionary).
+// Types are kept in the order they first appear as two parallel arrays (no map, no boxing);
+// properties rarely have more than a handful of pet types, so a linear scan beats hashing.
+final class PetHistogram {
+    static final PetHistogram EMPTY = new PetHistogram(new short[0], new int[0]);
+
+    private final short[] types;
+    private final int[] counts;
+
+    private PetHistogram(short[] types, int[] counts) {
+        this.types = types;
+        this.counts = counts;
+    }
+
+    static PetHistogram of(short[] petCodes) {
+        if (petCodes.length == 0) {
+            return EMPTY;
+        }
+        short[] types = new short[petCodes.length];
+        int[] counts = new int[petCodes.length];
+        int distinct = 0;
+        for (short code : petCodes) {
+            int i = 0;
+            while (i < distinct && types[i] != code) i++;
+            if (i == distinct) {
+                types[distinct++] = code;
+            }
+            counts[i]++;
+        }
+        if (distinct < petCodes.length) {
+            types = java.util.Arrays.copyOf(types, distinct);
+            counts = java.util.Arrays.copyOf(counts, distinct);
+        }
+        return new PetHistogram(types, counts);
+    }
+
+    int size() {
+        return types.length;
+    }
+
+    short type(int i) {
+        return types[i];
+    }
+
+    int count(int i) {
+        return counts[i];
+    }
+
+    // Writes e.g. "2 Dogs, 1 Cat", or "no pets"
+    void appendTo(Appendable out) throws IOException {
+        if (types.length == 0) {
+            out.append("no pets");
+            return;
+        }
+        for (int i = 0; i < types.length; i++) {
+            if (i > 0) out.append(", ");
+            if (counts[i] < 10) {
+                out.append((char) ('0' + counts[i]));
+            } else {
+                out.append(Integer.toString(counts[i]));
+            }
+            out.append(' ').append(PetTypeDictionary.name(types[i]));
+            if (counts[i] > 1) out.append('s'); // Pluralize if more than one
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package org.example;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// In-process count of pets per type (PropertyPet rows per Pet type), so "Count Pets" needs no GROUP BY.
+// Seeded from the database on first use, updated by every write path once its statement has succeeded,
+// and periodically reconciled against the database to correct any drift (e.g. writes made by another
+// process, or a counter update that raced with a reconciliation).
+public class PetTypeCounters {
+    private static final long RECONCILE_INTERVAL_SECONDS = Long.getLong("petCounters.reconcileSeconds", 300);
+
+    static final String COUNT_QUERY = """
+            SELECT pe.id, pe.type, COUNT(*) AS count
+            FROM PropertyPet pp
+            JOIN Pet pe ON pp.pet_id = pe.id
+            GROUP BY pe.id, pe.type
+            """;
+
+    // Keyed by PetTypeDictionary code
+    private static final ConcurrentHashMap<Short, LongAdder> counters = new ConcurrentHashMap<>();
+    private static volatile boolean seeded = false;
+    private static ScheduledExecutorService reconciler;
+
+    public static boolean isSeeded() {
+        return seeded;
+    }
+
+    public static void added(short petCode, long pets) {
+        counters.computeIfAbsent(petCode, k -> new LongAdder()).add(pets);
+    }
+
+    public static void removed(short petCode, long pets) {
+        counters.computeIfAbsent(petCode, k -> new LongAdder()).add(-pets);
+    }
+
+    // Replace the counters with the database's counts
+    public static synchronized void reconcile(Connection connection) throws SQLException {
+        Map<Short, Long> actual = new HashMap<>();
+        try (PreparedStatement stmt = connection.prepareStatement(COUNT_QUERY);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                actual.merge(PetTypeDictionary.code(rs.getInt("id"), rs.getString("type")), rs.getLong("count"), Long::sum);
+            }
+        }
+        for (Map.Entry<Short, LongAdder> entry : counters.entrySet()) {
+            if (!actual.containsKey(entry.getKey())) {
+                entry.getValue().reset();
+            }
+        }
+        actual.forEach((code, count) -> {
+            LongAdder adder = counters.computeIfAbsent(code, k -> new LongAdder());
+            adder.add(count - adder.sum());
+        });
+        seeded = true;
+    }
+
+    public static void reconcile() throws Exception {
+        try (Connection connection = DatabaseConnection.getConnection()) {
+            reconcile(connection);
+        }
+    }
+
+    // Seed the counters and reconcile them in the background every petCounters.reconcileSeconds
+    public static synchronized void start() {
+        if (reconciler != null) {
+            return;
+        }
+        reconciler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "pet-counter-reconciler");
+            thread.setDaemon(true);  // Never keep the JVM alive just for reconciliation
+            return thread;
+        });
+        reconciler.execute(PetTypeCounters::reconcileQuietly);
+        reconciler.scheduleWithFixedDelay(PetTypeCounters::reconcileQuietly,
+                RECONCILE_INTERVAL_SECONDS, RECONCILE_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public static synchronized void stop() {
+        if (reconciler != null) {
+            reconciler.shutdownNow();
+            reconciler = null;
+        }
+    }
+
+    private static void reconcileQuietly() {
+        try {
+            reconcile();
+        } catch (Exception e) {
+            System.out.println("Warning: could not reconcile pet counts: " + e.getMessage());
+        }
+    }
+
+    // Current counts by type name, O(number of types); types with no pets are left out
+    public static Map<String, Integer> snapshot() {
+        Map<String, Integer> petCount = new HashMap<>();
+        counters.forEach((code, adder) -> {
+            long count = adder.sum();
+            if (count > 0) {
+                petCount.merge(PetTypeDictionary.name(code), (int) count, Integer::sum);
+            }
+        });
+        return petCount;
+    }
+}
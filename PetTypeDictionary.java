@@ -0,0 +1,177 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Process-wide dictionary of pet types, mirroring the Pet table (id, type).
+// Each type name gets a dense short code; properties store their pets as a short[] of codes, and getPets()
+// hands out one shared Pet instance per type instead of a separate object per pet.
+// Codes are local to this process (they are not the database ids); dbId()/codeForDbId() translate between them.
+// Names are matched case-insensitively, like the Pet table's collation: "dog" and "Dog" share a code, and
+// name() returns the spelling seen first.
+public class PetTypeDictionary {
+    public static final short[] NO_PETS = new short[0];
+    static final int UNKNOWN_DB_ID = -1;
+
+    private static final ConcurrentHashMap<String, Short> codes = new ConcurrentHashMap<>();  // By key(type)
+    private static final ConcurrentHashMap<Integer, Short> codesByDbId = new ConcurrentHashMap<>();
+
+    // Indexed by code; replaced (never mutated in place) under the class lock, so readers need no locking
+    private static volatile String[] names = new String[0];
+    private static volatile Pet[] pets = new Pet[0];
+    private static volatile int[] dbIds = new int[0];
+
+    // Code for a type name, assigning the next code the first time the name is seen
+    public static short code(String type) {
+        Short code = codes.get(key(type));
+        return code != null ? code : assign(type);
+    }
+
+    // Code for a type name that has been seen, or -1; unlike code(), never assigns one (e.g. for a search term)
+    public static int find(String type) {
+        Short code = codes.get(key(type));
+        return code != null ? code : -1;
+    }
+
+    private static String key(String type) {
+        return type.toLowerCase(Locale.ROOT);
+    }
+
+    // Code for a row of the Pet table, recording the database id
+    public static short code(int dbId, String type) {
+        Short code = codesByDbId.get(dbId);
+        if (code != null) {
+            return code;
+        }
+        short assigned = code(type);
+        register(assigned, dbId);
+        return assigned;
+    }
+
+    private static synchronized short assign(String type) {
+        Short existing = codes.get(key(type));
+        if (existing != null) {
+            return existing;
+        }
+        int next = names.length;
+        if (next > Short.MAX_VALUE) {
+            throw new IllegalStateException("Too many pet types (limit " + (Short.MAX_VALUE + 1) + ")");
+        }
+        String[] grownNames = Arrays.copyOf(names, next + 1);
+        Pet[] grownPets = Arrays.copyOf(pets, next + 1);
+        int[] grownIds = Arrays.copyOf(dbIds, next + 1);
+        grownNames[next] = type;
+        grownPets[next] = new Pet(type);
+        grownIds[next] = UNKNOWN_DB_ID;
+        // Publish the arrays before the code so a reader that sees the code can resolve it
+        dbIds = grownIds;
+        pets = grownPets;
+        names = grownNames;
+        codes.put(key(type), (short) next);
+        return (short) next;
+    }
+
+    // The first database id of a type sticks: a second row for the same name (e.g. "Dog" and "dog" from before
+    // the names were unique) only maps to the existing code, so dbId() never changes under its readers
+    private static synchronized void register(short code, int dbId) {
+        codesByDbId.putIfAbsent(dbId, code);
+        if (dbIds[code] != UNKNOWN_DB_ID) {
+            return;
+        }
+        int[] grownIds = dbIds.clone();
+        grownIds[code] = dbId;
+        dbIds = grownIds;
+    }
+
+    // Record the database id of a type that has just been looked up or inserted
+    public static void register(int dbId, String type) {
+        register(code(type), dbId);
+    }
+
+    public static String name(short code) {
+        return names[code];
+    }
+
+    // Shared, immutable-in-practice Pet for the type
+    public static Pet pet(short code) {
+        return pets[code];
+    }
+
+    // Database id of the type, or -1 if it has not been seen in the Pet table yet
+    public static int dbId(short code) {
+        return dbIds[code];
+    }
+
+    public static int size() {
+        return names.length;
+    }
+
+    public static short[] encode(Pet[] pets) {
+        if (pets == null || pets.length == 0) {
+            return NO_PETS;
+        }
+        short[] encoded = new short[pets.length];
+        for (int i = 0; i < pets.length; i++) {
+            encoded[i] = code(pets[i].getPetType());
+        }
+        return encoded;
+    }
+
+    public static Pet[] decode(short[] petCodes) {
+        Pet[] shared = pets;
+        Pet[] decoded = new Pet[petCodes.length];
+        for (int i = 0; i < petCodes.length; i++) {
+            decoded[i] = shared[petCodes[i]];
+        }
+        return decoded;
+    }
+
+    // Load every row of the Pet table (called at startup; later inserts register themselves)
+    public static int sync(Connection connection) throws SQLException {
+        int loaded = 0;
+        try (PreparedStatement stmt = connection.prepareStatement("SELECT id, type FROM Pet");
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                code(rs.getInt("id"), rs.getString("type"));
+                loaded++;
+            }
+        }
+        return loaded;
+    }
+
+    public static void syncQuietly() {
+        try (Connection connection = DatabaseConnection.getConnection()) {
+            sync(connection);
+        } catch (Exception e) {
+            System.out.println("Warning: could not load pet types: " + e.getMessage());
+        }
+    }
+
+    // Codes are process-local, so serialized properties store their pets by name
+    static void writeCodes(ObjectOutputStream out, short[] petCodes) throws IOException {
+        out.writeInt(petCodes.length);
+        for (short code : petCodes) {
+            out.writeUTF(name(code));
+        }
+    }
+
+    static short[] readCodes(ObjectInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length == 0) {
+            return NO_PETS;
+        }
+        short[] petCodes = new short[length];
+        for (int i = 0; i < length; i++) {
+            petCodes[i] = code(in.readUTF());
+        }
+        return petCodes;
+    }
+}
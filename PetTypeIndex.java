@@ -0,0 +1,156 @@
+package org.example;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Inverted index from pet type (PetTypeDictionary code) to the ids of the properties that have one.
+// It holds one canonical property object per database id, loaded once with PropertyLoader, so queries
+// return shared references instead of re-reading and re-creating properties. The pet write paths update
+// it in place; other writes (new properties, imports) call invalidate() and it is rebuilt on next use.
+public class PetTypeIndex {
+    private final Map<Short, PropertyIdSet> byType = new HashMap<>();
+    private final Map<Integer, IProperty> properties = new HashMap<>();
+    private final Map<String, Integer> idsByAddress = new HashMap<>();  // Address.getKey() -> property id
+
+    private static PetTypeIndex current;
+    private static long generation = 0;  // Bumped by invalidate(), so a build that raced it is dropped
+
+    public static PetTypeIndex build(Connection connection) throws SQLException {
+        PetTypeIndex index = new PetTypeIndex();
+        PropertyLoader.forEach(connection, index::put);
+        return index;
+    }
+
+    // The current index, built from the database on first use or after invalidate()
+    public static PetTypeIndex get() throws Exception {
+        long started;
+        synchronized (PetTypeIndex.class) {
+            if (current != null) {
+                return current;
+            }
+            started = generation;
+        }
+        PetTypeIndex built;
+        try (Connection connection = DatabaseConnection.getConnection()) {
+            built = build(connection);
+        }
+        synchronized (PetTypeIndex.class) {
+            if (current == null && generation == started) {
+                current = built;
+            }
+            return current != null ? current : built;
+        }
+    }
+
+    public static synchronized void invalidate() {
+        current = null;
+        generation++;
+    }
+
+    // A pet (count rows of one type) was linked to the property at this address
+    public static synchronized void petAdded(String propertyAddress, short petCode, int count) {
+        if (current != null && !current.update(Address.normalize(propertyAddress), petCode, count)) {
+            invalidate();
+        }
+    }
+
+    // Every pet of this type was unlinked from the property at this address
+    public static synchronized void petTypeRemoved(String propertyAddress, short petCode) {
+        if (current != null && !current.update(Address.normalize(propertyAddress), petCode, 0)) {
+            invalidate();
+        }
+    }
+
+    private void put(IProperty property, int id) {
+        properties.put(id, property);
+        idsByAddress.put(property.getParsedAddress().getKey(), id);
+        for (short code : petCodes(property)) {
+            byType.computeIfAbsent(code, k -> new PropertyIdSet()).add(id);
+        }
+    }
+
+    // Replaces the canonical property with a copy whose pets of this type number `count`
+    private boolean update(String addressKey, short petCode, int count) {
+        Integer id = idsByAddress.get(addressKey);
+        if (id == null) {
+            return false;
+        }
+        IProperty property = properties.get(id);
+        short[] codes = petCodes(property);
+        short[] updated = new short[codes.length + count];
+        int length = 0;
+        for (short code : codes) {
+            if (code != petCode || count > 0) {
+                updated[length++] = code;
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            updated[length++] = petCode;
+        }
+        properties.put(id, withPetCodes(property, java.util.Arrays.copyOf(updated, length)));
+        PropertyIdSet ids = byType.computeIfAbsent(petCode, k -> new PropertyIdSet());
+        if (count > 0) {
+            ids.add(id);
+        } else {
+            ids.remove(id);
+        }
+        return true;
+    }
+
+    // Properties that have at least one pet of every given type, in id order
+    public List<IProperty> propertiesWithAll(String... petTypes) {
+        List<IProperty> result = new ArrayList<>();
+        synchronized (PetTypeIndex.class) {
+            PropertyIdSet matches = null;
+            for (String petType : petTypes) {
+                int code = PetTypeDictionary.find(petType);  // A misspelt search must not add a pet type
+                PropertyIdSet ids = code < 0 ? null : byType.get((short) code);
+                if (ids == null) {
+                    return result;
+                }
+                matches = matches == null ? ids : matches.and(ids);
+            }
+            if (matches != null) {
+                matches.forEach(id -> result.add(properties.get(id)));
+            }
+        }
+        return result;
+    }
+
+    // Every pet type with the properties that have one (each property once per type)
+    public Map<String, List<IProperty>> groupByPetType() {
+        Map<String, List<IProperty>> groups = new LinkedHashMap<>();
+        synchronized (PetTypeIndex.class) {
+            byType.forEach((code, ids) -> {
+                if (!ids.isEmpty()) {
+                    List<IProperty> group = new ArrayList<>(ids.cardinality());
+                    ids.forEach(id -> group.add(properties.get(id)));
+                    groups.put(PetTypeDictionary.name(code), group);
+                }
+            });
+        }
+        return groups;
+    }
+
+    private static short[] petCodes(IProperty property) {
+        if (property instanceof House) {
+            return ((House) property).getPetCodes();
+        }
+        if (property instanceof Apartment) {
+            return ((Apartment) property).getPetCodes();
+        }
+        return PetTypeDictionary.encode(property.getPets());
+    }
+
+    private static IProperty withPetCodes(IProperty property, short[] petCodes) {
+        if (property instanceof House) {
+            return new House(property.getOwner(), petCodes, property.getParsedAddress(), property.isGround());
+        }
+        return new Apartment(property.getOwner(), property.getFloor(), property.getParsedAddress(), petCodes);
+    }
+}
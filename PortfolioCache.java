@@ -0,0 +1,45 @@
+package org.example;
+
+import java.util.List;
+
+// Read-through caches in front of Main's property, person and address queries (pets are loaded with the
+// properties).
+// Every write path in Main calls invalidateAll() once its statements have run.
+public class PortfolioCache {
+    private static final int MAX_ENTRIES = Integer.getInteger("cache.maxEntries", 10_000);
+
+    static final String ALL = "all";  // Key for the whole-table entries
+
+    static final LruCache<String, List<IProperty>> PROPERTIES = new LruCache<>("properties", 1);
+    static final LruCache<String, List<Person>> PERSONS = new LruCache<>("persons", 1);
+    static final LruCache<String, Boolean> ADDRESSES = new LruCache<>("addressExists", MAX_ENTRIES);
+
+    static {
+        register("properties", PROPERTIES);
+        register("persons", PERSONS);
+        register("addresses", ADDRESSES);
+    }
+
+    // Hit, miss and eviction counts for /metrics and the metrics log line
+    private static void register(String name, LruCache<?, ?> cache) {
+        Metrics.gauge("cache_" + name + "_hits", cache::getHits);
+        Metrics.gauge("cache_" + name + "_misses", cache::getMisses);
+        Metrics.gauge("cache_" + name + "_evictions", cache::getEvictions);
+    }
+
+    // Normalised key for address lookups, the same value stored in Property.address_key
+    static String addressKey(String address) {
+        return Address.normalize(address);
+    }
+
+    public static void invalidateAll() {
+        PROPERTIES.invalidateAll();
+        PERSONS.invalidateAll();
+        ADDRESSES.invalidateAll();
+    }
+
+    public static String stats() {
+        String nl = System.lineSeparator();
+        return PROPERTIES + nl + PERSONS + nl + ADDRESSES;
+    }
+}
@@ -0,0 +1,447 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+// Versioned, columnar binary snapshot of the whole portfolio, so a cold start or an analytics job can load
+// millions of properties from a local file instead of querying the database.
+//
+// Layout (little endian). A fixed 80-byte header:
+//   magic, version, created (epoch millis), watermark (caller-defined position the snapshot is current up to),
+//   owner, pet type, property, pet link and lease counts, CRC32C of the body,
+//   the DatabaseStamp (Property rows, highest Property id, PropertyPet rows, Lease rows, highest Lease id)
+// followed by the body, one column after another:
+//   owners       names
+//   pet types    names, database ids (-1 if unknown)
+//   properties   flags (house, ground), owner index, floor, address, first pet link (count + 1 entries)
+//   pet links    pet type index per pet, property by property
+//   leases       property index (-1 if the property is not in the snapshot), tenant name, address (empty
+//                unless the property index is -1), start day, end day (epoch days), monthly rent
+// A string column is its end offsets (int per string) followed by the UTF-8 bytes.
+// Leases point at their property's row, so a loaded lease shares the property's Address.
+// Pet types are stored by name and database id because PetTypeDictionary codes are local to a process.
+//
+// The file is written to a temporary file and moved into place, so readers never see a partial snapshot;
+// it is read through a memory-mapped buffer with bulk copies of each column, and the objects are then built
+// in parallel (each row depends only on its own column entries).
+public class PortfolioSnapshot {
+    static final int MAGIC = 0x504F5254;  // "PORT"
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 80;
+
+    private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+    private static final byte HOUSE = 1;
+    private static final byte GROUND = 2;
+
+    private static final Metrics.Operation WRITE = Metrics.operation("snapshot.write");
+    private static final Metrics.Operation READ = Metrics.operation("snapshot.read");
+
+    static final String DATABASE_STAMP = StatementRegistry.named("snapshot.databaseStamp", """
+            SELECT (SELECT COUNT(*) FROM Property), (SELECT COALESCE(MAX(id), 0) FROM Property),
+                   (SELECT COUNT(*) FROM PropertyPet),
+                   (SELECT COUNT(*) FROM Lease l JOIN Person t ON l.tenant_id = t.id),
+                   (SELECT COALESCE(MAX(l.id), 0) FROM Lease l JOIN Person t ON l.tenant_id = t.id)
+            """);
+
+    // Row counts and highest ids of the tables a snapshot mirrors, as of its watermark. WarmStart checks the
+    // database against them before a warm start, so writes that bypassed the change log force a cold one.
+    // Leases count only with a tenant row, like the leases export() reads.
+    public static class DatabaseStamp {
+        final int properties;
+        final int maxPropertyId;
+        final int petLinks;
+        final int leases;
+        final int maxLeaseId;
+
+        DatabaseStamp(int properties, int maxPropertyId, int petLinks, int leases, int maxLeaseId) {
+            this.properties = properties;
+            this.maxPropertyId = maxPropertyId;
+            this.petLinks = petLinks;
+            this.leases = leases;
+            this.maxLeaseId = maxLeaseId;
+        }
+
+        public static DatabaseStamp query(Connection connection) throws SQLException {
+            try (PreparedStatement stmt = connection.prepareStatement(DATABASE_STAMP);
+                 ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return new DatabaseStamp(rs.getInt(1), rs.getInt(2), rs.getInt(3), rs.getInt(4), rs.getInt(5));
+            }
+        }
+
+        @Override
+        public String toString() {
+            return properties + " properties (highest id " + maxPropertyId + "), " + petLinks + " pet links, "
+                    + leases + " leases (highest id " + maxLeaseId + ")";
+        }
+    }
+
+    // What a snapshot holds; the lists are unmodifiable
+    public static class Contents {
+        private final List<IProperty> properties;
+        private final List<Lease> leases;
+        private final long createdMillis;
+        private final long watermark;
+        private final DatabaseStamp stamp;
+        private final long bytes;
+
+        Contents(List<IProperty> properties, List<Lease> leases, long createdMillis, long watermark, DatabaseStamp stamp,
+                 long bytes) {
+            this.properties = properties;
+            this.leases = leases;
+            this.createdMillis = createdMillis;
+            this.watermark = watermark;
+            this.stamp = stamp;
+            this.bytes = bytes;
+        }
+
+        public List<IProperty> getProperties() { return properties; }
+        public List<Lease> getLeases() { return leases; }
+        public long getCreatedMillis() { return createdMillis; }
+        public long getWatermark() { return watermark; }
+        public DatabaseStamp getStamp() { return stamp; }
+        public long getBytes() { return bytes; }
+
+        @Override
+        public String toString() {
+            return String.format("%d properties, %d leases, %.1f MB, taken %s", properties.size(), leases.size(),
+                    bytes / 1e6, java.time.Instant.ofEpochMilli(createdMillis));
+        }
+    }
+
+    // Snapshot of everything in the database; returns what was written
+    public static Contents export(Path file, long watermark) throws Exception {
+        List<IProperty> properties;
+        DatabaseStamp stamp;
+        try (Connection connection = DatabaseConnection.getConnection()) {
+            stamp = DatabaseStamp.query(connection);
+            properties = PropertyLoader.loadAll(connection);
+        }
+        List<Lease> leases;
+        try (Stream<Lease> stream = PropertyRepository.streamLeases(PropertyRepository.DEFAULT_FETCH_SIZE)) {
+            leases = stream.collect(Collectors.toList());
+        }
+        long created = System.currentTimeMillis();
+        long bytes = write(file, properties, leases, created, watermark, stamp);
+        return new Contents(Collections.unmodifiableList(properties), Collections.unmodifiableList(leases), created, watermark,
+                stamp, bytes);
+    }
+
+    // Returns the size of the file written
+    public static long write(Path file, Collection<IProperty> properties, Collection<Lease> leases, long createdMillis,
+                             long watermark, DatabaseStamp stamp) throws IOException {
+        long started = WRITE.start();
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Map<Person, Integer> ownerIndex = new IdentityHashMap<>();  // One entry per shared Person
+            List<String> owners = new ArrayList<>();
+            int[] petTypeIndex = new int[PetTypeDictionary.size()];  // Process code -> snapshot index + 1 (0: not seen yet)
+            List<Short> petTypes = new ArrayList<>();
+            int petLinks = 0;
+            for (IProperty property : properties) {
+                ownerIndex.computeIfAbsent(property.getOwner(), owner -> {
+                    owners.add(owner.getName());
+                    return owners.size() - 1;
+                });
+                short[] codes = petCodes(property);
+                for (short code : codes) {
+                    if (code >= petTypeIndex.length) {  // Assigned after we sized the table
+                        petTypeIndex = Arrays.copyOf(petTypeIndex, PetTypeDictionary.size());
+                    }
+                    if (petTypeIndex[code] == 0) {
+                        petTypes.add(code);
+                        petTypeIndex[code] = petTypes.size();
+                    }
+                }
+                petLinks += codes.length;
+            }
+
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                Writer out = new Writer(channel);
+
+                writeStrings(out, owners);
+
+                List<String> petTypeNames = new ArrayList<>(petTypes.size());
+                for (short code : petTypes) {
+                    petTypeNames.add(PetTypeDictionary.name(code));
+                }
+                writeStrings(out, petTypeNames);
+                for (short code : petTypes) {
+                    out.ensure(4).putInt(PetTypeDictionary.dbId(code));
+                }
+
+                List<String> addresses = new ArrayList<>(properties.size());
+                for (IProperty property : properties) {
+                    out.ensure(1).put((byte) ((property instanceof House ? HOUSE : 0) | (property.isGround() ? GROUND : 0)));
+                    addresses.add(property.getAddress());
+                }
+                for (IProperty property : properties) {
+                    out.ensure(4).putInt(ownerIndex.get(property.getOwner()));
+                }
+                for (IProperty property : properties) {
+                    out.ensure(4).putInt(property.getFloor());
+                }
+                writeStrings(out, addresses);
+                int link = 0;
+                out.ensure(4).putInt(link);
+                for (IProperty property : properties) {
+                    link += petCodes(property).length;
+                    out.ensure(4).putInt(link);
+                }
+                for (IProperty property : properties) {
+                    for (short code : petCodes(property)) {
+                        out.ensure(2).putShort((short) (petTypeIndex[code] - 1));
+                    }
+                }
+
+                Map<Address, Integer> propertyIndex = new HashMap<>();
+                int row = 0;
+                for (IProperty property : properties) {
+                    propertyIndex.putIfAbsent(property.getParsedAddress(), row++);
+                }
+                List<String> tenants = new ArrayList<>(leases.size());
+                List<String> leaseAddresses = new ArrayList<>(leases.size());
+                for (Lease lease : leases) {
+                    Integer leased = propertyIndex.get(lease.getParsedAddress());
+                    tenants.add(lease.getTenantName());
+                    leaseAddresses.add(leased == null ? lease.getPropertyAddress() : "");
+                    out.ensure(4).putInt(leased == null ? -1 : leased);
+                }
+                writeStrings(out, tenants);
+                writeStrings(out, leaseAddresses);
+                for (Lease lease : leases) {
+                    out.ensure(4).putInt(lease.getStartDay());
+                }
+                for (Lease lease : leases) {
+                    out.ensure(4).putInt(lease.getEndDay());
+                }
+                for (Lease lease : leases) {
+                    out.ensure(8).putDouble(lease.getMonthlyRent());
+                }
+                out.flush();
+
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ORDER);
+                header.putInt(MAGIC).putInt(VERSION).putLong(createdMillis).putLong(watermark)
+                        .putInt(owners.size()).putInt(petTypes.size()).putInt(properties.size()).putInt(petLinks)
+                        .putInt(leases.size()).putInt((int) out.crc.getValue())
+                        .putInt(stamp.properties).putInt(stamp.maxPropertyId).putInt(stamp.petLinks).putInt(stamp.leases)
+                        .putInt(stamp.maxLeaseId);
+                header.clear();
+                channel.write(header, 0);
+                channel.force(true);
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            long bytes = Files.size(file);
+            WRITE.success(started, properties.size());
+            return bytes;
+        } catch (IOException | RuntimeException e) {
+            WRITE.failure(started);
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+    }
+
+    public static Contents read(Path file) throws IOException {
+        long started = READ.start();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException(file + " is not a portfolio snapshot (size " + size + ")");
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            ByteBuffer in = mapped.order(ORDER);
+            if (in.getInt() != MAGIC) {
+                throw new IOException(file + " is not a portfolio snapshot");
+            }
+            int version = in.getInt();
+            if (version != VERSION) {
+                throw new IOException(file + " has snapshot version " + version + ", this build reads version " + VERSION);
+            }
+            long created = in.getLong();
+            long watermark = in.getLong();
+            int ownerCount = in.getInt();
+            int petTypeCount = in.getInt();
+            int propertyCount = in.getInt();
+            int petLinkCount = in.getInt();
+            int leaseCount = in.getInt();
+            int checksum = in.getInt();
+            DatabaseStamp stamp = new DatabaseStamp(in.getInt(), in.getInt(), in.getInt(), in.getInt(), in.getInt());
+
+            CRC32C crc = new CRC32C();
+            crc.update(in.duplicate().position(HEADER_SIZE));
+            if ((int) crc.getValue() != checksum) {
+                throw new IOException(file + " is corrupt (checksum mismatch)");
+            }
+            in.position(HEADER_SIZE);
+
+            String[] ownerNames = readStrings(in, ownerCount);
+            Person[] owners = new Person[ownerCount];
+            for (int i = 0; i < ownerCount; i++) {
+                owners[i] = new Person(ownerNames[i]);
+            }
+
+            String[] petTypeNames = readStrings(in, petTypeCount);
+            int[] petTypeDbIds = readInts(in, petTypeCount);
+            short[] petCodes = new short[petTypeCount];  // Snapshot index -> this process's code
+            for (int i = 0; i < petTypeCount; i++) {
+                petCodes[i] = petTypeDbIds[i] == PetTypeDictionary.UNKNOWN_DB_ID
+                        ? PetTypeDictionary.code(petTypeNames[i])
+                        : PetTypeDictionary.code(petTypeDbIds[i], petTypeNames[i]);
+            }
+
+            byte[] flags = new byte[propertyCount];
+            in.get(flags);
+            int[] ownerIndex = readInts(in, propertyCount);
+            int[] floors = readInts(in, propertyCount);
+            String[] addresses = readStrings(in, propertyCount);
+            int[] firstLink = readInts(in, propertyCount + 1);
+            short[] links = new short[petLinkCount];
+            in.asShortBuffer().get(links);
+            in.position(in.position() + 2 * petLinkCount);
+
+            IProperty[] properties = new IProperty[propertyCount];
+            Arrays.parallelSetAll(properties, i -> {
+                int from = firstLink[i];
+                int count = firstLink[i + 1] - from;
+                short[] pets = PetTypeDictionary.NO_PETS;
+                if (count > 0) {
+                    pets = new short[count];
+                    for (int j = 0; j < count; j++) {
+                        pets[j] = petCodes[links[from + j]];
+                    }
+                }
+                Address address = Address.of(addresses[i]);
+                Person owner = owners[ownerIndex[i]];
+                return (flags[i] & HOUSE) != 0
+                        ? new House(owner, pets, address, (flags[i] & GROUND) != 0)
+                        : new Apartment(owner, floors[i], address, pets);
+            });
+
+            int[] leasedProperty = readInts(in, leaseCount);
+            String[] tenants = readStrings(in, leaseCount);
+            String[] leaseAddresses = readStrings(in, leaseCount);
+            int[] startDays = readInts(in, leaseCount);
+            int[] endDays = readInts(in, leaseCount);
+            double[] rents = new double[leaseCount];
+            in.asDoubleBuffer().get(rents);
+            Lease[] leases = new Lease[leaseCount];
+            Arrays.parallelSetAll(leases, i -> new Lease(tenants[i], startDays[i], endDays[i], rents[i], leasedProperty[i] < 0
+                    ? Address.of(leaseAddresses[i]) : properties[leasedProperty[i]].getParsedAddress()));
+
+            READ.success(started, propertyCount);
+            return new Contents(Collections.unmodifiableList(Arrays.asList(properties)),
+                    Collections.unmodifiableList(Arrays.asList(leases)), created, watermark, stamp, size);
+        } catch (IOException | RuntimeException e) {
+            READ.failure(started);
+            if (e instanceof java.nio.BufferUnderflowException || e instanceof IndexOutOfBoundsException) {
+                throw new IOException(file + " is truncated or corrupt", e);
+            }
+            throw e;
+        }
+    }
+
+    private static short[] petCodes(IProperty property) {
+        if (property instanceof House) {
+            return ((House) property).getPetCodes();
+        }
+        if (property instanceof Apartment) {
+            return ((Apartment) property).getPetCodes();
+        }
+        return PetTypeDictionary.encode(property.getPets());
+    }
+
+    private static void writeStrings(Writer out, List<String> values) throws IOException {
+        byte[][] encoded = new byte[values.size()][];
+        int end = 0;
+        for (int i = 0; i < encoded.length; i++) {
+            encoded[i] = values.get(i).getBytes(StandardCharsets.UTF_8);
+            end += encoded[i].length;
+            out.ensure(4).putInt(end);
+        }
+        for (byte[] bytes : encoded) {
+            out.put(bytes);
+        }
+    }
+
+    private static String[] readStrings(ByteBuffer in, int count) {
+        int[] ends = readInts(in, count);
+        byte[] bytes = new byte[count == 0 ? 0 : ends[count - 1]];
+        in.get(bytes);
+        String[] values = new String[count];
+        Arrays.parallelSetAll(values, i -> {
+            int start = i == 0 ? 0 : ends[i - 1];
+            return new String(bytes, start, ends[i] - start, StandardCharsets.UTF_8);
+        });
+        return values;
+    }
+
+    private static int[] readInts(ByteBuffer in, int count) {
+        int[] values = new int[count];
+        in.asIntBuffer().get(values);
+        in.position(in.position() + 4 * count);
+        return values;
+    }
+
+    // Buffered body writer: fills a direct buffer and writes it to the channel (after the header) when full,
+    // keeping a running checksum of everything written
+    private static class Writer {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ORDER);
+        private final CRC32C crc = new CRC32C();
+
+        Writer(FileChannel channel) throws IOException {
+            this.channel = channel;
+            channel.position(HEADER_SIZE);
+        }
+
+        ByteBuffer ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+            return buffer;
+        }
+
+        void put(byte[] bytes) throws IOException {
+            int offset = 0;
+            while (offset < bytes.length) {
+                int length = Math.min(bytes.length - offset, ensure(1).remaining());
+                buffer.put(bytes, offset, length);
+                offset += length;
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
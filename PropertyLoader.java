@@ -0,0 +1,130 @@
+package org.example;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.ObjIntConsumer;
+
+// Loads properties together with their owners and pets in a single query.
+// Rows come back ordered by property id, so each property's pets are adjacent and the
+// House/Apartment objects can be assembled in one streaming pass without per-row subqueries.
+public class PropertyLoader {
+
+    private static final int MAX_SHARED_OWNERS = 10_000;  // Keeps long cursors in bounded memory
+
+    // Columns and joins shared by every property cursor; callers append an ORDER BY that keeps a property's rows adjacent
+    static final String BASE_QUERY = """
+            SELECT p.id, p.type, p.address, p.floor, p.isGround, p.owner_id, o.name AS owner_name, pe.id AS pet_id, pe.type AS pet_type
+            FROM Property p
+            JOIN Person o ON p.owner_id = o.id
+            LEFT JOIN PropertyPet pp ON pp.property_id = p.id
+            LEFT JOIN Pet pe ON pp.pet_id = pe.id
+            """;
+
+    static final String LOAD_QUERY = BASE_QUERY + "ORDER BY p.id";
+
+    // Load every property into a list (one round trip)
+    public static List<IProperty> loadAll(Connection connection) throws SQLException {
+        List<IProperty> properties = new ArrayList<>();
+        forEach(connection, (property, id) -> properties.add(property));
+        return properties;
+    }
+
+    // Stream every property to the sink as soon as its last pet row has been read; returns the property count
+    public static int forEach(Connection connection, ObjIntConsumer<IProperty> sink) throws SQLException {
+        int count = 0;
+        try (PreparedStatement stmt = connection.prepareStatement(LOAD_QUERY);
+             ResultSet rs = stmt.executeQuery()) {
+            Cursor cursor = new Cursor(rs);
+            while (cursor.hasNext()) {
+                IProperty property = cursor.next();
+                sink.accept(property, cursor.currentId());
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Pull-based assembler over a result set produced by LOAD_QUERY (or any query with the same columns and ordering)
+    static class Cursor implements Iterator<IProperty> {
+        private final ResultSet rs;
+        private final Map<Integer, Person> owners = new HashMap<>();  // Share one Person per owner
+        private short[] petBuffer = new short[8];  // Pet type codes of the property being assembled
+        private boolean rowPending;   // rs is positioned on a row that has not been consumed yet
+        private boolean exhausted;
+        private int currentId = -1;
+
+        Cursor(ResultSet rs) {
+            this.rs = rs;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (rowPending) return true;
+            if (exhausted) return false;
+            try {
+                rowPending = rs.next();
+            } catch (SQLException e) {
+                throw new IllegalStateException("Failed to read property rows: " + e.getMessage(), e);
+            }
+            exhausted = !rowPending;
+            return rowPending;
+        }
+
+        @Override
+        public IProperty next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            try {
+                int id = rs.getInt("id");
+                String type = rs.getString("type");
+                String address = rs.getString("address");
+                int floor = rs.getInt("floor");
+                boolean isGround = rs.getBoolean("isGround");
+                int ownerId = rs.getInt("owner_id");
+                String ownerName = rs.getString("owner_name");
+                if (owners.size() >= MAX_SHARED_OWNERS && !owners.containsKey(ownerId)) {
+                    owners.clear();
+                }
+                Person owner = owners.computeIfAbsent(ownerId, k -> new Person(ownerName));
+
+                // Collect this property's pets from the adjacent rows
+                int petCount = 0;
+                do {
+                    String petType = rs.getString("pet_type");
+                    if (petType != null) {
+                        if (petCount == petBuffer.length) {
+                            petBuffer = Arrays.copyOf(petBuffer, petCount * 2);
+                        }
+                        petBuffer[petCount++] = PetTypeDictionary.code(rs.getInt("pet_id"), petType);
+                    }
+                    rowPending = rs.next();
+                } while (rowPending && rs.getInt("id") == id);
+                exhausted = !rowPending;
+
+                currentId = id;
+                short[] pets = petCount == 0 ? PetTypeDictionary.NO_PETS : Arrays.copyOf(petBuffer, petCount);
+                if ("House".equalsIgnoreCase(type)) {
+                    return new House(owner, pets, Address.of(address), isGround);
+                }
+                return new Apartment(owner, floor, Address.of(address), pets);
+            } catch (SQLException e) {
+                throw new IllegalStateException("Failed to read property rows: " + e.getMessage(), e);
+            }
+        }
+
+        // Database id of the property most recently returned by next()
+        int currentId() {
+            return currentId;
+        }
+    }
+}
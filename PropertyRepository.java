@@ -0,0 +1,186 @@
+package org.example;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// Streaming read access to properties, leases and persons.
+// Each stream is backed by a forward-only, read-only cursor on its own pooled connection, so callers see the
+// first row straight away and memory stays flat no matter how large the portfolio is.
+// Streams hold a connection until closed: always use them in try-with-resources.
+public class PropertyRepository {
+
+    public static final int DEFAULT_FETCH_SIZE = Integer.getInteger("repository.fetchSize", 500);
+
+    private static final String LEASE_QUERY = "SELECT l.*, t.name AS tenant_name, p.address, p.type, p.floor, p.isGround " +
+            "FROM Lease l " +
+            "JOIN Person t ON l.tenant_id = t.id " +
+            "JOIN Property p ON l.property_id = p.id";
+
+    private static final String PERSON_QUERY = "SELECT name FROM Person";
+
+    // Rent roll inputs, both ordered by lease id so RentRollReport can merge-join them.
+    // The lease filter compares the bare date columns (bound to the range's first and last day), so an index
+    // on startDate/endDate can serve it; the periods are only computed for the rows that are returned.
+    private static final String RENT_ROLL_LEASE_QUERY = """
+            SELECT l.id, t.name AS tenant_name, p.address, l.monthlyRent,
+                   YEAR(l.startDate) * 100 + MONTH(l.startDate) AS first_period,
+                   YEAR(l.endDate) * 100 + MONTH(l.endDate) AS last_period
+            FROM Lease l
+            JOIN Person t ON l.tenant_id = t.id
+            JOIN Property p ON l.property_id = p.id
+            WHERE l.startDate <= ? AND l.endDate >= ?
+            ORDER BY l.id
+            """;
+    private static final String RENT_ROLL_PAYMENT_QUERY = """
+            SELECT lease_id, payment_period, amount_paid
+            FROM RentPayments
+            WHERE payment_period BETWEEN ? AND ?
+            ORDER BY lease_id
+            """;
+
+    public static Stream<IProperty> streamProperties() throws Exception {
+        return streamProperties(DEFAULT_FETCH_SIZE);
+    }
+
+    // By id, so the rows of one property stay adjacent; PropertySorter orders them for display
+    public static Stream<IProperty> streamProperties(int fetchSize) throws Exception {
+        return open(PropertyLoader.BASE_QUERY + "ORDER BY p.id", fetchSize, PropertyLoader.Cursor::new);
+    }
+
+    public static Stream<Lease> streamLeases(int fetchSize) throws Exception {
+        return open(LEASE_QUERY, fetchSize, rs -> new RowIterator<>(rs, PropertyRepository::mapLease));
+    }
+
+    public static Stream<Person> streamPersons(int fetchSize) throws Exception {
+        return open(PERSON_QUERY, fetchSize, rs -> new RowIterator<>(rs, row -> new Person(row.getString("name"))));
+    }
+
+    // Leases active at some point in [fromPeriod, toPeriod] (yyyymm), by id
+    public static Stream<RentRollReport.LeaseRow> streamRentRollLeases(int fromPeriod, int toPeriod, int fetchSize) throws Exception {
+        LocalDate firstDay = LocalDate.of(fromPeriod / 100, fromPeriod % 100, 1);
+        LocalDate lastDay = YearMonth.of(toPeriod / 100, toPeriod % 100).atEndOfMonth();
+        return open(RENT_ROLL_LEASE_QUERY, fetchSize, stmt -> {
+            stmt.setDate(1, Date.valueOf(lastDay));
+            stmt.setDate(2, Date.valueOf(firstDay));
+        }, rs -> new RowIterator<>(rs, row -> new RentRollReport.LeaseRow(row.getInt("id"), row.getString("tenant_name"),
+                row.getString("address"), row.getDouble("monthlyRent"), row.getInt("first_period"), row.getInt("last_period"))));
+    }
+
+    // Payments for periods in [fromPeriod, toPeriod], by lease id
+    public static Stream<RentRollReport.PaymentRow> streamRentRollPayments(int fromPeriod, int toPeriod, int fetchSize) throws Exception {
+        return open(RENT_ROLL_PAYMENT_QUERY, fetchSize, stmt -> {
+            stmt.setInt(1, fromPeriod);
+            stmt.setInt(2, toPeriod);
+        }, rs -> new RowIterator<>(rs, row -> new RentRollReport.PaymentRow(row.getInt("lease_id"),
+                row.getInt("payment_period"), row.getDouble("amount_paid"))));
+    }
+
+    static Lease mapLease(ResultSet rs) throws SQLException {
+        String tenantName = rs.getString("tenant_name");
+        String address = rs.getString("address");
+        int startDay = LeaseDates.fromSqlDate(rs.getDate("startDate"));
+        int endDay = LeaseDates.fromSqlDate(rs.getDate("endDate"));
+        double monthlyRent = rs.getDouble("monthlyRent");
+        return new Lease(tenantName, startDay, endDay, monthlyRent, address);
+    }
+
+    private interface IteratorFactory<T> {
+        Iterator<T> create(ResultSet rs) throws SQLException;
+    }
+
+    private interface RowMapper<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
+
+    private interface Binder {
+        void bind(PreparedStatement stmt) throws SQLException;
+    }
+
+    private static <T> Stream<T> open(String query, int fetchSize, IteratorFactory<T> factory) throws Exception {
+        return open(query, fetchSize, stmt -> { }, factory);
+    }
+
+    // Opens the cursor and ties connection, statement and result set to the stream's close()
+    private static <T> Stream<T> open(String query, int fetchSize, Binder binder, IteratorFactory<T> factory) throws Exception {
+        Connection connection = DatabaseConnection.getConnection();
+        PreparedStatement stmt = null;
+        try {
+            stmt = connection.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            stmt.setFetchSize(fetchSize);
+            binder.bind(stmt);
+            ResultSet rs = stmt.executeQuery();
+            Iterator<T> iterator = factory.create(rs);
+            PreparedStatement openStmt = stmt;
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                    .onClose(() -> closeQuietly(rs, openStmt, connection));
+        } catch (SQLException | RuntimeException e) {
+            closeQuietly(null, stmt, connection);
+            throw e;
+        }
+    }
+
+    private static void closeQuietly(ResultSet rs, PreparedStatement stmt, Connection connection) {
+        try {
+            if (rs != null) rs.close();
+            if (stmt != null) stmt.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        } finally {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // One object per row
+    private static class RowIterator<T> implements Iterator<T> {
+        private final ResultSet rs;
+        private final RowMapper<T> mapper;
+        private boolean rowPending;
+        private boolean exhausted;
+
+        RowIterator(ResultSet rs, RowMapper<T> mapper) {
+            this.rs = rs;
+            this.mapper = mapper;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (rowPending) return true;
+            if (exhausted) return false;
+            try {
+                rowPending = rs.next();
+            } catch (SQLException e) {
+                throw new IllegalStateException("Failed to read rows: " + e.getMessage(), e);
+            }
+            exhausted = !rowPending;
+            return rowPending;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            rowPending = false;
+            try {
+                return mapper.map(rs);
+            } catch (SQLException e) {
+                throw new IllegalStateException("Failed to read rows: " + e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Multi-key property sort that never calls a comparator.
+// Each sort key is computed once per property and turned into a dense rank (0..distinct-1). The ranks and
+// the property's position are packed into one long per property and sorted with Arrays.parallelSort, so
+// the sort itself only compares primitive longs. Including the position keeps the sort stable.
+// If the ranks of all keys do not fit into one long together, the keys are applied one at a time from the
+// least to the most significant (an LSD pass per key, each stable), which gives the same order.
+public class PropertySorter {
+
+    public enum Key {
+        TYPE,           // Houses before apartments
+        FLOOR,          // IProperty.getFloor()
+        STREET_NUMBER,  // Leading number of the address
+        OWNER           // Owner name, alphabetical
+    }
+
+    public static List<IProperty> sort(List<IProperty> properties, Key... keys) {
+        int n = properties.size();
+        IProperty[] items = properties.toArray(new IProperty[0]);
+        if (n < 2 || keys.length == 0) {
+            return new ArrayList<>(Arrays.asList(items));
+        }
+
+        int[][] ranks = new int[keys.length][];
+        int[] rankBits = new int[keys.length];
+        int totalBits = bitsFor(n - 1);
+        for (int k = 0; k < keys.length; k++) {
+            ranks[k] = ranks(items, keys[k]);
+            rankBits[k] = bitsFor(max(ranks[k]));
+            totalBits += rankBits[k];
+        }
+
+        int[] order;
+        if (totalBits <= 63) {
+            order = sortPacked(ranks, rankBits);
+        } else {
+            order = identity(n);
+            for (int k = keys.length - 1; k >= 0; k--) {
+                order = sortPacked(new int[][]{permute(ranks[k], order)}, new int[]{rankBits[k]}, order);
+            }
+        }
+
+        List<IProperty> sorted = new ArrayList<>(n);
+        for (int index : order) {
+            sorted.add(items[index]);
+        }
+        return sorted;
+    }
+
+    private static int[] sortPacked(int[][] ranks, int[] rankBits) {
+        return sortPacked(ranks, rankBits, identity(ranks[0].length));
+    }
+
+    // Sort positions 0..n-1 by the packed ranks; returns mapping[sortedPosition] for each slot
+    private static int[] sortPacked(int[][] ranks, int[] rankBits, int[] mapping) {
+        int n = ranks[0].length;
+        int indexBits = bitsFor(n - 1);
+        long[] packed = new long[n];
+        for (int i = 0; i < n; i++) {
+            long key = 0;
+            for (int k = 0; k < ranks.length; k++) {
+                key = (key << rankBits[k]) | ranks[k][i];
+            }
+            packed[i] = (key << indexBits) | i;
+        }
+        Arrays.parallelSort(packed);
+
+        long indexMask = (1L << indexBits) - 1;
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = mapping[(int) (packed[i] & indexMask)];
+        }
+        return order;
+    }
+
+    private static int[] ranks(IProperty[] items, Key key) {
+        int n = items.length;
+        int[] ranks = new int[n];
+        switch (key) {
+            case TYPE:
+                for (int i = 0; i < n; i++) {
+                    ranks[i] = items[i] instanceof House ? 0 : 1;
+                }
+                return ranks;
+            case FLOOR:
+                for (int i = 0; i < n; i++) {
+                    ranks[i] = items[i].getFloor();
+                }
+                return denseRanks(ranks);
+            case STREET_NUMBER:
+                for (int i = 0; i < n; i++) {
+                    ranks[i] = items[i].getParsedAddress().getStreetNumber();
+                }
+                return denseRanks(ranks);
+            case OWNER:
+                String[] names = new String[n];
+                for (int i = 0; i < n; i++) {
+                    names[i] = items[i].getOwner().getName();
+                }
+                String[] distinct = Arrays.stream(names).distinct().sorted().toArray(String[]::new);
+                Map<String, Integer> rankByName = new HashMap<>(distinct.length * 2);
+                for (int r = 0; r < distinct.length; r++) {
+                    rankByName.put(distinct[r], r);
+                }
+                for (int i = 0; i < n; i++) {
+                    ranks[i] = rankByName.get(names[i]);
+                }
+                return ranks;
+            default:
+                throw new IllegalArgumentException("Unsupported sort key: " + key);
+        }
+    }
+
+    // Replace each value by its position among the sorted distinct values
+    private static int[] denseRanks(int[] values) {
+        int[] distinct = values.clone();
+        Arrays.sort(distinct);
+        int unique = 0;
+        for (int i = 0; i < distinct.length; i++) {
+            if (i == 0 || distinct[i] != distinct[unique - 1]) {
+                distinct[unique++] = distinct[i];
+            }
+        }
+        int[] ranks = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            ranks[i] = Arrays.binarySearch(distinct, 0, unique, values[i]);
+        }
+        return ranks;
+    }
+
+    private static int[] permute(int[] values, int[] order) {
+        int[] permuted = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            permuted[i] = values[order[i]];
+        }
+        return permuted;
+    }
+
+    private static int[] identity(int n) {
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        return order;
+    }
+
+    private static int max(int[] values) {
+        int max = 0;
+        for (int value : values) {
+            max = Math.max(max, value);
+        }
+        return max;
+    }
+
+    private static int bitsFor(int maxValue) {
+        return maxValue <= 0 ? 1 : 32 - Integer.numberOfLeadingZeros(maxValue);
+    }
+}
@@ -0,0 +1,226 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+// Rent roll: expected vs. collected rent per month, plus every lease month that is not fully paid.
+// Leases and payments are streamed from two cursors, both ordered by lease id, and merge-joined in one pass,
+// so the work is O(leases + payments) and memory depends only on the number of months in the report.
+// Periods are calendar months as yyyymm, the same encoding as RentPayments.payment_period.
+public class RentRollReport {
+
+    public static class LeaseRow {
+        final int leaseId;
+        final String tenantName;
+        final String address;
+        final double monthlyRent;
+        final int firstPeriod;  // Month of the start date
+        final int lastPeriod;   // Month of the end date
+
+        LeaseRow(int leaseId, String tenantName, String address, double monthlyRent, int firstPeriod, int lastPeriod) {
+            this.leaseId = leaseId;
+            this.tenantName = tenantName;
+            this.address = address;
+            this.monthlyRent = monthlyRent;
+            this.firstPeriod = firstPeriod;
+            this.lastPeriod = lastPeriod;
+        }
+    }
+
+    public static class PaymentRow {
+        final int leaseId;
+        final int period;
+        final double amount;
+
+        PaymentRow(int leaseId, int period, double amount) {
+            this.leaseId = leaseId;
+            this.period = period;
+            this.amount = amount;
+        }
+    }
+
+    public static class PeriodTotals {
+        private final int period;
+        private int leases;       // Leases active in the month
+        private int paidLeases;   // Of those, fully paid
+        private double expected;
+        private double collected;
+
+        PeriodTotals(int period) {
+            this.period = period;
+        }
+
+        public int getPeriod() { return period; }
+        public int getLeases() { return leases; }
+        public int getPaidLeases() { return paidLeases; }
+        public double getExpected() { return expected; }
+        public double getCollected() { return collected; }
+
+        public double getArrears() {
+            return Math.max(0.0, expected - collected);
+        }
+    }
+
+    // Receives each unpaid or partly paid lease month as the merge finds it
+    public interface ArrearsSink {
+        void accept(LeaseRow lease, int period, double expected, double collected) throws IOException;
+    }
+
+    public static class Result {
+        private final List<PeriodTotals> periods;
+        private int leases;
+        private long payments;
+        private long unmatchedPayments;  // Payments whose lease is not in the report (e.g. ended before it)
+        private long arrearsRows;
+        private long elapsedNanos;
+
+        Result(List<PeriodTotals> periods) {
+            this.periods = periods;
+        }
+
+        public List<PeriodTotals> getPeriods() { return periods; }
+        public int getLeases() { return leases; }
+        public long getPayments() { return payments; }
+        public long getUnmatchedPayments() { return unmatchedPayments; }
+        public long getArrearsRows() { return arrearsRows; }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            text.append("Rent roll: ").append(leases).append(" leases, ").append(payments).append(" payments (")
+                    .append(unmatchedPayments).append(" without an active lease), ").append(arrearsRows)
+                    .append(" lease months in arrears, ").append(elapsedNanos / 1_000_000).append(" ms");
+            for (PeriodTotals totals : periods) {
+                text.append(System.lineSeparator()).append(String.format("  %s: expected $%.2f, collected $%.2f, arrears $%.2f, %d/%d leases paid",
+                        formatPeriod(totals.period), totals.expected, totals.collected, totals.getArrears(),
+                        totals.paidLeases, totals.leases));
+            }
+            return text.toString();
+        }
+    }
+
+    // Run against the database, writing the arrears list to arrearsCsv
+    public static Result run(int fromPeriod, int toPeriod, Writer arrearsCsv) throws Exception {
+        arrearsCsv.write("lease_id,tenant,address,period,expected,collected,shortfall");
+        arrearsCsv.write(System.lineSeparator());
+        int fetchSize = PropertyRepository.DEFAULT_FETCH_SIZE;
+        try (Stream<LeaseRow> leases = PropertyRepository.streamRentRollLeases(fromPeriod, toPeriod, fetchSize);
+             Stream<PaymentRow> payments = PropertyRepository.streamRentRollPayments(fromPeriod, toPeriod, fetchSize)) {
+            return compute(leases.iterator(), payments.iterator(), fromPeriod, toPeriod, (lease, period, expected, collected) -> {
+                arrearsCsv.write(lease.leaseId + "," + Csv.escape(lease.tenantName) + "," + Csv.escape(lease.address) + ","
+                        + formatPeriod(period) + "," + money(expected) + "," + money(collected) + "," + money(expected - collected));
+                arrearsCsv.write(System.lineSeparator());
+            });
+        }
+    }
+
+    // The merge join. Both iterators must be ordered by lease id.
+    static Result compute(Iterator<LeaseRow> leases, Iterator<PaymentRow> payments, int fromPeriod, int toPeriod,
+                          ArrearsSink arrears) throws IOException {
+        long start = System.nanoTime();
+        int first = monthIndex(fromPeriod);
+        int months = monthIndex(toPeriod) - first + 1;
+        if (months <= 0) {
+            throw new IllegalArgumentException("The report must end on or after its first month.");
+        }
+        List<PeriodTotals> periods = new ArrayList<>(months);
+        for (int i = 0; i < months; i++) {
+            periods.add(new PeriodTotals(period(first + i)));
+        }
+        Result result = new Result(periods);
+
+        double[] collected = new double[months];  // Per month, for the current lease only
+        PaymentRow payment = payments.hasNext() ? payments.next() : null;
+        while (leases.hasNext()) {
+            LeaseRow lease = leases.next();
+            result.leases++;
+            java.util.Arrays.fill(collected, 0.0);
+
+            // Payments of leases that are not in the report sort before this lease
+            while (payment != null && payment.leaseId < lease.leaseId) {
+                result.payments++;
+                result.unmatchedPayments++;
+                payment = payments.hasNext() ? payments.next() : null;
+            }
+            while (payment != null && payment.leaseId == lease.leaseId) {
+                int month = monthIndex(payment.period) - first;
+                if (month >= 0 && month < months) {
+                    collected[month] += payment.amount;
+                    periods.get(month).collected += payment.amount;
+                }
+                result.payments++;
+                payment = payments.hasNext() ? payments.next() : null;
+            }
+
+            int activeFrom = Math.max(0, monthIndex(lease.firstPeriod) - first);
+            int activeTo = Math.min(months - 1, monthIndex(lease.lastPeriod) - first);
+            for (int month = activeFrom; month <= activeTo; month++) {
+                PeriodTotals totals = periods.get(month);
+                totals.leases++;
+                totals.expected += lease.monthlyRent;
+                if (collected[month] >= lease.monthlyRent) {
+                    totals.paidLeases++;
+                } else {
+                    result.arrearsRows++;
+                    arrears.accept(lease, totals.period, lease.monthlyRent, collected[month]);
+                }
+            }
+        }
+        while (payment != null) {
+            result.payments++;
+            result.unmatchedPayments++;
+            payment = payments.hasNext() ? payments.next() : null;
+        }
+
+        result.elapsedNanos = System.nanoTime() - start;
+        return result;
+    }
+
+    public static void writeSummaryCsv(Result result, Writer out) throws IOException {
+        out.write("period,leases,paid_leases,expected,collected,arrears");
+        out.write(System.lineSeparator());
+        for (PeriodTotals totals : result.periods) {
+            out.write(formatPeriod(totals.period) + "," + totals.leases + "," + totals.paidLeases + "," + money(totals.expected)
+                    + "," + money(totals.collected) + "," + money(totals.getArrears()));
+            out.write(System.lineSeparator());
+        }
+    }
+
+    // "2024-03" -> 202403
+    public static int parsePeriod(String text) {
+        String[] parts = text.trim().split("-");
+        try {
+            if (parts.length == 2) {
+                int year = Integer.parseInt(parts[0]);
+                int month = Integer.parseInt(parts[1]);
+                if (month >= 1 && month <= 12) {
+                    return year * 100 + month;
+                }
+            }
+        } catch (NumberFormatException e) {
+            // Fall through
+        }
+        throw new IllegalArgumentException("Invalid month '" + text + "'. Please use the format yyyy-MM.");
+    }
+
+    static String formatPeriod(int period) {
+        return String.format("%04d-%02d", period / 100, period % 100);
+    }
+
+    // Months since year 0, so consecutive months differ by one across year boundaries
+    private static int monthIndex(int period) {
+        return (period / 100) * 12 + (period % 100 - 1);
+    }
+
+    private static int period(int monthIndex) {
+        return (monthIndex / 12) * 100 + monthIndex % 12 + 1;
+    }
+
+    private static String money(double amount) {
+        return String.format("%.2f", amount);
+    }
+}
@@ -0,0 +1,176 @@
+package org.example;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+// Idempotent schema changes the application relies on, applied at startup with the admin connection.
+// Each step checks the database metadata first, so running it against an up-to-date schema does nothing.
+public class SchemaMigrations {
+    private static final int BACKFILL_BATCH_SIZE = 1000;
+
+    private static boolean applied = false;
+
+    public static synchronized void apply() throws Exception {
+        if (applied) {
+            return;
+        }
+        try (Connection connection = DatabaseConnection.getAdminConnection()) {
+            applyTo(connection);
+        }
+        applied = true;
+    }
+
+    // Every step against the given connection, whether or not apply() already ran (e.g. a fresh test database)
+    static void applyTo(Connection connection) throws SQLException {
+        addPropertyAddressKey(connection);
+        addRentPaymentPeriod(connection);
+        addWriteJournalState(connection);
+        addPetTypeKey(connection);
+    }
+
+    // Like apply(), but reports problems instead of failing (e.g. when the user lacks ALTER privileges)
+    public static void applyQuietly() {
+        try {
+            apply();
+        } catch (Exception e) {
+            System.out.println("Warning: could not update the database schema: " + e.getMessage());
+        }
+    }
+
+    // Property.address_key holds Address.normalize(address) so lookups are an indexed equality match
+    private static void addPropertyAddressKey(Connection connection) throws SQLException {
+        if (!hasColumn(connection, "Property", "address_key")) {
+            try (Statement stmt = connection.createStatement()) {
+                stmt.executeUpdate("ALTER TABLE Property ADD COLUMN address_key VARCHAR(255)");
+            }
+        }
+        // Every start, not only after adding the column: a backfill that was interrupted, or rows written
+        // without a key (e.g. by an older build or a direct INSERT), would otherwise never be found by address
+        backfillAddressKeys(connection);
+        if (!hasIndex(connection, "Property", "idx_property_address_key")) {
+            try (Statement stmt = connection.createStatement()) {
+                stmt.executeUpdate("CREATE INDEX idx_property_address_key ON Property (address_key)");
+            }
+        }
+    }
+
+    // In Java so existing rows get exactly the same key as new ones
+    private static void backfillAddressKeys(Connection connection) throws SQLException {
+        connection.setAutoCommit(false);
+        try (PreparedStatement select = connection.prepareStatement("SELECT id, address FROM Property WHERE address_key IS NULL");
+             PreparedStatement update = connection.prepareStatement("UPDATE Property SET address_key = ? WHERE id = ?");
+             ResultSet rs = select.executeQuery()) {
+            int pending = 0;
+            while (rs.next()) {
+                update.setString(1, Address.normalize(rs.getString("address")));
+                update.setInt(2, rs.getInt("id"));
+                update.addBatch();
+                if (++pending == BACKFILL_BATCH_SIZE) {
+                    update.executeBatch();
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                update.executeBatch();
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    // RentPayments.payment_period (yyyymm) with UNIQUE (lease_id, payment_period): at most one payment per
+    // lease and month, enforced by the database (see PaymentEngine)
+    private static void addRentPaymentPeriod(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            if (!hasColumn(connection, "RentPayments", "payment_period")) {
+                stmt.executeUpdate("ALTER TABLE RentPayments ADD COLUMN payment_period INT");
+            }
+            // Every start: rows written without a period (e.g. by an older build) escape the unique key
+            stmt.executeUpdate("UPDATE RentPayments SET payment_period = YEAR(payment_date) * 100 + MONTH(payment_date) WHERE payment_period IS NULL");
+        }
+        if (hasIndex(connection, "RentPayments", "uq_rent_payment_period")) {
+            PaymentEngine.uniqueKeyChecked(true);
+            return;
+        }
+        PaymentEngine.uniqueKeyChecked(false);  // Payments check the month themselves until the key exists
+        // Months that were paid twice before the key existed would make the unique index fail
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("""
+                     SELECT lease_id, payment_period FROM RentPayments
+                     GROUP BY lease_id, payment_period HAVING COUNT(*) > 1 LIMIT 1
+                     """)) {
+            if (rs.next()) {
+                throw new SQLException("RentPayments has more than one payment for lease " + rs.getInt("lease_id")
+                        + " in period " + rs.getInt("payment_period") + "; remove the duplicates to enable the unique payment key.");
+            }
+        }
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("CREATE UNIQUE INDEX uq_rent_payment_period ON RentPayments (lease_id, payment_period)");
+        }
+        PaymentEngine.uniqueKeyChecked(true);
+    }
+
+    // WriteJournalState.applied_seq is the last journal record a WriteJournal has written to the database,
+    // updated in the same transaction as the records, so a restart never writes one twice
+    private static void addWriteJournalState(Connection connection) throws SQLException {
+        if (hasColumn(connection, "WriteJournalState", "applied_seq")) {
+            return;
+        }
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE WriteJournalState (journal_id VARCHAR(36) PRIMARY KEY, applied_seq BIGINT NOT NULL)");
+        }
+    }
+
+    // UNIQUE (type) on Pet, so two sessions adding the same new pet type cannot both insert a row for it
+    // (see TenantService.petTypeId)
+    private static void addPetTypeKey(Connection connection) throws SQLException {
+        if (hasIndex(connection, "Pet", "uq_pet_type")) {
+            return;
+        }
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT type FROM Pet GROUP BY type HAVING COUNT(*) > 1 LIMIT 1")) {
+            if (rs.next()) {
+                throw new SQLException("Pet has more than one row for type '" + rs.getString("type")
+                        + "'; merge them to enable the unique pet type key.");
+            }
+        }
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("CREATE UNIQUE INDEX uq_pet_type ON Pet (type)");
+        }
+    }
+
+    static boolean hasIndex(Connection connection, String table, String index) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        for (String name : new String[]{table, table.toUpperCase()}) {
+            try (ResultSet rs = metaData.getIndexInfo(connection.getCatalog(), null, name, false, false)) {
+                while (rs.next()) {
+                    if (index.equalsIgnoreCase(rs.getString("INDEX_NAME"))) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    static boolean hasColumn(Connection connection, String table, String column) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        try (ResultSet rs = metaData.getColumns(connection.getCatalog(), null, table, column)) {
+            if (rs.next()) {
+                return true;
+            }
+        }
+        // Some databases report identifiers in upper case
+        try (ResultSet rs = metaData.getColumns(connection.getCatalog(), null, table.toUpperCase(), column.toUpperCase())) {
+            return rs.next();
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package org.example;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Per-connection cache of prepared statements, owned by a ConnectionPool entry.
+// prepareStatement on a pooled connection returns a proxy for a cached statement; its close() clears the
+// parameters, closes any open result sets and keeps the statement for the next borrower, so a query is
+// prepared once per physical connection. Each checkout gets its own proxy, which is inert once closed, so a
+// stale reference can neither run nor close the statement while someone else has it. A statement that is
+// already in use (the same SQL prepared twice before the first is closed) gets an uncached one. The least
+// recently used statements are closed when the cache is full. Every execution is timed into StatementRegistry.
+final class StatementCache {
+    static final int MAX_STATEMENTS = Integer.getInteger("pool.statementCacheSize", 64);
+
+    private final Connection physical;
+    private final Map<String, CachedStatement> statements = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+            if (size() > MAX_STATEMENTS) {
+                eldest.getValue().detach();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    StatementCache(Connection physical) {
+        this.physical = physical;
+    }
+
+    // Handles prepareStatement(sql), (sql, autoGeneratedKeys) and (sql, resultSetType, resultSetConcurrency);
+    // returns null for other overloads, which the caller passes straight to the connection
+    PreparedStatement prepare(Connection owner, Method method, Object[] args) throws SQLException {
+        if (MAX_STATEMENTS <= 0 || args == null || args.length > 3) {
+            return null;
+        }
+        for (int i = 1; i < args.length; i++) {
+            if (!(args[i] instanceof Integer)) {
+                return null;  // int[] / String[] generated-key column overloads
+            }
+        }
+        String sql = (String) args[0];
+        StringBuilder key = new StringBuilder(sql);
+        for (int i = 1; i < args.length; i++) {
+            key.append('\u0000').append(args[i]);
+        }
+
+        StatementRegistry.Stats stats = StatementRegistry.statsFor(sql);
+        CachedStatement cached = statements.get(key.toString());
+        if (cached != null && !cached.cached) {
+            statements.remove(key.toString());  // Dropped after a failure or an unusual setting
+            cached = null;
+        }
+        if (cached != null && !cached.inUse) {
+            stats.reused();
+            return cached.open(owner);
+        }
+        PreparedStatement statement = (PreparedStatement) invoke(method, args);
+        stats.prepared();
+        CachedStatement created = new CachedStatement(statement, stats, cached == null);
+        if (cached == null) {
+            statements.put(key.toString(), created);
+        }
+        return created.open(owner);
+    }
+
+    private Object invoke(Method method, Object[] args) throws SQLException {
+        try {
+            return method.invoke(physical, args);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new SQLException(e.getCause());
+        } catch (IllegalAccessException e) {
+            throw new SQLException(e);
+        }
+    }
+
+    // The connection went back to the pool: close whatever the borrower left open
+    void releaseAll() {
+        Iterator<CachedStatement> it = statements.values().iterator();
+        while (it.hasNext()) {
+            CachedStatement statement = it.next();
+            if (!statement.release()) {
+                it.remove();
+            }
+        }
+    }
+
+    void closeAll() {
+        statements.values().forEach(CachedStatement::detach);
+        statements.clear();
+    }
+
+    int size() {
+        return statements.size();
+    }
+
+    private static final class CachedStatement {
+        private final PreparedStatement physical;
+        private final StatementRegistry.Stats stats;
+        private boolean cached;                     // false: close physically when the caller closes it
+        private final List<ResultSet> openResults = new ArrayList<>(1);
+        private Connection owner;
+        private Checkout current;                   // The live checkout while inUse
+        private boolean inUse;
+        private boolean dirty;                      // Fetch size or limits changed from the defaults
+
+        CachedStatement(PreparedStatement physical, StatementRegistry.Stats stats, boolean cached) {
+            this.physical = physical;
+            this.stats = stats;
+            this.cached = cached;
+        }
+
+        PreparedStatement open(Connection owner) {
+            this.owner = owner;
+            this.inUse = true;
+            current = new Checkout();
+            return (PreparedStatement) Proxy.newProxyInstance(StatementCache.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, current);
+        }
+
+        // One borrower's handle; once it is closed (or the connection went back to the pool) it no longer
+        // reaches the statement, which may already belong to the next borrower
+        private final class Checkout implements InvocationHandler {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "toString":
+                        return "Cached[" + stats.getName() + "]";
+                    default:
+                        break;
+                }
+                if (current != this) {
+                    switch (method.getName()) {
+                        case "close":
+                            return null;
+                        case "isClosed":
+                            return true;
+                        default:
+                            throw new SQLException("Statement is closed.");
+                    }
+                }
+                return CachedStatement.this.invoke(method, args);
+            }
+        }
+
+        private Object invoke(Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "close":
+                    release();
+                    return null;
+                case "isClosed":
+                    return physical.isClosed();
+                case "getConnection":
+                    return owner;
+                default:
+                    break;
+            }
+            if (name.startsWith("set") && method.getDeclaringClass() == java.sql.Statement.class) {
+                if (name.equals("setFetchSize") || name.equals("setMaxRows") || name.equals("setQueryTimeout")) {
+                    dirty = true;  // Restored to the defaults on close
+                } else {
+                    cached = false;  // Anything else is rare enough to not be worth undoing: don't reuse
+                }
+            }
+            if (!name.startsWith("execute")) {
+                Object result = call(method, args);
+                if (result instanceof ResultSet) {
+                    track((ResultSet) result);  // getResultSet, getGeneratedKeys
+                }
+                return result;
+            }
+
+            long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                Object result = call(method, args);
+                if (result instanceof ResultSet) {
+                    track((ResultSet) result);
+                }
+                failed = false;
+                return result;
+            } finally {
+                stats.executed(System.nanoTime() - start, failed);
+            }
+        }
+
+        // Result sets the caller has closed already are dropped here, so a statement executed many times in one
+        // checkout does not keep every result set it ever returned
+        private void track(ResultSet rs) throws SQLException {
+            Iterator<ResultSet> it = openResults.iterator();
+            while (it.hasNext()) {
+                if (it.next().isClosed()) {
+                    it.remove();
+                }
+            }
+            openResults.add(rs);
+        }
+
+        private Object call(Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        // Logical close: returns false if the statement cannot be reused and has been closed
+        boolean release() {
+            if (!inUse) {
+                return cached;
+            }
+            inUse = false;
+            owner = null;
+            current = null;
+            try {
+                for (ResultSet rs : openResults) {
+                    rs.close();
+                }
+                openResults.clear();
+                if (!cached) {
+                    evict();
+                    return false;
+                }
+                physical.clearParameters();
+                physical.clearBatch();
+                physical.clearWarnings();
+                if (dirty) {
+                    physical.setFetchSize(0);
+                    physical.setMaxRows(0);
+                    physical.setQueryTimeout(0);
+                    dirty = false;
+                }
+                return true;
+            } catch (SQLException e) {
+                evict();
+                return false;
+            }
+        }
+
+        // Stop caching the statement; it is closed now, or by its caller if it is in use
+        void detach() {
+            cached = false;
+            if (!inUse) {
+                evict();
+            }
+        }
+
+        private void evict() {
+            cached = false;
+            inUse = false;
+            current = null;
+            openResults.clear();
+            try {
+                physical.close();
+            } catch (SQLException e) {
+                // The statement is being dropped either way
+            }
+        }
+    }
+}
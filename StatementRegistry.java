@@ -0,0 +1,98 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Names and execution statistics for the application's SQL.
+// Pooled connections prepare each statement once and reuse it (see StatementCache); every execution
+// is counted and timed here under the statement's name, so report() shows which queries dominate.
+// Queries registered with named() are reported under that name, anything else under its SQL text.
+public class StatementRegistry {
+    private static final int MAX_UNNAMED_LENGTH = 80;
+
+    private static final Map<String, String> namesBySql = new ConcurrentHashMap<>();
+    private static final Map<String, Stats> statsByName = new ConcurrentHashMap<>();
+
+    // Register a name for a query and return its SQL, for use in static constants
+    public static String named(String name, String sql) {
+        namesBySql.put(sql, name);
+        return sql;
+    }
+
+    // Unregistered SQL is named once, so the whitespace regex stays off the prepare path after that
+    static String nameOf(String sql) {
+        return namesBySql.computeIfAbsent(sql, StatementRegistry::compact);
+    }
+
+    private static String compact(String sql) {
+        String compact = sql.trim().replaceAll("\\s+", " ");
+        return compact.length() <= MAX_UNNAMED_LENGTH ? compact : compact.substring(0, MAX_UNNAMED_LENGTH) + "...";
+    }
+
+    static Stats statsFor(String sql) {
+        return statsByName.computeIfAbsent(nameOf(sql), Stats::new);
+    }
+
+    public static List<Stats> snapshot() {
+        List<Stats> all = new ArrayList<>(statsByName.values());
+        all.sort(Comparator.comparingLong((Stats stats) -> stats.latency.getTotalNanos()).reversed());
+        return all;
+    }
+
+    public static void reset() {
+        statsByName.clear();
+    }
+
+    // One line per statement, the ones with the most total execution time first
+    public static String report() {
+        StringBuilder report = new StringBuilder("Statements (by total time):");
+        for (Stats stats : snapshot()) {
+            report.append(System.lineSeparator()).append("  ").append(stats);
+        }
+        return report.toString();
+    }
+
+    public static class Stats {
+        private final String name;
+        private final LongAdder prepares = new LongAdder();
+        private final LongAdder reuses = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        Stats(String name) {
+            this.name = name;
+        }
+
+        void prepared() {
+            prepares.increment();
+        }
+
+        void reused() {
+            reuses.increment();
+        }
+
+        void executed(long nanos, boolean failed) {
+            latency.record(nanos);
+            if (failed) {
+                failures.increment();
+            }
+        }
+
+        public String getName() { return name; }
+        public long getExecutions() { return latency.getCount(); }
+        public long getPrepares() { return prepares.sum(); }
+        public long getReuses() { return reuses.sum(); }
+        public long getFailures() { return failures.sum(); }
+        public LatencyHistogram getLatency() { return latency; }
+
+        @Override
+        public String toString() {
+            return name + ": prepares=" + getPrepares() + ", reuses=" + getReuses() + ", failures=" + getFailures()
+                    + ", " + latency;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package org.example;
+
+import java.lang.reflect.Method;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// Shared executor for Main's asynchronous helpers.
+// Tasks run on virtual threads when the JVM has them (Java 21+) and on a cached pool of daemon threads
+// otherwise, so blocking JDBC calls do not tie up a small fixed pool. Database tasks additionally take a
+// permit for their database, which keeps concurrent queries within what the connection pool can serve.
+//
+// Lifecycle: the engine starts on first use (or via start()) and is stopped once by shutdown() when the
+// program exits. Stopping is final: tasks submitted after it are rejected (RejectedExecutionException) rather
+// than starting a new executor that nothing would shut down.
+//
+// With metrics enabled, every task records its queue wait and run time, and the queue depth, running tasks
+// and callers waiting for a database permit are published as gauges.
+public class TaskEngine {
+    private static final long SHUTDOWN_WAIT_SECONDS = 10;
+
+    private static final Metrics.Operation QUEUE_WAIT = Metrics.operation("tasks.queueWait");
+    private static final Metrics.Operation TASK_TIME = Metrics.operation("tasks.run");
+    private static final AtomicInteger queued = new AtomicInteger();
+    private static final AtomicInteger running = new AtomicInteger();
+
+    public enum Database {
+        ADMIN(Integer.getInteger("tasks.adminConcurrency", 10)),
+        TENANT(Integer.getInteger("tasks.tenantConcurrency", 20));
+
+        private final int maxConcurrent;
+
+        Database(int maxConcurrent) {
+            this.maxConcurrent = maxConcurrent;
+        }
+    }
+
+    private static ExecutorService executor;
+    private static boolean stopped;  // Guarded, like executor, by the TaskEngine class lock
+    private static final Map<Database, Semaphore> limits = new EnumMap<>(Database.class);
+
+    static {
+        for (Database database : Database.values()) {
+            Semaphore permits = new Semaphore(database.maxConcurrent, true);
+            limits.put(database, permits);
+            Metrics.gauge("tasks_permit_waiters_" + database.name().toLowerCase(), permits::getQueueLength);
+        }
+        Metrics.gauge("tasks_queued", queued::get);
+        Metrics.gauge("tasks_running", running::get);
+    }
+
+    public static synchronized void start() {
+        if (stopped) {
+            throw new RejectedExecutionException("The task engine has been shut down.");
+        }
+        if (executor == null) {
+            executor = newExecutor();
+        }
+    }
+
+    public static synchronized boolean isRunning() {
+        return executor != null;
+    }
+
+    // Stop accepting tasks and wait for the running ones to finish
+    public static void shutdown() {
+        ExecutorService stopping;
+        synchronized (TaskEngine.class) {
+            stopped = true;
+            stopping = executor;
+            executor = null;
+        }
+        if (stopping == null) {
+            return;
+        }
+        stopping.shutdown();
+        try {
+            if (!stopping.awaitTermination(SHUTDOWN_WAIT_SECONDS, TimeUnit.SECONDS)) {
+                stopping.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            stopping.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static synchronized ExecutorService executor() {
+        start();
+        return executor;
+    }
+
+    // In-memory work
+    public static <T> CompletableFuture<T> supply(Callable<T> task) {
+        return CompletableFuture.supplyAsync(timed(task), executor());
+    }
+
+    public static CompletableFuture<Void> run(Runnable task) {
+        return CompletableFuture.supplyAsync(timed(() -> {
+            task.run();
+            return null;
+        }), executor());
+    }
+
+    // Work that talks to the given database; waits for one of that database's permits first
+    public static <T> CompletableFuture<T> supplyDb(Database database, Callable<T> task) {
+        Semaphore permits = limits.get(database);
+        return CompletableFuture.supplyAsync(timed(() -> {
+            permits.acquire();
+            try {
+                return task.call();
+            } finally {
+                permits.release();
+            }
+        }), executor());
+    }
+
+    // Runs the task on the calling thread (e.g. a request's thread) under one of the database's permits.
+    // Waits at most timeoutMillis for a permit, so a saturated database sheds load instead of queueing without bound.
+    public static <T> T callDb(Database database, long timeoutMillis, Callable<T> task) throws Exception {
+        Semaphore permits = limits.get(database);
+        if (!permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+            throw new TimeoutException("No " + database + " database permit within " + timeoutMillis + " ms");
+        }
+        try {
+            return task.call();
+        } finally {
+            permits.release();
+        }
+    }
+
+    // The task as a Supplier; with metrics on it also tracks the queue depth and times the wait and the run
+    private static <T> Supplier<T> timed(Callable<T> task) {
+        long submitted = QUEUE_WAIT.start();
+        if (submitted == Metrics.OFF) {
+            return () -> call(task);
+        }
+        queued.incrementAndGet();
+        return () -> {
+            queued.decrementAndGet();
+            QUEUE_WAIT.success(submitted, 0);
+            running.incrementAndGet();
+            long started = TASK_TIME.start();
+            try {
+                T result = call(task);
+                TASK_TIME.success(started, 0);
+                return result;
+            } catch (RuntimeException e) {
+                TASK_TIME.failure(started);
+                throw e;
+            } finally {
+                running.decrementAndGet();
+            }
+        };
+    }
+
+    private static <T> T call(Callable<T> task) {
+        try {
+            return task.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private static ExecutorService newExecutor() {
+        try {
+            // Executors.newVirtualThreadPerTaskExecutor() exists from Java 21; looked up reflectively so older JDKs still run
+            Method virtual = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) virtual.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger counter = new AtomicInteger();
+            return Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r, "task-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package org.example;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+// HTTP/JSON front end for the tenant operations, for many concurrent tenants instead of one console session.
+//
+//   GET    /tenants/pets?address=12+Oak               -> {"address":"12 Oak","pets":[{"id":3,"type":"Dog"}]}
+//   POST   /tenants/pets   {"address":"12 Oak","type":"Dog"}
+//   DELETE /tenants/pets?address=12+Oak&type=Dog
+//   POST   /tenants/rent   {"address":"12 Oak","amount":1200.00}
+//   GET    /health
+//   GET    /metrics                                   -> Prometheus text format (see Metrics)
+//
+// Requests run on TaskEngine's executor: a virtual thread per request on Java 21+, where one blocked on JDBC
+// costs a few KB, and a cached pool of platform threads on older JVMs (the build targets Java 17). The
+// database, not the threads, is the bottleneck: every request takes a TENANT permit from TaskEngine first and
+// answers 503 if none frees up within server.dbWaitMillis, so overload turns into fast rejections instead of
+// an ever-growing queue in front of the connection pool.
+//
+// With a WriteJournal open (-Djournal.file), the writes are queued like Main's own and answered 202
+// Accepted once the record is on disk; a pet for an unknown address or a payment that does not match the lease
+// then ends up in the journal's rejects file instead of a 404, 409 or 422.
+//
+// Run with -Dsun.net.httpserver.nodelay=true (Main --serve sets it when absent): without it small JSON
+// responses wait on Nagle's algorithm + delayed ACKs, ~40 ms each. The JDK reads it once, when the first
+// HttpServer is created, so it has to be set at launch rather than here.
+public class TenantServer {
+    private static final long DB_WAIT_MILLIS = Long.getLong("server.dbWaitMillis", 2_000L);
+    private static final int MAX_BODY_BYTES = 16 * 1024;
+
+    private static final Metrics.Operation REQUESTS = Metrics.operation("server.request");  // Errors are 5xx answers
+
+    private final HttpServer server;
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    // Thrown by handlers to answer with a status and an error message
+    private static class HttpError extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        HttpError(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    private interface Handler {
+        Response handle(HttpExchange exchange) throws Exception;
+    }
+
+    private static class Response {
+        final int status;
+        final String body;  // JSON
+
+        Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        static Response ok(String body) {
+            return new Response(200, body);
+        }
+    }
+
+    private TenantServer(HttpServer server) {
+        this.server = server;
+    }
+
+    public static TenantServer start(int port) throws IOException {
+        // Loopback only: the API has no authentication, so expose it through a proxy that adds it
+        HttpServer http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        TenantServer tenantServer = new TenantServer(http);
+        http.createContext("/tenants/pets", exchange -> tenantServer.serve(exchange, tenantServer::pets));
+        http.createContext("/tenants/rent", exchange -> tenantServer.serve(exchange, tenantServer::rent));
+        http.createContext("/health", exchange -> tenantServer.serve(exchange, e -> Response.ok("{\"status\":\"ok\"}")));
+        http.createContext("/metrics", TenantServer::metrics);
+        http.setExecutor(TaskEngine.executor());
+        http.start();
+        return tenantServer;
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    // Stop accepting connections, giving in-flight requests up to delaySeconds to finish
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+    }
+
+    private void serve(HttpExchange exchange, Handler handler) throws IOException {
+        long start = System.nanoTime();
+        long started = REQUESTS.start();
+        int status;
+        String body;
+        try {
+            Response response = handler.handle(exchange);
+            status = response.status;
+            body = response.body;
+        } catch (HttpError e) {
+            status = e.status;
+            body = error(e.getMessage());
+        } catch (TimeoutException e) {
+            status = 503;  // No database permit in time: the client should back off and retry
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            body = error("Server busy, please retry.");
+        } catch (IllegalArgumentException e) {
+            status = 400;
+            body = error(e.getMessage());
+        } catch (Exception e) {
+            status = 500;
+            body = error("Internal server error.");  // Details stay in the log, not in the response
+            System.out.println("Error handling " + exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath() + ": " + e);
+            e.printStackTrace();
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+        latency.record(System.nanoTime() - start);
+        if (status >= 500) {
+            REQUESTS.failure(started);
+        } else {
+            REQUESTS.success(started, 0);
+        }
+    }
+
+    private static void metrics(HttpExchange exchange) throws IOException {
+        byte[] bytes = Metrics.prometheus().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private Response pets(HttpExchange exchange) throws Exception {
+        String method = exchange.getRequestMethod();
+        if (method.equals("GET")) {
+            String address = required(query(exchange), "address");
+            List<TenantService.TenantPet> pets = withTenantConnection(
+                    connection -> TenantService.listPets(connection, address));
+            StringBuilder json = new StringBuilder("{\"address\":").append(quote(address)).append(",\"pets\":[");
+            for (int i = 0; i < pets.size(); i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                json.append("{\"id\":").append(pets.get(i).getPetId()).append(",\"type\":")
+                        .append(quote(pets.get(i).getType())).append('}');
+            }
+            return Response.ok(json.append("]}").toString());
+        }
+        if (method.equals("POST")) {
+            Map<String, Object> request = body(exchange);
+            String address = required(request, "address");
+            String petType = required(request, "type");
+            if (WriteJournal.isOpen()) {
+                return queued(WriteJournal.petAdded(address, petType), "{\"added\":" + quote(petType) + "}");
+            }
+            if (!withTenantConnection(connection -> TenantService.addPet(connection, address, petType))) {
+                throw new HttpError(404, "No property at this address.");
+            }
+            return Response.ok("{\"added\":" + quote(petType) + "}");
+        }
+        if (method.equals("DELETE")) {
+            Map<String, String> query = query(exchange);
+            String address = required(query, "address");
+            String petType = required(query, "type");
+            if (WriteJournal.isOpen()) {
+                return queued(WriteJournal.petTypeRemoved(address, petType), "{\"removed\":" + quote(petType) + "}");
+            }
+            int removed = withTenantConnection(connection -> TenantService.removePetType(connection, address, petType));
+            if (removed == 0) {
+                throw new HttpError(404, "No " + petType + " at this address.");
+            }
+            return Response.ok("{\"removed\":" + removed + "}");
+        }
+        throw new HttpError(405, "Method not allowed.");
+    }
+
+    private Response rent(HttpExchange exchange) throws Exception {
+        if (!exchange.getRequestMethod().equals("POST")) {
+            throw new HttpError(405, "Method not allowed.");
+        }
+        Map<String, Object> request = body(exchange);
+        String address = required(request, "address");
+        double amount;
+        try {
+            amount = Double.parseDouble(required(request, "amount"));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid amount.");
+        }
+        if (WriteJournal.isOpen()) {
+            boolean appended = WriteJournal.rentPaid(address, amount, System.currentTimeMillis());  // Checked when written
+            return queued(appended, "{\"paid\":" + amount + "}");
+        }
+        PaymentEngine.Result result = withTenantConnection(connection -> TenantService.payRent(connection, address, amount));
+        switch (result.getOutcome()) {
+            case PAID:
+                return Response.ok("{\"paid\":" + amount + "}");
+            case ALREADY_PAID:
+                throw new HttpError(409, "Rent for this month has already been paid.");
+            case AMOUNT_MISMATCH:
+                throw new HttpError(422, "The payment amount must match the monthly rent: " + result.getMonthlyRent());
+            default:
+                throw new HttpError(404, "This property does not have a lease.");
+        }
+    }
+
+    // A write queued in the WriteJournal, like Main's: 202 once it is on disk, before the database has it
+    private static Response queued(boolean appended, String body) throws HttpError {
+        if (!appended) {
+            throw new HttpError(503, "The change could not be saved, please retry.");
+        }
+        return new Response(202, body);
+    }
+
+    private interface TenantCall<T> {
+        T call(Connection connection) throws Exception;
+    }
+
+    private static <T> T withTenantConnection(TenantCall<T> call) throws Exception {
+        return TaskEngine.callDb(TaskEngine.Database.TENANT, DB_WAIT_MILLIS, () -> {
+            try (Connection connection = DatabaseConnection.getTenantConnection()) {
+                return call.call(connection);
+            }
+        });
+    }
+
+    private static Map<String, Object> body(HttpExchange exchange) throws IOException, HttpError {
+        byte[] bytes;
+        try (InputStream in = exchange.getRequestBody()) {
+            bytes = in.readNBytes(MAX_BODY_BYTES + 1);
+        }
+        if (bytes.length > MAX_BODY_BYTES) {
+            throw new HttpError(413, "Request body too large.");
+        }
+        return BulkPropertyImporter.parseJsonObject(new String(bytes, StandardCharsets.UTF_8).trim());
+    }
+
+    static Map<String, String> query(HttpExchange exchange) {
+        return parseQuery(exchange.getRequestURI().getRawQuery());
+    }
+
+    static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> values = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return values;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            values.putIfAbsent(name, value);
+        }
+        return values;
+    }
+
+    private static String required(Map<String, ?> values, String name) {
+        Object value = values.get(name);
+        if (value == null || String.valueOf(value).trim().isEmpty()) {
+            throw new IllegalArgumentException("Missing '" + name + "'.");
+        }
+        return String.valueOf(value).trim();
+    }
+
+    private static String error(String message) {
+        return "{\"error\":" + quote(message == null ? "" : message) + "}";
+    }
+
+    static String quote(String text) {
+        StringBuilder json = new StringBuilder(text.length() + 2).append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"': json.append("\\\""); break;
+                case '\\': json.append("\\\\"); break;
+                case '\n': json.append("\\n"); break;
+                case '\r': json.append("\\r"); break;
+                case '\t': json.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        return json.append('"').toString();
+    }
+}
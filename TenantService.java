@@ -0,0 +1,195 @@
+package org.example;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+// The tenant operations without any console I/O, shared by the interactive tenant menu and TenantServer.
+// Every method works on a connection the caller owns, and keeps the in-memory pet dictionary, counters,
+// index and caches in step with what it writes.
+public class TenantService {
+    static final String PETS_FOR_PROPERTY = StatementRegistry.named("tenant.pets", """
+            SELECT pe.id, pe.type
+            FROM PropertyPet pp
+            JOIN Pet pe ON pp.pet_id = pe.id
+            JOIN Property p ON pp.property_id = p.id
+            WHERE p.address_key = ?
+            """);
+    static final String UNLINK_PET = StatementRegistry.named("tenant.unlinkPet",
+            "DELETE FROM PropertyPet WHERE property_id = (SELECT id FROM Property WHERE address_key = ?) AND pet_id = ?");
+
+    private static final Metrics.Operation LIST_PETS = Metrics.operation("tenant.listPets");
+    private static final Metrics.Operation ADD_PET = Metrics.operation("tenant.addPet");
+    private static final Metrics.Operation REMOVE_PET = Metrics.operation("tenant.removePet");
+    private static final Metrics.Operation PAY_RENT = Metrics.operation("tenant.payRent");
+
+    public static class TenantPet {
+        private final int petId;   // Id of the pet type in the Pet table
+        private final String type;
+
+        TenantPet(int petId, String type) {
+            this.petId = petId;
+            this.type = type;
+        }
+
+        public int getPetId() {
+            return petId;
+        }
+
+        public String getType() {
+            return type;
+        }
+    }
+
+    public static List<TenantPet> listPets(Connection connection, String propertyAddress) throws SQLException {
+        List<TenantPet> pets = new ArrayList<>();
+        long started = LIST_PETS.start();
+        try (PreparedStatement stmt = connection.prepareStatement(PETS_FOR_PROPERTY)) {
+            stmt.setString(1, Address.normalize(propertyAddress));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    pets.add(new TenantPet(rs.getInt("id"), rs.getString("type")));
+                }
+            }
+        } catch (SQLException e) {
+            LIST_PETS.failure(started);
+            throw e;
+        }
+        LIST_PETS.success(started, pets.size());
+        return pets;
+    }
+
+    // Returns false if there is no property at the address
+    public static boolean addPet(Connection connection, String propertyAddress, String petType) throws SQLException {
+        long started = ADD_PET.start();
+        int rowsAffected;
+        int petId;
+        try {
+            petId = petTypeId(connection, petType);
+            PetTypeDictionary.register(petId, petType);
+            try (PreparedStatement linkStmt = connection.prepareStatement(Main.LINK_PET_TO_PROPERTY)) {
+                linkStmt.setString(1, Address.normalize(propertyAddress));
+                linkStmt.setInt(2, petId);
+                rowsAffected = linkStmt.executeUpdate();
+            }
+        } catch (SQLException e) {
+            // property_id cannot be null, i.e. no property at this address (MySQL error 1048, standard SQLState 23502)
+            if (e.getErrorCode() == 1048 || "23502".equals(e.getSQLState())) {
+                ADD_PET.success(started, 0);
+                return false;
+            }
+            ADD_PET.failure(started);
+            throw e;
+        }
+        ADD_PET.success(started, rowsAffected);
+        PortfolioCache.invalidateAll();
+        if (rowsAffected > 0) {
+            PetTypeCounters.added(PetTypeDictionary.code(petId, petType), rowsAffected);
+            PetTypeIndex.petAdded(propertyAddress, PetTypeDictionary.code(petId, petType), rowsAffected);
+            ChangeLog.petAdded(propertyAddress, petType);
+        }
+        return rowsAffected > 0;
+    }
+
+    // Unlinks every pet of this type from the property; returns the number of rows removed
+    public static int removePet(Connection connection, String propertyAddress, TenantPet pet) throws SQLException {
+        int rowsDeleted;
+        long started = REMOVE_PET.start();
+        try {
+            rowsDeleted = unlinkPet(connection, propertyAddress, pet);
+        } catch (SQLException e) {
+            REMOVE_PET.failure(started);
+            throw e;
+        }
+        REMOVE_PET.success(started, rowsDeleted);
+        petRemoved(propertyAddress, pet, rowsDeleted);
+        return rowsDeleted;
+    }
+
+    public static int removePetType(Connection connection, String propertyAddress, String petType) throws SQLException {
+        TenantPet pet = findPet(connection, propertyAddress, petType);
+        return pet == null ? 0 : removePet(connection, propertyAddress, pet);
+    }
+
+    // The property's pet of this type, or null
+    static TenantPet findPet(Connection connection, String propertyAddress, String petType) throws SQLException {
+        for (TenantPet pet : listPets(connection, propertyAddress)) {
+            if (pet.getType().equalsIgnoreCase(petType)) {
+                return pet;
+            }
+        }
+        return null;
+    }
+
+    // The DELETE alone, for WriteJournal, which calls petRemoved once its transaction has committed
+    static int unlinkPet(Connection connection, String propertyAddress, TenantPet pet) throws SQLException {
+        try (PreparedStatement deleteStmt = connection.prepareStatement(UNLINK_PET)) {
+            deleteStmt.setString(1, Address.normalize(propertyAddress));
+            deleteStmt.setInt(2, pet.getPetId());
+            return deleteStmt.executeUpdate();
+        }
+    }
+
+    static void petRemoved(String propertyAddress, TenantPet pet, int rowsDeleted) {
+        PortfolioCache.invalidateAll();
+        if (rowsDeleted > 0) {
+            PetTypeCounters.removed(PetTypeDictionary.code(pet.getPetId(), pet.getType()), rowsDeleted);
+            PetTypeIndex.petTypeRemoved(propertyAddress, PetTypeDictionary.code(pet.getPetId(), pet.getType()));
+            ChangeLog.petTypeRemoved(propertyAddress, pet.getType());
+        }
+    }
+
+    public static PaymentEngine.Result payRent(Connection connection, String propertyAddress, double amount) throws SQLException {
+        long started = PAY_RENT.start();
+        try {
+            PaymentEngine.Result result = PaymentEngine.pay(connection, propertyAddress, amount);
+            PAY_RENT.success(started, result.getOutcome() == PaymentEngine.Outcome.PAID ? 1 : 0);
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            PAY_RENT.failure(started);
+            throw e;
+        }
+    }
+
+    // Id of the pet type, inserting it if it is new. Pet.type is unique (SchemaMigrations), so when two sessions
+    // add the same new type at once one insert fails on the key and that session reads the other's row instead
+    static int petTypeId(Connection connection, String petType) throws SQLException {
+        Integer id = findPetTypeId(connection, Main.PET_ID_BY_TYPE, petType);
+        if (id != null) {
+            return id;
+        }
+        try (PreparedStatement stmt = connection.prepareStatement(Main.INSERT_PET_TYPE, Statement.RETURN_GENERATED_KEYS)) {
+            stmt.setString(1, petType);
+            stmt.executeUpdate();
+            try (ResultSet keys = stmt.getGeneratedKeys()) {
+                if (keys.next()) {
+                    return keys.getInt(1);
+                }
+            }
+        } catch (SQLException e) {
+            if (!PaymentEngine.isDuplicateKey(e)) {
+                throw e;
+            }
+            // A locking read sees the row committed since this transaction's first read
+            id = findPetTypeId(connection, Main.PET_ID_BY_TYPE_LOCKED, petType);
+            if (id != null) {
+                return id;
+            }
+            throw e;
+        }
+        throw new SQLException("Failed to insert new pet type: " + petType);
+    }
+
+    private static Integer findPetTypeId(Connection connection, String query, String petType) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(query)) {
+            stmt.setString(1, petType);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getInt("id") : null;
+            }
+        }
+    }
+}
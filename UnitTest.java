@@ -3,7 +3,44 @@ package org.example;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
-import java.util.Date;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.text.ParseException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -21,7 +58,7 @@ public class UnitTest {
         pets = new Pet[]{new Pet("Dog"), new Pet("Cat")};
         house = new House(person, pets, "123 Main St", true);
         apartment = new Apartment(person, 3, "456 Elm St", pets);
-        lease = new Lease("Jane Doe", new Date(2024, 1, 1), new Date(2025, 1, 1), 1200.00, "123 Main St");
+        lease = new Lease("Jane Doe", LocalDate.of(2024, 2, 1), LocalDate.of(2025, 2, 1), 1200.00, "123 Main St");
     }
 
     // Constructor Tests
@@ -102,4 +139,1086 @@ public class UnitTest {
         assertTrue(exception.getMessage().contains("Invalid address format"));
     }
 
+    // Minimal stand-in for a JDBC connection so the pool can be exercised without a database
+    private static Connection stubConnection() {
+        boolean[] closed = {false};
+        return (Connection) Proxy.newProxyInstance(UnitTest.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "close": closed[0] = true; return null;
+                        case "isClosed": return closed[0];
+                        case "isValid": return !closed[0];
+                        case "getAutoCommit": return true;
+                        default: return null;
+                    }
+                });
+    }
+
+    // Pool over a private in-memory H2 database, so the pool is exercised against real JDBC connections
+    private static ConnectionPool h2Pool(String database, int maxSize, long maxWaitMillis) {
+        return new ConnectionPool("test", "jdbc:h2:mem:" + database + ";DB_CLOSE_DELAY=-1", "sa", "", maxSize, maxWaitMillis, 60_000);
+    }
+
+    @Test
+    void testConnectionPoolReusesReturnedConnections() throws Exception {
+        ConnectionPool pool = h2Pool("poolReuse", 2, 100);
+        try (Connection first = pool.getConnection(); Statement stmt = first.createStatement()) {
+            assertEquals(1, pool.getStats().getActive());
+            stmt.executeUpdate("CREATE TABLE Counter (n INT)");
+            stmt.executeUpdate("INSERT INTO Counter VALUES (1)");
+        }
+        try (Connection second = pool.getConnection(); Statement stmt = second.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT n FROM Counter")) {
+            assertTrue(rs.next());
+            assertEquals(1, rs.getInt(1));
+            assertEquals(1, pool.getStats().getCreated());
+        }
+        assertEquals(0, pool.getStats().getActive());
+        assertEquals(1, pool.getStats().getIdle());
+        pool.close();
+    }
+
+    @Test
+    void testConnectionPoolTimesOutWhenExhausted() throws Exception {
+        ConnectionPool pool = h2Pool("poolTimeout", 1, 50);
+        try (Connection held = pool.getConnection()) {
+            assertThrows(SQLException.class, pool::getConnection);
+            assertEquals(1, pool.getStats().getTimeouts());
+        }
+        pool.close();
+    }
+
+    @Test
+    void testConnectionPoolRollsBackAndReturnsConnectionOnlyOnce() throws Exception {
+        ConnectionPool pool = h2Pool("poolReturn", 1, 50);
+        try (Connection setup = pool.getConnection(); Statement stmt = setup.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE Item (n INT)");
+        }
+        Connection borrowed = pool.getConnection();
+        borrowed.setAutoCommit(false);
+        try (Statement stmt = borrowed.createStatement()) {
+            stmt.executeUpdate("INSERT INTO Item VALUES (1)");  // Never committed
+        }
+        Thread[] closers = new Thread[4];
+        for (int i = 0; i < closers.length; i++) {
+            closers[i] = new Thread(() -> {
+                try {
+                    borrowed.close();
+                } catch (SQLException e) {
+                    throw new AssertionError(e);
+                }
+            });
+            closers[i].start();
+        }
+        for (Thread closer : closers) {
+            closer.join();
+        }
+        assertTrue(borrowed.isClosed());
+        assertThrows(SQLException.class, borrowed::createStatement);
+
+        try (Connection next = pool.getConnection(); Statement stmt = next.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM Item")) {
+            assertTrue(next.getAutoCommit());
+            assertTrue(rs.next());
+            assertEquals(0, rs.getInt(1));
+            assertThrows(SQLException.class, pool::getConnection);  // Still one permit: the connection came back once
+        }
+        pool.close();
+    }
+
+    @Test
+    void testLruCacheEvictsLeastRecentlyUsed() throws Exception {
+        LruCache<Integer, String> cache = new LruCache<>("test", 2);
+        cache.get(1, k -> "one");
+        cache.get(2, k -> "two");
+        cache.get(1, k -> "unused");  // Hit, makes 2 the eldest
+        cache.get(3, k -> "three");   // Evicts 2
+        assertEquals("one", cache.get(1, k -> "reloaded"));
+        assertEquals("reloaded-two", cache.get(2, k -> "reloaded-two"));
+        assertEquals(2, cache.getHits());
+        assertEquals(2, cache.getEvictions());
+    }
+
+    @Test
+    void testLruCacheInvalidateAllForcesReload() throws Exception {
+        LruCache<String, String> cache = new LruCache<>("test", 10);
+        cache.get("key", k -> "old");
+        cache.invalidateAll();
+        assertEquals("new", cache.get("key", k -> "new"));
+        assertEquals(2, cache.getMisses());
+    }
+
+    // Points DatabaseConnection at a new in-memory H2 database with the application's tables plus SchemaMigrations
+    // (MySQL mode, and case-insensitive text like MySQL's default collation); call DatabaseConnection.shutdown() after
+    private static void useH2Database(String database) throws Exception {
+        DatabaseConnection.configure("jdbc:h2:mem:" + database + ";MODE=MySQL;IGNORECASE=TRUE;DB_CLOSE_DELAY=-1", "sa", "", "sa", "");
+        PortfolioCache.invalidateAll();
+        try (Connection connection = DatabaseConnection.getAdminConnection();
+             Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE Person (id INT AUTO_INCREMENT PRIMARY KEY, name VARCHAR(255) NOT NULL)");
+            stmt.executeUpdate("CREATE TABLE Pet (id INT AUTO_INCREMENT PRIMARY KEY, type VARCHAR(255) NOT NULL)");
+            stmt.executeUpdate("""
+                    CREATE TABLE Property (id INT AUTO_INCREMENT PRIMARY KEY, address VARCHAR(255) NOT NULL,
+                        owner_id INT REFERENCES Person(id), floor INT, isGround BOOLEAN, type VARCHAR(20))
+                    """);
+            stmt.executeUpdate("""
+                    CREATE TABLE PropertyPet (property_id INT NOT NULL REFERENCES Property(id),
+                        pet_id INT NOT NULL REFERENCES Pet(id))
+                    """);
+            stmt.executeUpdate("""
+                    CREATE TABLE Lease (id INT AUTO_INCREMENT PRIMARY KEY, tenant_id INT REFERENCES Person(id),
+                        property_id INT NOT NULL REFERENCES Property(id), startDate DATE, endDate DATE, monthlyRent DOUBLE)
+                    """);
+            stmt.executeUpdate("""
+                    CREATE TABLE RentPayments (id INT AUTO_INCREMENT PRIMARY KEY, property_address VARCHAR(255),
+                        tenant_name VARCHAR(255), payment_date TIMESTAMP, amount_paid DOUBLE, lease_id INT)
+                    """);
+            SchemaMigrations.applyTo(connection);
+        }
+    }
+
+    private static int count(String query) throws Exception {
+        try (Connection connection = DatabaseConnection.getAdminConnection();
+             Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery(query)) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    @Test
+    void testBulkImportParsesCsvAndJsonRecords() throws Exception {
+        BulkPropertyImporter.PropertyRecord csv = BulkPropertyImporter.parseCsvRecord("apartment,12 Oak,\"Doe, Jane\",3,Dog|Cat", 2);
+        assertEquals("Doe, Jane", csv.owner);
+        assertEquals(3, csv.floor);
+        assertEquals(2, csv.pets.size());
+
+        BulkPropertyImporter.PropertyRecord json = BulkPropertyImporter.parseJsonRecord(
+                "{\"type\":\"house\",\"address\":\"7 Elm\",\"owner\":\"John\",\"pets\":[\"Fish\"]}", 1);
+        assertFalse(json.apartment);
+        assertEquals("Fish", json.pets.get(0));
+
+        assertThrows(InvalidAddressFormatException.class, () -> BulkPropertyImporter.parseCsvRecord("house,Elm Street,John", 3));
+        assertThrows(IllegalArgumentException.class, () -> BulkPropertyImporter.parseCsvRecord("apartment,12 Oak,Jane,3.7,", 4));
+        assertThrows(IllegalArgumentException.class, () -> BulkPropertyImporter.parseCsvRecord("apartment,12 Oak,Jane,NaN,", 5));
+    }
+
+    @Test
+    void testBulkImportDedupesOwnersAndPetTypesIgnoringCase() throws Exception {
+        useH2Database("bulkImport");
+        try {
+            String csv = """
+                    type,address,owner,floor,pets
+                    apartment,12 Oak,Jane Doe,3,Dog|cat
+                    house,7 Elm,jane doe,,dog|Cat
+                    """;
+            BulkPropertyImporter.Result result = BulkPropertyImporter.importFrom(new BufferedReader(new StringReader(csv)), false);
+            assertEquals(2, result.getImported());
+            assertEquals(4, result.getPetLinks());
+            assertEquals(1, count("SELECT COUNT(*) FROM Person"));
+            assertEquals(2, count("SELECT COUNT(*) FROM Pet"));
+        } finally {
+            DatabaseConnection.shutdown();
+        }
+    }
+
+    @Test
+    void testLeaseIntervalIndexRejectsOverlaps() throws Exception {
+        LeaseIntervalIndex index = LeaseIntervalIndex.of(List.of(lease));
+        int start = lease.getStartDay();
+        int end = lease.getEndDay();
+        assertThrows(OverlappingLeaseException.class, () -> index.checkAvailable("123 main st", end, end + 1));
+        assertDoesNotThrow(() -> index.checkAvailable("123 Main St", end + 1, end + 1000));
+        assertDoesNotThrow(() -> index.checkAvailable("456 Elm St", start, end));
+
+        index.removeProperty("123 Main St");
+        assertFalse(index.overlaps("123 Main St", start, end));
+    }
+
+    @Test
+    void testSchemaMigrationsBackfillAddressKeysOnEveryRun() throws Exception {
+        useH2Database("addressKeys");
+        try (Connection connection = DatabaseConnection.getAdminConnection();
+             Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("INSERT INTO Property (address, type) VALUES ('  12   Oak Lane ', 'house')");  // No key
+            SchemaMigrations.applyTo(connection);
+            try (ResultSet rs = stmt.executeQuery("SELECT address_key FROM Property")) {
+                assertTrue(rs.next());
+                assertEquals("12 oak lane", rs.getString(1));
+            }
+        } finally {
+            DatabaseConnection.shutdown();
+        }
+    }
+
+    @Test
+    void testPaymentsGoToTheLeaseInForceOnThePaymentDate() throws Exception {
+        useH2Database("paymentLease");
+        try (Connection connection = DatabaseConnection.getAdminConnection();
+             Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("INSERT INTO Person (name) VALUES ('Old Tenant'), ('New Tenant')");
+            stmt.executeUpdate("INSERT INTO Property (address, type, address_key) VALUES ('4 Pine', 'house', '4 pine')");
+            stmt.executeUpdate("INSERT INTO Lease (tenant_id, property_id, startDate, endDate, monthlyRent) VALUES (1, 1, '2020-01-01', '2020-12-31', 500)");
+            stmt.executeUpdate("INSERT INTO Lease (tenant_id, property_id, startDate, endDate, monthlyRent) VALUES (2, 1, '2021-01-01', '2099-12-31', 900)");
+
+            assertEquals(PaymentEngine.Outcome.AMOUNT_MISMATCH, PaymentEngine.pay(connection, "4 Pine", 500).getOutcome());
+            assertEquals(PaymentEngine.Outcome.PAID, PaymentEngine.pay(connection, "4 Pine", 900).getOutcome());
+            long june2020 = Timestamp.valueOf("2020-06-15 12:00:00").getTime();
+            assertEquals(PaymentEngine.Outcome.PAID, PaymentEngine.pay(connection, "4 Pine", 500, june2020).getOutcome());
+            assertEquals(1, count("SELECT COUNT(*) FROM RentPayments WHERE lease_id = 2 AND tenant_name = 'New Tenant'"));
+            assertEquals(1, count("SELECT COUNT(*) FROM RentPayments WHERE lease_id = 1 AND payment_period = 202006"));
+
+            StringWriter rejects = new StringWriter();
+            BulkRentPosting.postFrom(new BufferedReader(new StringReader("4 Pine,900")), false, rejects);
+            assertTrue(rejects.toString().contains("already paid"), rejects.toString());
+        } finally {
+            DatabaseConnection.shutdown();
+        }
+    }
+
+    @Test
+    void testPaymentsWithoutTheUniqueKeyStillAllowOnePerMonth() throws Exception {
+        useH2Database("paymentsWithoutKey");
+        try (Connection connection = DatabaseConnection.getAdminConnection();
+             Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("DROP INDEX uq_rent_payment_period");
+            stmt.executeUpdate("INSERT INTO Person (name) VALUES ('Tina Tenant')");
+            stmt.executeUpdate("INSERT INTO Property (address, type, address_key) VALUES ('3 Pine', 'house', '3 pine')");
+            stmt.executeUpdate("INSERT INTO Lease (tenant_id, property_id, startDate, endDate, monthlyRent) VALUES (1, 1, '2023-01-01', '2030-01-01', 800)");
+            stmt.executeUpdate("""
+                    INSERT INTO RentPayments (payment_date, amount_paid, lease_id, payment_period) VALUES
+                        ('2024-01-02 10:00:00', 800, 1, 202401), ('2024-01-03 10:00:00', 800, 1, 202401),
+                        ('2023-05-02 10:00:00', 800, 1, NULL)
+                    """);
+            assertThrows(SQLException.class, () -> SchemaMigrations.applyTo(connection));  // Duplicate months: no key
+            assertEquals(1, count("SELECT COUNT(*) FROM RentPayments WHERE payment_period = 202305"));
+
+            assertEquals(PaymentEngine.Outcome.PAID, PaymentEngine.pay(connection, "3 Pine", 800).getOutcome());
+            assertEquals(PaymentEngine.Outcome.ALREADY_PAID, PaymentEngine.pay(connection, "3 pine", 800).getOutcome());
+            long january = Timestamp.valueOf("2024-01-20 12:00:00").getTime();
+            assertEquals(PaymentEngine.Outcome.ALREADY_PAID, PaymentEngine.pay(connection, "3 Pine", 800, january).getOutcome());
+            assertTrue(connection.getAutoCommit());
+            assertThrows(SQLException.class, () -> BulkRentPosting.postFrom(
+                    new BufferedReader(new StringReader("3 Pine,800")), false, new StringWriter()));
+        } finally {
+            DatabaseConnection.shutdown();
+        }
+    }
+
+    @Test
+    void testFailedLeaseInsertIsReportedAndFreesTheDates() throws Exception {
+        useH2Database("leaseEntry");
+        try {
+            Main.seedLeaseIndex(List.of());
+            assertThrows(SQLException.class, () -> Main.addLeaseToDatabase(lease));  // No such property yet
+
+            try (Connection connection = DatabaseConnection.getAdminConnection();
+                 Statement stmt = connection.createStatement()) {
+                stmt.executeUpdate("INSERT INTO Property (address, type, address_key) VALUES ('123 Main St', 'house', '"
+                        + Address.normalize("123 Main St") + "')");
+            }
+            Main.addLeaseToDatabase(lease);
+            assertThrows(OverlappingLeaseException.class, () -> Main.addLeaseToDatabase(lease));
+            assertEquals(1, count("SELECT COUNT(*) FROM Lease"));
+        } finally {
+            Main.seedLeaseIndex(List.of());
+            DatabaseConnection.shutdown();
+        }
+    }
+
+    @Test
+    void testFindAllOverlapsReportsEachConflictingLease() {
+        Lease overlapping = new Lease("Tom", LocalDate.of(2024, 7, 1), LocalDate.of(2025, 7, 1), 900.00, "123 Main St");
+        Lease later = new Lease("Ann", LocalDate.of(2025, 8, 1), LocalDate.of(2026, 2, 1), 900.00, "123 Main St");
+        Lease elsewhere = new Lease("Bob", LocalDate.of(2024, 2, 1), LocalDate.of(2025, 2, 1), 900.00, "456 Elm St");
+        List<Lease[]> overlaps = LeaseIntervalIndex.findAllOverlaps(List.of(later, overlapping, lease, elsewhere));
+        assertEquals(1, overlaps.size());
+        assertSame(lease, overlaps.get(0)[0]);
+        assertSame(overlapping, overlaps.get(0)[1]);
+    }
+
+    @Test
+    void testAsyncHelpersStillRunAfterGroupingByOwner() throws Exception {
+        Main.groupPropertiesByOwner(new ArrayList<>(List.of(house, apartment)));
+        assertEquals(2, (int) Main.countPetsAsync(house).get());
+        assertEquals(2, Main.sortPropertiesByFloorAsync(new ArrayList<>(List.of(apartment, house))).get().size());
+    }
+
+    @Test
+    void testGroupPropertiesByOwnerKeepsEveryProperty() {
+        Person other = new Person("Mary Major");
+        List<IProperty> properties = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            Person owner = i % 3 == 0 ? other : person;
+            properties.add(i % 2 == 0
+                    ? new House(owner, pets, (i + 1) + " Oak", true)
+                    : new Apartment(owner, i % 131, (i + 1) + " Elm", pets));
+        }
+        Map<String, List<IProperty>> groups = Main.groupPropertiesByOwner(properties);
+        assertEquals(6_667, groups.get("Mary Major").size());
+        assertEquals(13_333, groups.get("John Doe").size());
+        assertTrue(groups.get("John Doe").get(0) instanceof House);
+    }
+
+    @Test
+    void testPropertySorterOrdersByMultipleKeys() {
+        Person alice = new Person("Alice");
+        House h12 = new House(person, pets, "12 Oak", true);
+        House h3 = new House(alice, pets, "3 Oak", true);
+        Apartment a5 = new Apartment(person, 5, "1 Elm", pets);
+        Apartment a1 = new Apartment(alice, 1, "9 Elm", pets);
+        List<IProperty> input = List.of(a5, h12, a1, h3);
+
+        List<IProperty> byTypeFloorNumber = PropertySorter.sort(input,
+                PropertySorter.Key.TYPE, PropertySorter.Key.FLOOR, PropertySorter.Key.STREET_NUMBER);
+        assertArrayEquals(new Object[]{h3, h12, a1, a5}, byTypeFloorNumber.toArray());
+
+        List<IProperty> byOwnerNumber = PropertySorter.sort(input, PropertySorter.Key.OWNER, PropertySorter.Key.STREET_NUMBER);
+        assertArrayEquals(new Object[]{h3, a1, a5, h12}, byOwnerNumber.toArray());
+    }
+
+    @Test
+    void testAddressParsingAndNormalisedEquality() throws Exception {
+        assertTrue(Address.isValidFormat("123 Abc"));
+        assertFalse(Address.isValidFormat("Abc 123"));
+        assertFalse(Address.isValidFormat("123Abc"));
+        assertFalse(Address.isValidFormat("123 Main St"));
+        assertThrows(InvalidAddressFormatException.class, () -> Address.parse("Main 1"));
+
+        Address lenient = Address.of("  12   Oak Road ");
+        assertEquals(12, lenient.getStreetNumber());
+        assertEquals("12 oak road", lenient.getKey());
+        assertEquals(Address.of("12 OAK road"), lenient);
+        assertSame(Address.of("12   Oak Road"), lenient);
+        assertEquals(Address.NO_STREET_NUMBER, Address.of("Oak Road").getStreetNumber());
+    }
+
+    @Test
+    void testDescriptionRenderedOnceIntoAppendable() throws Exception {
+        Pet[] mixed = {new Pet("Dog"), new Pet("Cat"), new Pet("Dog")};
+        House house = new House(person, mixed, "7 Elm", false);
+        String expected = "The house on 7 Elm is owned by John Doe. It is not on ground level. John Doe has 2 Dogs, 1 Cat.";
+        assertEquals(expected, house.getDescription());
+
+        StringBuilder out = new StringBuilder();
+        house.describeTo(out);
+        new Apartment(person, 3, "8 Elm", null).describeTo(out);
+        assertEquals(expected + "The apartment on 8 Elm, floor 3 is owned by John Doe. John Doe has no pets.", out.toString());
+    }
+
+    @Test
+    void testPetsStoredAsSharedTypeCodes() throws Exception {
+        House first = new House(person, new Pet[]{new Pet("Dog"), new Pet("Hamster")}, "1 Oak", true);
+        Apartment second = new Apartment(person, 2, "2 Oak", new Pet[]{new Pet("Hamster")});
+        assertEquals(2, first.countPets());
+        assertSame(first.getPets()[1], second.getPets()[0]);
+        assertEquals("Hamster", PetTypeDictionary.name(second.getPetCodes()[0]));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(first);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            House copy = (House) in.readObject();
+            assertEquals(first.getDescription(), copy.getDescription());
+        }
+    }
+
+    @Test
+    void testPetTypeDictionaryIgnoresCaseAndKeepsTheFirstDatabaseId() {
+        short gecko = PetTypeDictionary.code(9001, "Gecko");
+        assertEquals(gecko, PetTypeDictionary.code("gecko"));
+        assertEquals(gecko, PetTypeDictionary.code(9002, "GECKO"));
+        assertEquals("Gecko", PetTypeDictionary.name(gecko));
+        assertEquals(9001, PetTypeDictionary.dbId(gecko));
+        PetTypeDictionary.register(9003, "gecko");
+        assertEquals(9001, PetTypeDictionary.dbId(gecko));
+
+        int types = PetTypeDictionary.size();
+        assertEquals(-1, PetTypeDictionary.find("Unicorn"));
+        assertEquals(types, PetTypeDictionary.size());
+    }
+
+    @Test
+    void testPetTypeIndexSearchForAnUnknownTypeFindsNothing() throws Exception {
+        useH2Database("petSearch");
+        try (Connection connection = DatabaseConnection.getAdminConnection();
+             Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("INSERT INTO Person (name) VALUES ('Jane Doe')");
+            stmt.executeUpdate("INSERT INTO Pet (id, type) VALUES (7001, 'Ferret')");  // Pet ids are process-wide in PetTypeDictionary
+            stmt.executeUpdate("INSERT INTO Property (address, owner_id, type, isGround, address_key) VALUES ('5 Birch', 1, 'house', TRUE, '5 birch')");
+            stmt.executeUpdate("INSERT INTO PropertyPet (property_id, pet_id) VALUES (1, 7001)");
+            PetTypeIndex index = PetTypeIndex.build(connection);
+
+            assertEquals(1, index.propertiesWithAll("ferret").size());
+            int types = PetTypeDictionary.size();
+            assertTrue(index.propertiesWithAll("Ferret", "Okapi").isEmpty());
+            assertEquals(types, PetTypeDictionary.size());
+        } finally {
+            DatabaseConnection.shutdown();
+        }
+    }
+
+    @Test
+    void testPetTypeCountersTrackWrites() {
+        short axolotl = PetTypeDictionary.code("Axolotl");
+        PetTypeCounters.added(axolotl, 3);
+        PetTypeCounters.removed(axolotl, 1);
+        assertEquals(2, (int) PetTypeCounters.snapshot().get("Axolotl"));
+        PetTypeCounters.removed(axolotl, 2);
+        assertFalse(PetTypeCounters.snapshot().containsKey("Axolotl"));
+    }
+
+    @Test
+    void testPropertyIdSetIntersectsAcrossContainerKinds() {
+        PropertyIdSet dense = new PropertyIdSet();
+        PropertyIdSet sparse = new PropertyIdSet();
+        for (int id = 0; id < 200_000; id++) {
+            dense.add(id);              // Bitmap containers
+            if (id % 1000 == 7) {
+                sparse.add(id);         // Array containers
+            }
+        }
+        sparse.add(70_000_000);
+        assertEquals(200_000, dense.cardinality());
+        assertTrue(dense.contains(65_536));
+        assertFalse(dense.contains(200_000));
+
+        PropertyIdSet both = dense.and(sparse);
+        assertEquals(200, both.cardinality());
+        assertEquals(7, both.toArray()[0]);
+        assertFalse(both.contains(70_000_000));
+
+        for (int id = 0; id < 70_000; id++) {
+            dense.remove(id);
+        }
+        assertEquals(130_000, dense.cardinality());
+        assertEquals(70_000, dense.toArray()[0]);
+    }
+
+    @Test
+    void testPooledConnectionReusesPreparedStatements() throws Exception {
+        int[] prepared = {0};
+        ConnectionPool pool = new ConnectionPool("test", () -> {
+            Connection base = stubConnection();
+            return (Connection) Proxy.newProxyInstance(UnitTest.class.getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> {
+                        if (!method.getName().equals("prepareStatement")) {
+                            return method.invoke(base, args);
+                        }
+                        prepared[0]++;
+                        return Proxy.newProxyInstance(UnitTest.class.getClassLoader(), new Class<?>[]{PreparedStatement.class},
+                                (stmt, m, a) -> m.getName().equals("executeUpdate") ? 1 : null);
+                    });
+        }, 1, 100, 60_000);
+
+        String sql = StatementRegistry.named("test.reuse", "UPDATE Test SET x = ?");
+        for (int i = 0; i < 3; i++) {
+            try (Connection connection = pool.getConnection();
+                 PreparedStatement stmt = connection.prepareStatement(sql)) {
+                stmt.setInt(1, i);
+                assertEquals(1, stmt.executeUpdate());
+                try (PreparedStatement nested = connection.prepareStatement(sql)) {
+                    assertNotSame(stmt, nested);  // Same SQL while the first is open: a separate statement
+                }
+            }
+        }
+        assertEquals(4, prepared[0]);  // One cached statement plus one uncached nested statement per round
+        StatementRegistry.Stats stats = StatementRegistry.snapshot().stream()
+                .filter(s -> s.getName().equals("test.reuse")).findFirst().orElseThrow();
+        assertEquals(3, stats.getExecutions());
+        assertEquals(2, stats.getReuses());
+        pool.close();
+    }
+
+    @Test
+    void testStaleCachedStatementHandleIsInert() throws Exception {
+        ConnectionPool pool = h2Pool("staleStatement", 1, 100);
+        try (Connection connection = pool.getConnection()) {
+            PreparedStatement stale = connection.prepareStatement("SELECT ?");
+            stale.close();
+            try (PreparedStatement current = connection.prepareStatement("SELECT ?")) {
+                assertNotSame(stale, current);
+                stale.close();  // Must not release the statement out from under the new handle
+                assertTrue(stale.isClosed());
+                assertThrows(SQLException.class, () -> stale.setInt(1, 1));
+
+                for (int i = 0; i < 3; i++) {
+                    current.setInt(1, i);
+                    try (ResultSet rs = current.executeQuery()) {
+                        assertTrue(rs.next());
+                        assertEquals(i, rs.getInt(1));
+                    }
+                }
+                assertFalse(current.isClosed());
+            }
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    void testLatencyHistogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1_000L);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1_000_000L, histogram.getMaxNanos());
+        long p50 = histogram.percentile(50);
+        assertTrue(p50 > 470_000 && p50 <= 500_000, "p50 was " + p50);
+        for (long value : new long[]{0, 15, 16, 17, 1000, 123_456_789, Long.MAX_VALUE}) {
+            int bucket = LatencyHistogram.bucket(value);
+            assertTrue(LatencyHistogram.lowerBound(bucket) <= value);
+        }
+    }
+
+    @Test
+    void testSecondPaymentInSamePeriodIsRejectedByUniqueKey() throws Exception {
+        Set<Integer> paidLeases = new HashSet<>();
+        ResultSet leaseRow = (ResultSet) Proxy.newProxyInstance(UnitTest.class.getClassLoader(),
+                new Class<?>[]{ResultSet.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "next": return true;
+                        case "getDouble": return 1200.0;
+                        case "getInt": return 42;
+                        case "getString": return "Jane Doe";
+                        default: return null;
+                    }
+                });
+        Connection connection = (Connection) Proxy.newProxyInstance(UnitTest.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> Proxy.newProxyInstance(UnitTest.class.getClassLoader(),
+                        new Class<?>[]{PreparedStatement.class}, (stmt, m, a) -> {
+                            if (m.getName().equals("executeQuery")) return leaseRow;
+                            if (m.getName().equals("executeUpdate")) {
+                                if (!paidLeases.add(42)) {  // Stands in for UNIQUE (lease_id, payment_period)
+                                    throw new SQLIntegrityConstraintViolationException("Duplicate entry", "23000", 1062);
+                                }
+                                return 1;
+                            }
+                            return null;
+                        }));
+
+        assertEquals(PaymentEngine.Outcome.AMOUNT_MISMATCH, PaymentEngine.pay(connection, "1 Oak", 100).getOutcome());
+        assertEquals(PaymentEngine.Outcome.PAID, PaymentEngine.pay(connection, "1 Oak", 1200).getOutcome());
+        assertEquals(PaymentEngine.Outcome.ALREADY_PAID, PaymentEngine.pay(connection, "1 Oak", 1200).getOutcome());
+    }
+
+    @Test
+    void testRentPostingParsesAndValidatesRecords() {
+        BulkRentPosting.PaymentRecord csv = BulkRentPosting.parseCsvRecord("\"12 Oak\", 1200.50", 2);
+        assertEquals("12 Oak", csv.address);
+        assertEquals(1200.50, csv.amount);
+        BulkRentPosting.PaymentRecord json = BulkRentPosting.parseJsonRecord("{\"address\":\"7 Elm\",\"amount\":900}", 3);
+        assertEquals("7 Elm", json.address);
+        assertEquals(900.0, json.amount);
+        assertThrows(IllegalArgumentException.class, () -> BulkRentPosting.parseCsvRecord("12 Oak,abc", 4));
+        assertThrows(IllegalArgumentException.class, () -> BulkRentPosting.parseCsvRecord("12 Oak,-5", 5));
+        assertEquals("\"Doe, Jane\"", Csv.escape("Doe, Jane"));
+    }
+
+    @Test
+    void testRentRollMergeJoinsLeasesAndPayments() throws Exception {
+        List<RentRollReport.LeaseRow> leases = List.of(
+                new RentRollReport.LeaseRow(1, "Jane Doe", "1 Oak", 1000, 202311, 202412),
+                new RentRollReport.LeaseRow(3, "John Doe", "3 Oak", 500, 202401, 202401));
+        List<RentRollReport.PaymentRow> payments = List.of(
+                new RentRollReport.PaymentRow(1, 202312, 1000),
+                new RentRollReport.PaymentRow(1, 202401, 400),
+                new RentRollReport.PaymentRow(2, 202401, 800),   // Lease not in the report
+                new RentRollReport.PaymentRow(3, 202401, 500));
+        List<String> arrears = new ArrayList<>();
+
+        RentRollReport.Result result = RentRollReport.compute(leases.iterator(), payments.iterator(),
+                RentRollReport.parsePeriod("2023-12"), RentRollReport.parsePeriod("2024-02"),
+                (lease, period, expected, collected) -> arrears.add(lease.leaseId + "@" + period + ":" + collected));
+
+        assertEquals(List.of("1@202401:400.0", "1@202402:0.0"), arrears);
+        assertEquals(1, result.getUnmatchedPayments());
+        RentRollReport.PeriodTotals january = result.getPeriods().get(1);
+        assertEquals(202401, january.getPeriod());
+        assertEquals(1500.0, january.getExpected());
+        assertEquals(900.0, january.getCollected());
+        assertEquals(1, january.getPaidLeases());
+        assertThrows(IllegalArgumentException.class, () -> RentRollReport.parsePeriod("2024-13"));
+    }
+
+    @Test
+    void testRentRollLeaseQueryMatchesWholeMonths() throws Exception {
+        useH2Database("rentRoll");
+        try {
+            try (Connection connection = DatabaseConnection.getAdminConnection();
+                 Statement stmt = connection.createStatement()) {
+                stmt.executeUpdate("INSERT INTO Person (name) VALUES ('Tina Tenant')");
+                stmt.executeUpdate("INSERT INTO Property (address, type, address_key) VALUES ('3 Pine', 'house', '3 pine')");
+                stmt.executeUpdate("""
+                        INSERT INTO Lease (tenant_id, property_id, startDate, endDate, monthlyRent) VALUES
+                            (1, 1, '2023-06-01', '2023-12-31', 700),
+                            (1, 1, '2024-01-01', '2024-01-31', 800),
+                            (1, 1, '2024-02-29', '2024-06-30', 900),
+                            (1, 1, '2024-03-01', '2024-06-30', 950)
+                        """);
+            }
+            try (Stream<RentRollReport.LeaseRow> rows = PropertyRepository.streamRentRollLeases(202401, 202402, 10)) {
+                List<RentRollReport.LeaseRow> leases = rows.collect(Collectors.toList());
+                assertEquals(List.of(2, 3), leases.stream().map(row -> row.leaseId).collect(Collectors.toList()));
+                assertEquals(202402, leases.get(1).firstPeriod);
+            }
+        } finally {
+            DatabaseConnection.shutdown();
+        }
+    }
+
+    @Test
+    void testConcurrentNewPetTypeGetsOneRow() throws Exception {
+        useH2Database("petTypeRace");
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> ids = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                ids.add(executor.submit(() -> {
+                    try (Connection connection = DatabaseConnection.getTenantConnection()) {
+                        return TenantService.petTypeId(connection, "Iguana");
+                    }
+                }));
+            }
+            for (Future<Integer> id : ids) {
+                assertEquals(ids.get(0).get(), id.get());
+            }
+            assertEquals(1, count("SELECT COUNT(*) FROM Pet"));
+        } finally {
+            executor.shutdown();
+            DatabaseConnection.shutdown();
+        }
+    }
+
+    @Test
+    void testTenantServerQueryParsingAndJsonQuoting() {
+        Map<String, String> query = TenantServer.parseQuery("address=12+Oak%2C+Apt+3&type=Dog&type=Cat");
+        assertEquals("12 Oak, Apt 3", query.get("address"));
+        assertEquals("Dog", query.get("type"));  // The first value wins
+        assertTrue(TenantServer.parseQuery(null).isEmpty());
+        assertEquals("\"say \\\"hi\\\"\\n\"", TenantServer.quote("say \"hi\"\n"));
+        assertEquals("\"\\u0001\"", TenantServer.quote("\u0001"));
+    }
+
+    @Test
+    void testMetricsRecordOnlyWhenEnabledAndRenderPrometheus() {
+        Metrics.Operation op = Metrics.operation("test.metricsOperation");
+        boolean wasEnabled = Metrics.isEnabled();
+        try {
+            Metrics.setEnabled(false);
+            long started = op.start();
+            assertEquals(Metrics.OFF, started);
+            op.success(started, 10);
+            assertEquals(0, op.getCalls());
+
+            Metrics.setEnabled(true);
+            op.success(op.start(), 3);
+            op.failure(op.start());
+            assertEquals(2, op.getCalls());
+            assertEquals(1, op.getErrors());
+            assertEquals(3, op.getRows());
+
+            String text = Metrics.prometheus();
+            assertTrue(text.contains("properties_operation_seconds_count{op=\"test.metricsOperation\"} 2"));
+            assertTrue(text.contains("properties_operation_errors_total{op=\"test.metricsOperation\"} 1"));
+            assertTrue(text.contains("properties_operation_seconds{op=\"test.metricsOperation\",quantile=\"0.99\"}"));
+            assertTrue(text.contains("properties_cache_addresses_hits " + PortfolioCache.ADDRESSES.getHits() + "\n"));
+        } finally {
+            Metrics.setEnabled(wasEnabled);
+        }
+    }
+
+    @Test
+    void testLeaseDatesParseStrictIsoDatesToEpochDays() throws Exception {
+        for (String date : new String[]{"1970-01-01", "2024-02-29", "2000-02-29", "1999-12-31", "2025-07-15", "0001-01-01", "9999-12-31"}) {
+            assertEquals(LocalDate.parse(date).toEpochDay(), LeaseDates.parseEpochDay(date), date);
+        }
+        assertEquals(LeaseDates.parseEpochDay("2024-03-01"), Main.validateAndParseDate(" 2024-03-01 "));
+        for (String date : new String[]{"2023-02-29", "1900-02-29", "2024-13-01", "2024-00-10", "2024-04-31", "2024-1-01",
+                "2024/01/01", "2024-01-0a", "+024-01-01", "", "2024-01-011"}) {
+            assertEquals(LeaseDates.INVALID, LeaseDates.parseEpochDay(date), date);
+        }
+        assertThrows(ParseException.class, () -> Main.validateAndParseDate("2024-13-01"));
+        assertEquals("2024-02-29", LeaseDates.format(LeaseDates.parseEpochDay("2024-02-29")));
+        assertEquals(LocalDate.of(2025, 2, 1), lease.getEndDate());
+        assertTrue(lease.toString().contains("startDate=2024-02-01"));
+    }
+
+    @Test
+    void testPortfolioSnapshotRoundTripsPropertiesAndLeases() throws Exception {
+        Path file = Files.createTempFile("portfolio", ".snapshot");
+        try {
+            List<IProperty> properties = List.of(house, apartment, new House(new Person("Mary Major"), new Pet[0], "9 Ash", false));
+            long bytes = PortfolioSnapshot.write(file, properties, List.of(lease, new Lease("Sam Roe", 10, 20, 500.0, "77 Pine")),
+                    1234L, 42L, new PortfolioSnapshot.DatabaseStamp(3, 5, 4, 2, 9));
+            assertEquals(Files.size(file), bytes);
+
+            PortfolioSnapshot.Contents contents = PortfolioSnapshot.read(file);
+            assertEquals(1234L, contents.getCreatedMillis());
+            assertEquals(42L, contents.getWatermark());
+            assertEquals(5, contents.getStamp().maxPropertyId);
+            assertEquals(9, contents.getStamp().maxLeaseId);
+            assertEquals(3, contents.getProperties().size());
+            for (int i = 0; i < properties.size(); i++) {
+                assertEquals(properties.get(i).getDescription(), contents.getProperties().get(i).getDescription());
+                assertEquals(properties.get(i).getFloor(), contents.getProperties().get(i).getFloor());
+            }
+            assertSame(contents.getProperties().get(0).getOwner(), contents.getProperties().get(1).getOwner());
+            Lease loaded = contents.getLeases().get(0);
+            assertEquals(lease.toString(), loaded.toString());
+            assertEquals(lease.getParsedAddress(), loaded.getParsedAddress());
+            assertSame(contents.getProperties().get(0).getParsedAddress(), loaded.getParsedAddress());
+            assertEquals("77 Pine", contents.getLeases().get(1).getPropertyAddress());
+            assertEquals(20, contents.getLeases().get(1).getEndDay());
+
+            byte[] corrupt = Files.readAllBytes(file);
+            corrupt[corrupt.length - 1] ^= 1;
+            Files.write(file, corrupt);
+            assertThrows(IOException.class, () -> PortfolioSnapshot.read(file));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void testWarmStartReplaysChangeLogOnTopOfSnapshot() throws Exception {
+        useH2Database("warmStart");
+        Path dir = Files.createTempDirectory("warmstart");
+        Path snapshot = dir.resolve("portfolio.snapshot");
+        Path log = ChangeLog.fileFor(snapshot);
+        try {
+            try (Connection connection = DatabaseConnection.getAdminConnection();
+                 Statement stmt = connection.createStatement()) {
+                // Ids no other test uses, as PetTypeDictionary is shared by the whole run
+                stmt.executeUpdate("INSERT INTO Pet (id, type) VALUES (7101, 'Dog'), (7102, 'Cat'), (7103, 'Fish')");
+            }
+            Main.seedLeaseIndex(List.of());
+            Main.addPersonToDatabase(new Person("Jane Doe"));
+            Main.addPersonToDatabase(new Person("Sam Roe"));
+            Main.addPropertyToDatabase(house);
+            Main.addPropertyToDatabase(apartment);
+            Main.addLeaseToDatabase(lease);
+            ChangeLog.open(log);
+            ChangeLog.leaseAdded(new Lease("Old Tenant", 1, 2, 100.0, "456 Elm St"));  // From before the snapshot
+            long exportedAt = ChangeLog.position();
+            ChangeLog.close();
+
+            WarmStart.start(snapshot);  // No snapshot yet: a cold start exports one and compacts the log
+            assertEquals(exportedAt, PortfolioSnapshot.read(snapshot).getWatermark());
+            assertEquals(ChangeLog.FILE_HEADER, Files.size(log));
+            Main.addPropertyToDatabase(new Apartment(new Person("Mary Major"), 7, "9 Ash", new Pet[0]));
+            Main.addPetToDatabase(new Pet("Fish"), "9 ash");
+            try (Connection connection = DatabaseConnection.getConnection()) {
+                assertEquals(1, TenantService.removePetType(connection, "123 Main St", "Cat"));
+            }
+            Main.terminateLease("123 Main St");
+            Main.addLeaseToDatabase(new Lease("Sam Roe", 10, 20, 500.0, "9 Ash"));
+            ChangeLog.close();
+            long logged = exportedAt + Files.size(log) - ChangeLog.FILE_HEADER;
+            Files.write(log, new byte[]{12, 0, 0}, StandardOpenOption.APPEND);  // Torn record
+
+            WarmStart.Result result = WarmStart.load(snapshot);
+            result.getSnapshotWrite().get();
+            assertEquals(logged, ChangeLog.position());
+            ChangeLog.close();
+            assertEquals(5, result.getReplayed());
+            assertEquals(ChangeLog.FILE_HEADER, Files.size(log));  // Compacted to the rewritten snapshot
+
+            PortfolioSnapshot.Contents rewritten = PortfolioSnapshot.read(snapshot);
+            assertEquals(logged, rewritten.getWatermark());
+            List<IProperty> properties = rewritten.getProperties();
+            assertEquals(3, properties.size());
+            assertEquals(1, properties.get(0).countPets());
+            assertEquals("Dog", properties.get(0).getPets()[0].getPetType());
+            assertEquals(7, properties.get(2).getFloor());
+            assertEquals("Fish", properties.get(2).getPets()[0].getPetType());
+            assertEquals(1, rewritten.getLeases().size());
+            assertEquals("Sam Roe", rewritten.getLeases().get(0).getTenantName());
+            assertEquals(0, WarmStart.load(snapshot).getReplayed());
+            ChangeLog.close();
+
+            try (Connection connection = DatabaseConnection.getAdminConnection();
+                 Statement stmt = connection.createStatement()) {
+                // Replaces the lease behind the change log's back: the counts match, the highest id does not
+                stmt.executeUpdate("DELETE FROM Lease");
+                stmt.executeUpdate("INSERT INTO Lease (tenant_id, property_id, startDate, endDate, monthlyRent)"
+                        + " SELECT t.id, p.id, DATE '2024-01-01', DATE '2024-12-31', 900 FROM Person t, Property p"
+                        + " WHERE t.name = 'Sam Roe' AND p.address = '9 Ash'");
+            }
+            assertThrows(IOException.class, () -> WarmStart.load(snapshot));
+            assertFalse(ChangeLog.isOpen());
+            WarmStart.start(snapshot);  // Falls back to a cold start
+            assertEquals(900.0, PortfolioSnapshot.read(snapshot).getLeases().get(0).getMonthlyRent());
+        } finally {
+            ChangeLog.close();
+            Main.seedLeaseIndex(List.of());
+            DatabaseConnection.shutdown();
+            PortfolioCache.invalidateAll();
+            for (Path file : new Path[]{snapshot, log, dir}) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    @Test
+    void testWriteJournalRecoversAcknowledgedWritesAndDropsATornTail() throws Exception {
+        Path dir = Files.createTempDirectory("journal");
+        Path journal = dir.resolve("writes.journal");
+        try {
+            WriteJournal.open(journal, false);  // No writer: the records stay queued
+            assertTrue(WriteJournal.isOpen());
+            assertTrue(WriteJournal.propertyAdded(house));
+            assertTrue(WriteJournal.leaseAdded(lease));
+            assertTrue(WriteJournal.rentPaid("123 Main St", 1200.0, 1_700_000_000_000L));
+            assertTrue(WriteJournal.petTypeRemoved("123 Main St", "Cat"));
+            WriteJournal.close();
+            assertFalse(WriteJournal.isOpen());
+
+            WriteJournal.open(journal, false);
+            List<WriteJournal.Entry> queued = WriteJournal.queued();
+            assertEquals(4, queued.size());
+            assertEquals(4, WriteJournal.pending());
+            WriteJournal.Entry property = queued.get(0);
+            assertEquals(WriteJournal.PROPERTY_ADDED, property.operation);
+            assertEquals("John Doe", property.name);
+            assertEquals(List.of("Dog", "Cat"), property.pets);
+            assertEquals(lease.getEndDay(), queued.get(1).lease().getEndDay());
+            assertEquals(1_700_000_000_000L, queued.get(2).paidAtMillis);
+            WriteJournal.close();
+
+            // Corrupt the last record, as if the process died while writing it
+            try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.wrap(new byte[]{(byte) 0xFF}), queued.get(2).end + 20);
+            }
+            WriteJournal.open(journal, false);
+            assertEquals(3, WriteJournal.pending());
+            assertTrue(WriteJournal.leasesTerminated("123 Main St"));
+            queued = WriteJournal.queued();
+            assertEquals(4, queued.get(3).seq);
+            assertEquals(WriteJournal.LEASES_TERMINATED, queued.get(3).operation);
+        } finally {
+            WriteJournal.close();
+            Files.deleteIfExists(journal);
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    private static void awaitJournalDrained() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (WriteJournal.pending() > 0) {
+            assertTrue(System.currentTimeMillis() < deadline, WriteJournal.pending() + " journal records not written");
+            Thread.sleep(10);
+        }
+    }
+
+    private static void deleteJournal(Path journal) throws IOException {
+        Files.deleteIfExists(journal);
+        Files.deleteIfExists(journal.resolveSibling(journal.getFileName() + ".rejects"));
+        Files.deleteIfExists(journal.getParent());
+    }
+
+    @Test
+    void testWriteJournalWriterAppliesEachRecordOnceAcrossRestarts() throws Exception {
+        useH2Database("journalDrain");
+        Path journal = Files.createTempDirectory("journal").resolve("writes.journal");
+        try {
+            try (Connection connection = DatabaseConnection.getAdminConnection();
+                 Statement stmt = connection.createStatement()) {
+                stmt.executeUpdate("INSERT INTO Pet (id, type) VALUES (7201, 'Dog'), (7202, 'Cat')");
+            }
+            Main.seedLeaseIndex(List.of());
+            WriteJournal.open(journal);
+            Main.addPersonToDatabase(new Person("Jane Doe"));
+            Main.addPropertyToDatabase(house);
+            Main.addLeaseToDatabase(lease);
+            awaitJournalDrained();
+            assertEquals(1, count("SELECT COUNT(*) FROM Property"));
+            assertEquals(2, count("SELECT COUNT(*) FROM PropertyPet"));
+            assertEquals(1, count("SELECT COUNT(*) FROM Lease l JOIN Person t ON l.tenant_id = t.id"));
+            assertEquals(3, count("SELECT applied_seq FROM WriteJournalState"));
+            WriteJournal.close();
+
+            WriteJournal.open(journal, false);
+            assertEquals(3, WriteJournal.pending());  // Until the writer has asked the database
+            WriteJournal.close();
+            WriteJournal.open(journal);
+            awaitJournalDrained();
+            assertEquals(1, count("SELECT COUNT(*) FROM Property"));  // Skipped up to applied_seq, not written twice
+            assertEquals(1, count("SELECT COUNT(*) FROM Lease"));
+        } finally {
+            WriteJournal.close();
+            Main.seedLeaseIndex(List.of());
+            DatabaseConnection.shutdown();
+            deleteJournal(journal);
+        }
+    }
+
+    @Test
+    void testWriteJournalWriterRetriesUntilTheDatabaseIsBack() throws Exception {
+        Path journal = Files.createTempDirectory("journal").resolve("writes.journal");
+        try {
+            DatabaseConnection.configure("jdbc:h2:tcp://localhost:1/unreachable", "sa", "", "sa", "");
+            WriteJournal.open(journal);
+            assertTrue(WriteJournal.personAdded("Jane Doe"));  // Acknowledged once on disk
+            Thread.sleep(300);
+            assertEquals(1, WriteJournal.pending());
+
+            useH2Database("journalRetry");
+            awaitJournalDrained();
+            assertEquals(1, count("SELECT COUNT(*) FROM Person WHERE name = 'Jane Doe'"));
+        } finally {
+            WriteJournal.close();
+            DatabaseConnection.shutdown();
+            deleteJournal(journal);
+        }
+    }
+
+    @Test
+    void testWriteJournalRejectsRecordsTheDatabaseRefusesAndRestoresTheLeaseIndex() throws Exception {
+        useH2Database("journalRejects");
+        Path journal = Files.createTempDirectory("journal").resolve("writes.journal");
+        try {
+            try (Connection connection = DatabaseConnection.getAdminConnection();
+                 Statement stmt = connection.createStatement()) {
+                // Payments keep their lease, so a lease with payments cannot be deleted
+                stmt.executeUpdate("ALTER TABLE RentPayments ADD FOREIGN KEY (lease_id) REFERENCES Lease(id)");
+            }
+            Main.seedLeaseIndex(List.of());
+            WriteJournal.open(journal);
+            Main.addPersonToDatabase(new Person("Jane Doe"));
+            Main.addPropertyToDatabase(new House(person, new Pet[0], "123 Main St", true));
+            Main.addLeaseToDatabase(lease);
+            Lease nowhere = new Lease("Jane Doe", 10, 20, 100.0, "9 Nowhere");
+            Main.addLeaseToDatabase(nowhere);  // No such property
+            awaitJournalDrained();
+            assertEquals(1, count("SELECT COUNT(*) FROM Lease"));
+            Main.addLeaseToDatabase(nowhere);  // The rejected lease gave its dates back
+            awaitJournalDrained();
+
+            try (Connection connection = DatabaseConnection.getAdminConnection();
+                 Statement stmt = connection.createStatement()) {
+                stmt.executeUpdate("INSERT INTO RentPayments (property_address, tenant_name, payment_date, amount_paid, lease_id,"
+                        + " payment_period) SELECT '123 Main St', 'Jane Doe', TIMESTAMP '2024-02-01 10:00:00', 1200, id, 202402 FROM Lease");
+            }
+            Main.terminateLease("123 Main St");
+            awaitJournalDrained();
+            assertEquals(1, count("SELECT COUNT(*) FROM Lease"));
+            assertThrows(OverlappingLeaseException.class, () -> Main.addLeaseToDatabase(lease));  // Indexed again
+            assertEquals(6, count("SELECT applied_seq FROM WriteJournalState"));
+
+            String rejects = Files.readString(WriteJournal.rejectsFile());
+            assertTrue(rejects.startsWith("seq,operation,address,name,amount,reason"));
+            assertTrue(rejects.contains("\n4,lease,9 Nowhere,Jane Doe,100.0,"));
+            assertTrue(rejects.contains("\n5,lease,9 Nowhere,Jane Doe,100.0,"));
+            assertTrue(rejects.contains("\n6,lease termination,123 Main St,"));
+        } finally {
+            WriteJournal.close();
+            Main.seedLeaseIndex(List.of());
+            DatabaseConnection.shutdown();
+            deleteJournal(journal);
+        }
+    }
+
+    @Test
+    void testLeaseIndexIncludesTheLeasesAndTerminationsStillInTheJournal() throws Exception {
+        useH2Database("journalLeaseIndex");
+        Path journal = Files.createTempDirectory("journal").resolve("writes.journal");
+        Lease pending = new Lease("Jane Doe", LocalDate.of(2030, 1, 1), LocalDate.of(2030, 12, 31), 900.00, "5 Ash");
+        try {
+            Main.seedLeaseIndex(List.of());
+            WriteJournal.open(journal, false);  // No writer: the lease stays queued
+            Main.addLeaseToDatabase(pending);
+            WriteJournal.close();
+
+            // Restart: a warm start seeds the index from a snapshot without the lease, then opens the journal
+            Main.seedLeaseIndex(List.of());
+            WriteJournal.open(journal, false);
+            assertThrows(OverlappingLeaseException.class, () -> Main.addLeaseToDatabase(pending));
+
+            // Loaded from the (empty) table with the queued lease on top
+            Main.resetLeaseIndex();
+            assertThrows(OverlappingLeaseException.class, () -> Main.addLeaseToDatabase(pending));
+
+            // A termination queued while the index is not loaded still frees the dates once it is
+            Main.resetLeaseIndex();
+            Main.terminateLease("5 Ash");
+            Main.addLeaseToDatabase(pending);
+            assertEquals(3, WriteJournal.pending());
+            assertThrows(OverlappingLeaseException.class, () -> Main.addLeaseToDatabase(pending));
+        } finally {
+            WriteJournal.close();
+            Main.seedLeaseIndex(List.of());
+            DatabaseConnection.shutdown();
+            deleteJournal(journal);
+        }
+    }
+
+    @Test
+    void testTenantServerQueuesWritesInTheWriteJournal() throws Exception {
+        Path journal = Files.createTempDirectory("journal").resolve("writes.journal");
+        TenantServer server = null;
+        try {
+            WriteJournal.open(journal, false);  // No writer and no database: the writes have to be queued
+            server = TenantServer.start(0);
+            HttpClient client = HttpClient.newHttpClient();
+            String base = "http://localhost:" + server.getPort();
+            HttpResponse<String> pet = client.send(HttpRequest.newBuilder(URI.create(base + "/tenants/pets"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"address\":\"12 Oak\",\"type\":\"Dog\"}")).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals(202, pet.statusCode());
+            HttpResponse<String> removal = client.send(HttpRequest.newBuilder(
+                    URI.create(base + "/tenants/pets?address=12+Oak&type=Dog")).DELETE().build(),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals(202, removal.statusCode());
+            HttpResponse<String> rent = client.send(HttpRequest.newBuilder(URI.create(base + "/tenants/rent"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"address\":\"12 Oak\",\"amount\":1200}")).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals(202, rent.statusCode());
+
+            List<WriteJournal.Entry> queued = WriteJournal.queued();
+            assertEquals(3, queued.size());
+            assertEquals(WriteJournal.PET_ADDED, queued.get(0).operation);
+            assertEquals(WriteJournal.PET_TYPE_REMOVED, queued.get(1).operation);
+            assertEquals(WriteJournal.RENT_PAID, queued.get(2).operation);
+            assertEquals(1200.0, queued.get(2).amount);
+        } finally {
+            if (server != null) {
+                server.stop(0);
+            }
+            WriteJournal.close();
+            deleteJournal(journal);
+        }
+    }
+
+    @Test
+    void testWriteJournalStartsOverOnceAFullJournalIsApplied() throws Exception {
+        useH2Database("journalWrap");
+        Path journal = Files.createTempDirectory("journal").resolve("writes.journal");
+        try {
+            WriteJournal.open(journal, true, 4096);  // About 140 records a lap
+            for (int i = 0; i < 500; i++) {
+                assertTrue(WriteJournal.personAdded("Tenant " + i));
+            }
+            awaitJournalDrained();
+            assertEquals(500, count("SELECT COUNT(*) FROM Person"));
+            WriteJournal.close();
+            assertEquals(4096, Files.size(journal));
+            try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.READ)) {
+                ByteBuffer firstSeq = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+                channel.read(firstSeq, 24);
+                assertTrue(firstSeq.getLong(0) > 1);
+            }
+
+            WriteJournal.open(journal, true, 4096);
+            assertTrue(WriteJournal.personAdded("Tenant 500"));
+            awaitJournalDrained();
+            assertEquals(501, count("SELECT COUNT(*) FROM Person"));  // Overwritten records were not replayed
+        } finally {
+            WriteJournal.close();
+            DatabaseConnection.shutdown();
+            deleteJournal(journal);
+        }
+    }
 }
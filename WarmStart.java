@@ -0,0 +1,294 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+// Startup from the local portfolio snapshot instead of the database (-Dsnapshot.file=<path>).
+// The snapshot is loaded, the ChangeLog records written since it was taken are replayed on top, and the
+// result seeds the property cache and the lease overlap index, so the first admin action needs no full load.
+// The database is asked only for the snapshot's DatabaseStamp (a few row counts and highest ids):
+// if it does not match the snapshot plus the replayed changes, something wrote around the change log and the
+// start is a cold one instead.
+// Afterwards the change log is open for appends and, if anything was replayed, a fresh snapshot is written in
+// the background so the next start replays nothing; the log is then compacted to the snapshot's watermark.
+// Without a usable snapshot the start is a cold one: the database is exported to a new snapshot (before the
+// program takes any input, so no change can fall between the export and the log), and the log records every
+// change from that point on.
+public class WarmStart {
+    static final String NEWER_ROWS = StatementRegistry.named("snapshot.newerRows", """
+            SELECT (SELECT COUNT(*) FROM Property WHERE id > ?),
+                   (SELECT COUNT(*) FROM Lease l JOIN Person t ON l.tenant_id = t.id WHERE l.id > ?)
+            """);
+
+    public static class Result {
+        private int properties;
+        private int leases;
+        private int replayed;
+        private long elapsedNanos;
+        private CompletableFuture<Void> snapshotWrite = CompletableFuture.completedFuture(null);
+
+        public int getProperties() { return properties; }
+        public int getLeases() { return leases; }
+        public int getReplayed() { return replayed; }
+        // Completes once the background snapshot rewrite (if there is one) has finished
+        public CompletableFuture<Void> getSnapshotWrite() { return snapshotWrite; }
+
+        @Override
+        public String toString() {
+            return "Warm start: " + properties + " properties and " + leases + " leases, " + replayed
+                    + " changes replayed, in " + (elapsedNanos / 1_000_000) + " ms";
+        }
+    }
+
+    // The portfolio as replay builds it: the snapshot's properties in their order (new ones go last) and its
+    // leases grouped by property. Indexed on the first change, so a start with nothing to replay skips it.
+    static class Portfolio {
+        private final PortfolioSnapshot.Contents snapshot;
+        private List<IProperty> properties;
+        private Map<Address, Integer> positions;  // First property at each address, as LINK_PET_TO_PROPERTY picks one
+        private Map<Address, List<Lease>> leases;
+        // What the replayed changes did to the tables, for the DatabaseStamp check
+        private int addedProperties;
+        private int petLinkDelta;
+        private int leaseDelta;
+        private int addedLeases;
+
+        Portfolio(PortfolioSnapshot.Contents snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        private void index() {
+            properties = new ArrayList<>(snapshot.getProperties());
+            positions = new HashMap<>();
+            for (int i = 0; i < properties.size(); i++) {
+                positions.putIfAbsent(properties.get(i).getParsedAddress(), i);
+            }
+            leases = new LinkedHashMap<>();
+            for (Lease lease : snapshot.getLeases()) {
+                leases.computeIfAbsent(lease.getParsedAddress(), key -> new ArrayList<>()).add(lease);
+            }
+        }
+
+        void apply(ChangeLog.Change change) {
+            if (properties == null) {
+                index();
+            }
+            Address address = Address.of(change.address);
+            Integer position = positions.get(address);
+            switch (change.type) {
+                case ChangeLog.PROPERTY_ADDED: {
+                    short[] pets = PetTypeDictionary.NO_PETS;
+                    if (!change.pets.isEmpty()) {
+                        pets = new short[change.pets.size()];
+                        for (int i = 0; i < pets.length; i++) {
+                            pets[i] = PetTypeDictionary.code(change.pets.get(i));
+                        }
+                    }
+                    Person owner = new Person(change.name);
+                    properties.add(change.apartment
+                            ? new Apartment(owner, change.floor, address, pets)
+                            : new House(owner, pets, address, change.ground));
+                    positions.putIfAbsent(address, properties.size() - 1);
+                    addedProperties++;
+                    petLinkDelta += pets.length;
+                    break;
+                }
+                case ChangeLog.PET_ADDED:
+                    if (position != null) {
+                        short[] pets = petCodes(properties.get(position));
+                        short[] grown = Arrays.copyOf(pets, pets.length + 1);
+                        grown[pets.length] = PetTypeDictionary.code(change.name);
+                        properties.set(position, withPets(properties.get(position), grown));
+                        petLinkDelta++;
+                    }
+                    break;
+                case ChangeLog.PET_TYPE_REMOVED:
+                    if (position != null) {
+                        short removed = PetTypeDictionary.code(change.name);
+                        short[] pets = petCodes(properties.get(position));
+                        short[] kept = new short[pets.length];
+                        int count = 0;
+                        for (short pet : pets) {
+                            if (pet != removed) {
+                                kept[count++] = pet;
+                            }
+                        }
+                        if (count < pets.length) {
+                            properties.set(position, withPets(properties.get(position),
+                                    count == 0 ? PetTypeDictionary.NO_PETS : Arrays.copyOf(kept, count)));
+                            petLinkDelta -= pets.length - count;
+                        }
+                    }
+                    break;
+                case ChangeLog.LEASE_ADDED:
+                    leases.computeIfAbsent(address, key -> new ArrayList<>())
+                            .add(new Lease(change.name, change.startDay, change.endDay, change.monthlyRent, address));
+                    leaseDelta++;
+                    addedLeases++;
+                    break;
+                case ChangeLog.LEASES_TERMINATED: {
+                    List<Lease> removed = leases.remove(address);
+                    if (removed != null) {
+                        leaseDelta -= removed.size();
+                    }
+                    break;
+                }
+                default:
+                    throw new IllegalStateException("Unknown change type " + change.type);
+            }
+        }
+
+        List<IProperty> propertyList() {
+            return properties == null ? snapshot.getProperties() : Collections.unmodifiableList(properties);
+        }
+
+        // Fails unless the database holds what the snapshot plus the replayed changes say it should. Properties
+        // are never deleted, so every one above the snapshot's highest id must be a replayed addition; leases
+        // above it may have been replayed and terminated again, but never outnumber the replayed additions.
+        void verify(PortfolioSnapshot.DatabaseStamp database, int newerProperties, int newerLeases) throws IOException {
+            PortfolioSnapshot.DatabaseStamp stamp = snapshot.getStamp();
+            if (database.properties != stamp.properties + addedProperties || newerProperties != addedProperties
+                    || database.petLinks != stamp.petLinks + petLinkDelta || database.leases != stamp.leases + leaseDelta
+                    || newerLeases > addedLeases) {
+                throw new IOException("the database has changed behind the change log (expected "
+                        + (stamp.properties + addedProperties) + " properties, " + addedProperties + " of them new, "
+                        + (stamp.petLinks + petLinkDelta) + " pet links and " + (stamp.leases + leaseDelta)
+                        + " leases; found " + database + " with " + newerProperties + " new properties and "
+                        + newerLeases + " new leases)");
+            }
+        }
+
+        List<Lease> leaseList() {
+            if (leases == null) {
+                return snapshot.getLeases();
+            }
+            List<Lease> all = new ArrayList<>();
+            leases.values().forEach(all::addAll);
+            return Collections.unmodifiableList(all);
+        }
+    }
+
+    // Warm start if the snapshot can be used, otherwise a cold one; never fails the program start
+    public static void start(Path snapshotFile) {
+        try {
+            System.out.println(load(snapshotFile));
+        } catch (Exception e) {
+            String reason = e instanceof java.nio.file.NoSuchFileException ? "no snapshot yet" : e.getMessage();
+            System.out.println("No warm start from " + snapshotFile + " (" + reason + "); exporting a new snapshot.");
+            try {
+                ChangeLog.open(ChangeLog.fileFor(snapshotFile));
+                PortfolioSnapshot.Contents exported = PortfolioSnapshot.export(snapshotFile, ChangeLog.position());
+                seed(exported.getProperties(), exported.getLeases());
+                compact(exported.getWatermark());  // Whatever an earlier snapshot left is in this one
+                System.out.println("Exported " + exported);
+            } catch (Exception exportFailed) {
+                ChangeLog.close();  // Without a snapshot the log has nothing to bring up to date
+                System.out.println("Warning: could not export the portfolio snapshot: " + exportFailed.getMessage());
+            }
+        }
+    }
+
+    public static Result load(Path snapshotFile) throws IOException {
+        long start = System.nanoTime();
+        PortfolioSnapshot.Contents snapshot = PortfolioSnapshot.read(snapshotFile);
+        Path logFile = ChangeLog.fileFor(snapshotFile);
+
+        Portfolio portfolio = new Portfolio(snapshot);
+        Result result = new Result();
+        long end = ChangeLog.replay(logFile, snapshot.getWatermark(), change -> {
+            portfolio.apply(change);
+            result.replayed++;
+        });
+        PortfolioSnapshot.DatabaseStamp stamp = checkDatabase(portfolio, snapshot.getStamp());
+
+        List<IProperty> properties = portfolio.propertyList();
+        List<Lease> leases = portfolio.leaseList();
+        seed(properties, leases);
+        ChangeLog.open(logFile);
+
+        if (result.replayed > 0) {
+            result.snapshotWrite = TaskEngine.run(() -> {
+                try {
+                    PortfolioSnapshot.write(snapshotFile, properties, leases, System.currentTimeMillis(), end, stamp);
+                } catch (IOException e) {
+                    System.out.println("Warning: could not write the portfolio snapshot: " + e.getMessage());
+                    return;
+                }
+                compact(end);
+            });
+        } else {
+            compact(end);  // Records before the watermark left by a start that stopped before compacting
+        }
+        result.properties = properties.size();
+        result.leases = leases.size();
+        result.elapsedNanos = System.nanoTime() - start;
+        return result;
+    }
+
+    // The database's stamp, once it matches the snapshot's plus the replayed changes
+    private static PortfolioSnapshot.DatabaseStamp checkDatabase(Portfolio portfolio, PortfolioSnapshot.DatabaseStamp stamp)
+            throws IOException {
+        PortfolioSnapshot.DatabaseStamp database;
+        int newerProperties;
+        int newerLeases;
+        try (Connection connection = DatabaseConnection.getConnection()) {
+            database = PortfolioSnapshot.DatabaseStamp.query(connection);
+            try (PreparedStatement stmt = connection.prepareStatement(NEWER_ROWS)) {
+                stmt.setInt(1, stamp.maxPropertyId);
+                stmt.setInt(2, stamp.maxLeaseId);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    rs.next();
+                    newerProperties = rs.getInt(1);
+                    newerLeases = rs.getInt(2);
+                }
+            }
+        } catch (Exception e) {
+            throw new IOException("could not check the snapshot against the database: " + e.getMessage(), e);
+        }
+        portfolio.verify(database, newerProperties, newerLeases);
+        return database;
+    }
+
+    // The records up to the watermark are in the snapshot on disk; a log that cannot be compacted just stays longer
+    private static void compact(long watermark) {
+        try {
+            ChangeLog.compactTo(watermark);
+        } catch (IOException e) {
+            System.out.println("Warning: could not compact the change log: " + e.getMessage());
+        }
+    }
+
+    private static void seed(List<IProperty> properties, List<Lease> leases) {
+        try {
+            PortfolioCache.PROPERTIES.get(PortfolioCache.ALL, key -> properties);
+        } catch (Exception e) {
+            throw new AssertionError(e);  // The loader cannot throw
+        }
+        Main.seedLeaseIndex(leases);
+    }
+
+    private static short[] petCodes(IProperty property) {
+        if (property instanceof House) {
+            return ((House) property).getPetCodes();
+        }
+        return ((Apartment) property).getPetCodes();
+    }
+
+    private static IProperty withPets(IProperty property, short[] pets) {
+        if (property instanceof House) {
+            return new House(property.getOwner(), pets, property.getParsedAddress(), property.isGround());
+        }
+        return new Apartment(property.getOwner(), property.getFloor(), property.getParsedAddress(), pets);
+    }
+}
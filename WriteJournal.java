@@ -0,0 +1,833 @@
+package org.example;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.SQLTransientException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.CRC32C;
+
+// Journaled mode for the write paths in Main (-Djournal.file=<path>, off by default). A write is appended to a
+// memory-mapped journal file and acknowledged once the file is on disk; a background writer then applies the
+// journal to the database in batches of journal.batchSize records, one transaction per batch, and keeps
+// retrying while the database is unavailable. A burst of writes or a database restart costs the caller a
+// shared fsync instead of a round trip per statement.
+//
+// Group commit: an append only copies its record into the mapping and waits. The flusher thread forces the
+// mapping to disk and acknowledges every record that was in it when the force started, so writers that arrive
+// during a force share the next one.
+//
+// File: a 64-byte header (magic, version, journal id, sequence number of the first record), then records
+// (see LogRecord): body length (int), CRC32C of the body (int), body = sequence number (long), operation (byte)
+// and its fields. Sequence numbers are consecutive, and recovery reads records until a length, checksum or
+// sequence number does not fit, so a torn tail is simply not there. Once the file is full and everything in it
+// is in the database, appends start over after the header.
+//
+// Each batch also sets WriteJournalState.applied_seq for this journal (see SchemaMigrations) in the same
+// transaction, and the writer skips the records up to it when it starts or after an error, so no record is
+// written twice. Only records that are on disk are written, so the database is never ahead of the journal.
+// A record the database refuses (a pet for an unknown address, a payment that does not match the lease) is
+// appended to <journal>.rejects and skipped; connection failures, timeouts and deadlocks are retried.
+//
+// Caches, pet counters and index, and the ChangeLog are updated once a record is in the database. The lease
+// overlap index is updated when a lease or termination is queued, so queued leases are checked as well, and
+// put back if the record is rejected; the records still queued are applied on top of it whenever it is built
+// and when open() recovers them. Other reads go to the database and do not see writes that are still queued.
+public class WriteJournal {
+    static final byte PERSON_ADDED = 1;
+    static final byte PROPERTY_ADDED = 2;  // With its pets, written in the same transaction
+    static final byte PET_ADDED = 3;
+    static final byte PET_TYPE_REMOVED = 4;
+    static final byte LEASE_ADDED = 5;
+    static final byte LEASES_TERMINATED = 6;
+    static final byte RENT_PAID = 7;
+
+    private static final String[] OPERATIONS = {"", "person", "property", "pet", "pet removal", "lease",
+            "lease termination", "rent payment"};
+
+    static final String APPLIED_SEQ = StatementRegistry.named("journal.appliedSeq",
+            "SELECT applied_seq FROM WriteJournalState WHERE journal_id = ?");
+    static final String UPDATE_APPLIED_SEQ = StatementRegistry.named("journal.updateAppliedSeq",
+            "UPDATE WriteJournalState SET applied_seq = ? WHERE journal_id = ?");
+    static final String INSERT_APPLIED_SEQ = StatementRegistry.named("journal.insertAppliedSeq",
+            "INSERT INTO WriteJournalState (journal_id, applied_seq) VALUES (?, ?)");
+
+    private static final int MAGIC = 0x4C4E524A;  // "JRNL" in the file
+    private static final int VERSION = 1;
+    private static final int HEADER = 64;
+    private static final int FIRST_SEQ_OFFSET = 24;  // After magic, version and the two longs of the journal id
+    private static final int RECORD_HEADER = LogRecord.HEADER;
+    private static final int MIN_BODY = 9;  // Sequence number and operation
+    private static final ByteOrder ORDER = LogRecord.ORDER;
+
+    private static final int SIZE_MB = Integer.getInteger("journal.sizeMB", 64);
+    private static final int BATCH_SIZE = Integer.getInteger("journal.batchSize", 500);
+    private static final long FULL_WAIT_MILLIS = Long.getLong("journal.fullWaitMillis", 30_000L);
+    private static final long CLOSE_WAIT_MILLIS = Long.getLong("journal.closeWaitMillis", 10_000L);
+    private static final long RETRY_MILLIS = 100;
+    private static final long MAX_RETRY_MILLIS = 30_000;
+
+    private static final Metrics.Operation APPEND = Metrics.operation("journal.append");
+    private static final Metrics.Operation FORCE = Metrics.operation("journal.force");
+    private static final Metrics.Operation DRAIN = Metrics.operation("journal.drain");
+
+    // Guards everything below; appenders, the flusher and the writer all wait on it
+    private static final Object lock = new Object();
+
+    private static FileChannel channel;   // null while the journal is off
+    private static MappedByteBuffer mapped;
+    private static Path file;
+    private static String journalId;
+    private static long firstSeq;         // Sequence number of the record after the header
+    private static int writePosition;     // End of the last record
+    private static long writtenSeq;       // Last record appended
+    private static long durableSeq;       // Last record forced to disk
+    private static long appliedSeq;       // Last record in the database (or rejected)
+    private static int applyPosition;     // Start of the record after appliedSeq
+    private static boolean appliedKnown;  // appliedSeq agrees with the database
+    private static long settledSeq;       // Last record committed or rejected, ahead of appliedSeq while its updates run
+    private static boolean closing;
+    private static String failure;        // Why forcing the mapping failed; appends fail from then on
+    private static Thread flusher;
+    private static Thread writer;
+
+    // One journal record; fields an operation does not use are empty
+    static class Entry {
+        final long seq;
+        final byte operation;
+        final String address;
+        final String name;         // Person, owner, pet type or tenant
+        final boolean apartment;
+        final int floor;
+        final int startDay;
+        final int endDay;
+        final double amount;       // Monthly rent or payment
+        final long paidAtMillis;
+        final List<String> pets;
+        final int end;             // File position after the record
+
+        Entry(long seq, byte operation, String address, String name, boolean apartment, int floor, int startDay,
+              int endDay, double amount, long paidAtMillis, List<String> pets, int end) {
+            this.seq = seq;
+            this.operation = operation;
+            this.address = address;
+            this.name = name;
+            this.apartment = apartment;
+            this.floor = floor;
+            this.startDay = startDay;
+            this.endDay = endDay;
+            this.amount = amount;
+            this.paidAtMillis = paidAtMillis;
+            this.pets = pets;
+            this.end = end;
+        }
+
+        Lease lease() {
+            return new Lease(name, startDay, endDay, amount, address);
+        }
+
+        @Override
+        public String toString() {
+            return OPERATIONS[operation] + " #" + seq + (address.isEmpty() ? " " + name : " at " + address);
+        }
+    }
+
+    public static void open(Path journalFile) throws IOException {
+        open(journalFile, true);
+    }
+
+    // Like open(), but reports problems instead of failing; the writes then go to the database directly
+    public static void openQuietly(Path journalFile) {
+        try {
+            open(journalFile);
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Warning: could not open the write journal " + journalFile + ": " + e.getMessage());
+        }
+    }
+
+    // Without the writer (tests): records are appended and recovered, but not written to the database
+    static void open(Path journalFile, boolean drain) throws IOException {
+        open(journalFile, drain, (long) SIZE_MB << 20);
+    }
+
+    // With a minimum file size other than journal.sizeMB (tests that fill the journal)
+    static void open(Path journalFile, boolean drain, long minSize) throws IOException {
+        close();
+        int recovered;
+        synchronized (lock) {
+            long size = Math.max(Files.exists(journalFile) ? Files.size(journalFile) : 0, minSize);
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("the journal must be smaller than 2 GB (journal.sizeMB)");
+            }
+            FileChannel opened = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                MappedByteBuffer buffer = opened.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                buffer.order(ORDER);
+                if (buffer.getInt(0) == 0) {  // New file
+                    UUID id = UUID.randomUUID();
+                    buffer.putInt(0, MAGIC).putInt(4, VERSION)
+                            .putLong(8, id.getMostSignificantBits()).putLong(16, id.getLeastSignificantBits())
+                            .putLong(FIRST_SEQ_OFFSET, 1);
+                    buffer.force();
+                } else if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                    throw new IOException(journalFile + " is not a version " + VERSION + " write journal");
+                }
+                journalId = new UUID(buffer.getLong(8), buffer.getLong(16)).toString();
+                firstSeq = buffer.getLong(FIRST_SEQ_OFFSET);
+
+                long seq = firstSeq;
+                int position = HEADER;
+                for (Entry entry = read(buffer, position, seq); entry != null; entry = read(buffer, position, ++seq)) {
+                    position = entry.end;
+                }
+                channel = opened;
+                mapped = buffer;
+                file = journalFile;
+                writePosition = position;
+                writtenSeq = seq - 1;
+                durableSeq = writtenSeq;
+                appliedSeq = firstSeq - 1;  // Until the writer has asked the database
+                settledSeq = appliedSeq;
+                applyPosition = HEADER;
+                appliedKnown = false;
+                closing = false;
+                failure = null;
+                recovered = (int) (writtenSeq - appliedSeq);
+            } catch (IOException | RuntimeException e) {
+                opened.close();
+                throw e;
+            }
+            flusher = new Thread(WriteJournal::flush, "journal-flusher");
+            flusher.setDaemon(true);
+            flusher.start();
+            if (drain) {
+                writer = new Thread(WriteJournal::drain, "journal-writer");
+                writer.setDaemon(true);
+                writer.start();
+            }
+        }
+        if (recovered > 0) {
+            System.out.println("Write journal: " + recovered + " records from the last run are checked against the database.");
+            Main.leasesRecovered(queued());  // Outside the lock, which Main's index methods take after their own
+        }
+    }
+
+    // Waits up to journal.closeWaitMillis for the queued writes; whatever is left is written on the next start
+    public static void close() {
+        Thread flushing;
+        Thread writing;
+        synchronized (lock) {
+            if (mapped == null) {
+                return;
+            }
+            closing = true;
+            lock.notifyAll();
+            flushing = flusher;
+            writing = writer;
+        }
+        try {
+            if (writing != null) {
+                writing.join(CLOSE_WAIT_MILLIS);
+                if (writing.isAlive()) {
+                    writing.interrupt();
+                    writing.join(1000);
+                }
+            }
+            flushing.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (lock) {
+            if (writer != null && writtenSeq > appliedSeq) {
+                System.out.println("Write journal: " + (writtenSeq - appliedSeq) + " writes are not in the database yet; they are written on the next start.");
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            channel = null;
+            mapped = null;
+            file = null;
+            flusher = null;
+            writer = null;
+        }
+    }
+
+    public static boolean isOpen() {
+        synchronized (lock) {
+            return mapped != null && !closing;
+        }
+    }
+
+    // Records not in the database yet
+    public static long pending() {
+        synchronized (lock) {
+            return writtenSeq - appliedSeq;
+        }
+    }
+
+    // The operations return once the record is on disk; false (after a warning) if it could not be journaled
+
+    public static boolean personAdded(String name) {
+        return append(record(PERSON_ADDED).put(name));
+    }
+
+    public static boolean propertyAdded(IProperty property) {
+        boolean apartment = property instanceof Apartment;  // Stored as Main.insertProperty writes it
+        Pet[] pets = property.getPets();
+        LogRecord record = record(PROPERTY_ADDED).put(apartment ? 1 : 0).put(property.getAddress())
+                .put(property.getOwner().getName()).put(apartment ? property.getFloor() : 0).put(pets.length);
+        for (Pet pet : pets) {
+            record.put(pet.getPetType());
+        }
+        return append(record);
+    }
+
+    public static boolean petAdded(String address, String petType) {
+        return append(record(PET_ADDED).put(address).put(petType));
+    }
+
+    public static boolean petTypeRemoved(String address, String petType) {
+        return append(record(PET_TYPE_REMOVED).put(address).put(petType));
+    }
+
+    public static boolean leaseAdded(Lease lease) {
+        return append(record(LEASE_ADDED).put(lease.getPropertyAddress()).put(lease.getTenantName())
+                .put(lease.getStartDay()).put(lease.getEndDay()).put(lease.getMonthlyRent()));
+    }
+
+    public static boolean leasesTerminated(String address) {
+        return append(record(LEASES_TERMINATED).put(address));
+    }
+
+    // The payment keeps the time it was accepted, so it counts for that month even if it is written later
+    public static boolean rentPaid(String address, double amount, long paidAtMillis) {
+        return append(record(RENT_PAID).put(address).put(amount).put(paidAtMillis));
+    }
+
+    // The body starts with the sequence number, which write() fills in
+    private static LogRecord record(byte operation) {
+        return new LogRecord(8, operation);
+    }
+
+    private static boolean append(LogRecord record) {
+        long started = APPEND.start();
+        try {
+            synchronized (lock) {
+                long seq = write(record);
+                while (durableSeq < seq) {
+                    if (failure != null) {
+                        throw new IOException(failure);
+                    }
+                    lock.wait();
+                }
+            }
+            APPEND.success(started, 1);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            APPEND.failure(started);
+            System.out.println("Warning: could not write to the write journal (" + e.getMessage() + "); the change was not saved.");
+            return false;
+        } catch (InterruptedException e) {
+            APPEND.failure(started);
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    // Copies the record into the mapping, holding the lock; returns its sequence number
+    private static long write(LogRecord record) throws IOException, InterruptedException {
+        if (record.getTooLong() != null) {
+            throw new IOException("a " + record.getTooLong() + " does not fit in a journal record");
+        }
+        long deadline = System.currentTimeMillis() + FULL_WAIT_MILLIS;
+        while (true) {
+            if (mapped == null || closing) {
+                throw new IOException("the write journal is closed");
+            }
+            if (failure != null) {
+                throw new IOException(failure);
+            }
+            if (HEADER + record.size() > mapped.capacity()) {
+                throw new IOException("a " + record.size() + "-byte record does not fit in the journal");
+            }
+            if (writePosition + record.size() <= mapped.capacity()) {
+                break;
+            }
+            if (appliedSeq == writtenSeq) {
+                restart();
+                break;
+            }
+            long left = deadline - System.currentTimeMillis();
+            if (left <= 0) {
+                throw new IOException("the journal is full and the database is behind");
+            }
+            lock.wait(left);
+        }
+        long seq = writtenSeq + 1;
+        record.putLong(RECORD_HEADER, seq);
+        ByteBuffer sealed = record.seal();
+        mapped.put(writePosition, sealed, 0, sealed.limit());
+        writePosition += sealed.limit();
+        writtenSeq = seq;
+        lock.notifyAll();
+        return seq;
+    }
+
+    // Everything is in the database: new records go after the header again. The new first sequence number
+    // is on disk before any old record is overwritten, and the old records all have lower numbers.
+    private static void restart() {
+        firstSeq = writtenSeq + 1;
+        mapped.putLong(FIRST_SEQ_OFFSET, firstSeq);
+        mapped.force(0, HEADER);
+        writePosition = HEADER;
+        applyPosition = HEADER;
+    }
+
+    // The flusher: one force for all the records appended since the last one
+    private static void flush() {
+        while (true) {
+            MappedByteBuffer buffer;
+            long from;
+            long target;
+            synchronized (lock) {
+                while (durableSeq == writtenSeq && !closing) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (durableSeq == writtenSeq) {
+                    return;  // Closing, and everything is on disk
+                }
+                buffer = mapped;
+                from = durableSeq;
+                target = writtenSeq;
+            }
+            long started = FORCE.start();
+            try {
+                buffer.force();
+            } catch (RuntimeException e) {
+                FORCE.failure(started);
+                System.out.println("Warning: could not write the journal to disk (" + e.getMessage() + "); journaled writes fail until it is reopened.");
+                synchronized (lock) {
+                    failure = "the journal could not be written to disk: " + e.getMessage();
+                    lock.notifyAll();
+                }
+                return;
+            }
+            FORCE.success(started, target - from);
+            synchronized (lock) {
+                durableSeq = target;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    // The writer: applies batches of records until the journal is closed and drained
+    private static void drain() {
+        long retryMillis = RETRY_MILLIS;
+        long isolateThrough = 0;  // After a batch failed for good, its records go one at a time to find the bad one
+        boolean warned = false;
+        while (true) {
+            try {
+                if (!awaitWork()) {
+                    return;
+                }
+                if (!isAppliedKnown()) {
+                    loadApplied();
+                }
+                List<Entry> batch = nextBatch(appliedSeqNow() < isolateThrough ? 1 : BATCH_SIZE);
+                if (batch.isEmpty()) {
+                    continue;
+                }
+                try {
+                    writeBatch(batch);
+                } catch (Exception e) {
+                    if (isTransient(e)) {
+                        throw e;
+                    }
+                    if (batch.size() > 1) {
+                        isolateThrough = batch.get(batch.size() - 1).seq;
+                        continue;
+                    }
+                    reject(batch.get(0), e.getMessage() != null ? e.getMessage() : e.toString());
+                }
+                retryMillis = RETRY_MILLIS;
+                if (warned) {
+                    System.out.println("Write journal: the database is available again.");
+                    warned = false;
+                }
+            } catch (InterruptedException e) {
+                return;  // close() stopped waiting
+            } catch (Exception e) {
+                if (!warned) {
+                    System.out.println("Warning: the write journal cannot reach the database (" + e.getMessage() + "); retrying.");
+                    warned = true;
+                }
+                try {
+                    Thread.sleep(retryMillis);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+                retryMillis = Math.min(retryMillis * 2, MAX_RETRY_MILLIS);
+            }
+        }
+    }
+
+    // Waits for records on disk that are not in the database; false once the journal is closing and drained
+    private static boolean awaitWork() throws InterruptedException {
+        synchronized (lock) {
+            while (mapped != null && appliedSeq >= durableSeq) {
+                if (closing && (durableSeq == writtenSeq || failure != null)) {
+                    return false;
+                }
+                lock.wait();
+            }
+            return mapped != null;
+        }
+    }
+
+    private static boolean isAppliedKnown() {
+        synchronized (lock) {
+            return appliedKnown;
+        }
+    }
+
+    private static long appliedSeqNow() {
+        synchronized (lock) {
+            return appliedSeq;
+        }
+    }
+
+    // Skips the records that are already in the database
+    private static void loadApplied() throws SQLException {
+        String id;
+        synchronized (lock) {
+            id = journalId;
+        }
+        long applied = 0;
+        boolean leasesSkipped = false;
+        try (Connection connection = adminConnection();
+             PreparedStatement stmt = connection.prepareStatement(APPLIED_SEQ)) {
+            stmt.setString(1, id);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    applied = rs.getLong(1);
+                }
+            }
+        }
+        synchronized (lock) {
+            while (appliedSeq < Math.min(applied, durableSeq)) {
+                Entry entry = read(mapped, applyPosition, appliedSeq + 1);
+                leasesSkipped |= entry.operation == LEASE_ADDED || entry.operation == LEASES_TERMINATED;
+                applyPosition = entry.end;
+                appliedSeq = entry.seq;
+            }
+            settledSeq = Math.max(settledSeq, appliedSeq);
+            appliedKnown = true;
+            lock.notifyAll();
+        }
+        if (leasesSkipped) {
+            Main.resetLeaseIndex();  // The index took them as queued when the journal was opened
+        }
+    }
+
+    private static List<Entry> nextBatch(int max) {
+        synchronized (lock) {
+            List<Entry> batch = new ArrayList<>(Math.min(max, (int) Math.max(0, durableSeq - appliedSeq)));
+            int position = applyPosition;
+            for (long seq = appliedSeq + 1; seq <= durableSeq && batch.size() < max; seq++) {
+                Entry entry = read(mapped, position, seq);
+                if (entry == null) {
+                    throw new IllegalStateException("journal record " + seq + " cannot be read back");
+                }
+                batch.add(entry);
+                position = entry.end;
+            }
+            return batch;
+        }
+    }
+
+    // One transaction for the batch and its applied_seq; the in-memory state follows once it has committed
+    private static void writeBatch(List<Entry> batch) throws Exception {
+        Entry last = batch.get(batch.size() - 1);
+        List<Runnable> afterCommit = new ArrayList<>(batch.size());
+        long started = DRAIN.start();
+        try (Connection connection = adminConnection()) {
+            connection.setAutoCommit(false);  // The pool rolls back and restores autocommit when it gets the connection back
+            for (Entry entry : batch) {
+                afterCommit.add(apply(connection, entry));
+            }
+            saveApplied(connection, last.seq);
+            connection.commit();
+        } catch (Exception e) {
+            DRAIN.failure(started);
+            synchronized (lock) {
+                appliedKnown = false;  // A failed commit may still have committed: ask the database before retrying
+            }
+            throw e;
+        }
+        DRAIN.success(started, batch.size());
+        settled(last);
+        for (Runnable update : afterCommit) {
+            try {
+                update.run();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+        applied(last);  // After the updates, so pending() reaches 0 only once they are visible
+    }
+
+    // The record's statements on the writer's transaction; returns the in-memory update for after the commit
+    private static Runnable apply(Connection connection, Entry entry) throws SQLException {
+        switch (entry.operation) {
+            case PERSON_ADDED:
+                Main.insertPerson(connection, entry.name);
+                return PortfolioCache::invalidateAll;
+            case PROPERTY_ADDED: {
+                Person owner = new Person(entry.name);
+                Address address = Address.of(entry.address);
+                IProperty property = entry.apartment
+                        ? new Apartment(owner, entry.floor, address, PetTypeDictionary.NO_PETS)
+                        : new House(owner, PetTypeDictionary.NO_PETS, address, true);
+                Main.insertProperty(connection, property);
+                int[] petIds = new int[entry.pets.size()];
+                for (int i = 0; i < petIds.length; i++) {
+                    petIds[i] = Main.linkPet(connection, entry.pets.get(i), entry.address);
+                }
+                return () -> {
+                    Main.propertyInserted(property);
+                    for (int i = 0; i < petIds.length; i++) {
+                        Main.petLinked(petIds[i], entry.pets.get(i), entry.address);
+                    }
+                };
+            }
+            case PET_ADDED: {
+                int petId = Main.linkPet(connection, entry.name, entry.address);
+                return () -> Main.petLinked(petId, entry.name, entry.address);
+            }
+            case PET_TYPE_REMOVED: {
+                TenantService.TenantPet pet = TenantService.findPet(connection, entry.address, entry.name);
+                if (pet == null) {
+                    return () -> { };  // Already gone
+                }
+                int rowsDeleted = TenantService.unlinkPet(connection, entry.address, pet);
+                return () -> TenantService.petRemoved(entry.address, pet, rowsDeleted);
+            }
+            case LEASE_ADDED: {
+                Lease lease = entry.lease();
+                Main.insertLease(connection, lease);
+                return () -> ChangeLog.leaseAdded(lease);
+            }
+            case LEASES_TERMINATED: {
+                int rowsDeleted = Main.deleteLeases(connection, entry.address);
+                return () -> Main.leasesDeleted(entry.address, rowsDeleted);
+            }
+            case RENT_PAID: {
+                PaymentEngine.Result result = PaymentEngine.pay(connection, entry.address, entry.amount, entry.paidAtMillis);
+                if (result.getOutcome() != PaymentEngine.Outcome.PAID) {
+                    return () -> rejected(entry, "payment not posted: " + result.getOutcome());
+                }
+                return () -> { };
+            }
+            default:
+                throw new IllegalStateException("Unknown journal operation " + entry.operation);
+        }
+    }
+
+    // Skips a record the database refuses for good. The rejects line is written first, so a crash can repeat
+    // it but never lose it.
+    private static void reject(Entry entry, String reason) throws Exception {
+        rejected(entry, reason);
+        List<int[]> kept = List.of();
+        try (Connection connection = adminConnection()) {
+            connection.setAutoCommit(false);
+            if (entry.operation == LEASES_TERMINATED) {
+                kept = Main.leaseDates(connection, entry.address);  // Still in the table, so still taken
+            }
+            saveApplied(connection, entry.seq);
+            connection.commit();
+        } catch (Exception e) {
+            synchronized (lock) {
+                appliedKnown = false;
+            }
+            throw e;
+        }
+        settled(entry);
+        if (entry.operation == LEASE_ADDED) {
+            Main.leaseRejected(entry.lease());  // It was indexed when it was queued
+        } else if (entry.operation == LEASES_TERMINATED) {
+            Main.leaseTerminationRejected(entry.address, kept);  // Its leases were unindexed when it was queued
+        }
+        applied(entry);
+    }
+
+    private static void rejected(Entry entry, String reason) {
+        Path rejectsFile = rejectsFile();
+        System.out.println("Write journal: " + entry + " was not written (" + reason + "); see " + rejectsFile);
+        try {
+            boolean isNew = !Files.exists(rejectsFile);
+            try (BufferedWriter out = Files.newBufferedWriter(rejectsFile, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                if (isNew) {
+                    out.write("seq,operation,address,name,amount,reason");
+                    out.newLine();
+                }
+                out.write(entry.seq + "," + Csv.escape(OPERATIONS[entry.operation]) + "," + Csv.escape(entry.address)
+                        + "," + Csv.escape(entry.name) + "," + entry.amount + "," + Csv.escape(reason));
+                out.newLine();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    static Path rejectsFile() {
+        synchronized (lock) {
+            return file == null ? null : file.resolveSibling(file.getFileName() + ".rejects");
+        }
+    }
+
+    // Leaves the record out of queued(), so a lease index built while its updates run does not take it as queued
+    private static void settled(Entry entry) {
+        synchronized (lock) {
+            settledSeq = entry.seq;
+        }
+    }
+
+    private static void applied(Entry entry) {
+        synchronized (lock) {
+            appliedSeq = entry.seq;
+            applyPosition = entry.end;
+            lock.notifyAll();  // An append may be waiting for room
+        }
+    }
+
+    private static void saveApplied(Connection connection, long seq) throws SQLException {
+        String id;
+        synchronized (lock) {
+            id = journalId;
+        }
+        try (PreparedStatement update = connection.prepareStatement(UPDATE_APPLIED_SEQ)) {
+            update.setLong(1, seq);
+            update.setString(2, id);
+            if (update.executeUpdate() > 0) {
+                return;
+            }
+        }
+        try (PreparedStatement insert = connection.prepareStatement(INSERT_APPLIED_SEQ)) {
+            insert.setString(1, id);
+            insert.setLong(2, seq);
+            insert.executeUpdate();
+        }
+    }
+
+    // Not getting a connection at all (pool timeout, database down) is always worth retrying
+    private static Connection adminConnection() throws SQLException {
+        try {
+            return DatabaseConnection.getAdminConnection();
+        } catch (Exception e) {
+            throw new SQLTransientConnectionException(e.getMessage(), e);
+        }
+    }
+
+    // Connection problems, timeouts, deadlocks and lock wait timeouts (MySQL 1205 and 1213); anything else is the
+    // record's fault and retrying it would block the journal
+    static boolean isTransient(Exception e) {
+        if (e instanceof SQLTransientException || e instanceof SQLRecoverableException
+                || e instanceof SQLNonTransientConnectionException) {
+            return true;
+        }
+        if (e instanceof SQLException) {
+            SQLException sql = (SQLException) e;
+            String state = sql.getSQLState();
+            return (state != null && (state.startsWith("08") || state.startsWith("40")))
+                    || sql.getErrorCode() == 1205 || sql.getErrorCode() == 1213;
+        }
+        return false;
+    }
+
+    // The records not in the database yet, oldest first; none while the journal is closed
+    static List<Entry> queued() {
+        synchronized (lock) {
+            List<Entry> entries = new ArrayList<>();
+            if (mapped == null) {
+                return entries;
+            }
+            int position = applyPosition;
+            for (long seq = appliedSeq + 1; seq <= writtenSeq; seq++) {
+                Entry entry = read(mapped, position, seq);
+                if (seq > settledSeq) {
+                    entries.add(entry);
+                }
+                position = entry.end;
+            }
+            return entries;
+        }
+    }
+
+    // The record at the position if it is complete, intact and has the expected sequence number, else null
+    private static Entry read(ByteBuffer buffer, int position, long seq) {
+        if (position > buffer.capacity() - RECORD_HEADER - MIN_BODY) {
+            return null;
+        }
+        int length = buffer.getInt(position);
+        if (length < MIN_BODY || length > buffer.capacity() - position - RECORD_HEADER) {
+            return null;
+        }
+        ByteBuffer body = buffer.slice(position + RECORD_HEADER, length).order(ORDER);
+        if (LogRecord.checksum(new CRC32C(), body) != buffer.getInt(position + 4) || body.getLong() != seq) {
+            return null;
+        }
+        int end = position + RECORD_HEADER + length;
+        byte operation = body.get();
+        switch (operation) {
+            case PERSON_ADDED:
+                return new Entry(seq, operation, "", LogRecord.getString(body), false, 0, 0, 0, 0, 0, List.of(), end);
+            case PROPERTY_ADDED: {
+                boolean apartment = body.getInt() != 0;
+                String address = LogRecord.getString(body);
+                String owner = LogRecord.getString(body);
+                int floor = body.getInt();
+                int petCount = body.getInt();
+                List<String> pets = new ArrayList<>(petCount);
+                for (int i = 0; i < petCount; i++) {
+                    pets.add(LogRecord.getString(body));
+                }
+                return new Entry(seq, operation, address, owner, apartment, floor, 0, 0, 0, 0, pets, end);
+            }
+            case PET_ADDED:
+            case PET_TYPE_REMOVED:
+                return new Entry(seq, operation, LogRecord.getString(body), LogRecord.getString(body), false, 0, 0, 0, 0, 0,
+                        List.of(), end);
+            case LEASE_ADDED:
+                return new Entry(seq, operation, LogRecord.getString(body), LogRecord.getString(body), false, 0,
+                        body.getInt(), body.getInt(), body.getDouble(), 0, List.of(), end);
+            case LEASES_TERMINATED:
+                return new Entry(seq, operation, LogRecord.getString(body), "", false, 0, 0, 0, 0, 0, List.of(), end);
+            case RENT_PAID:
+                return new Entry(seq, operation, LogRecord.getString(body), "", false, 0, 0, 0, body.getDouble(),
+                        body.getLong(), List.of(), end);
+            default:
+                return null;  // Written by a newer version; stop here rather than skip it
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// Main's portfolio-wide helpers at small, typical and large portfolio sizes, end to end (including TaskEngine)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AsyncHelpersBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    private List<IProperty> properties;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        properties = Portfolios.generate(size, new Random(42));
+        TaskEngine.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        TaskEngine.shutdown();
+    }
+
+    @Benchmark
+    public List<IProperty> sortPropertiesByFloorAsync() {
+        return Main.sortPropertiesByFloorAsync(properties).join();
+    }
+
+    @Benchmark
+    public Map<String, List<IProperty>> groupPropertiesByOwner() {
+        return Main.groupPropertiesByOwner(properties);
+    }
+
+    // One task per property, as the "Number of Pets per Property" menu option does
+    @Benchmark
+    public int countPetsAsync() {
+        List<CompletableFuture<Integer>> counts = new ArrayList<>(properties.size());
+        for (IProperty property : properties) {
+            counts.add(Main.countPetsAsync(property));
+        }
+        int total = 0;
+        for (CompletableFuture<Integer> count : counts) {
+            total += count.join();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,102 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Per-call cost of the domain model's hot methods. Each call takes the next element of a pre-built array,
+// so the JIT cannot fold a constant input and the data is spread over a realistic portfolio (10,000 properties).
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DomainModelBenchmark {
+    private static final int SIZE = 10_000;
+
+    private House[] houses;
+    private Apartment[] apartments;
+    private String[] addresses;      // 1 in 10 is malformed, like typos at the prompt
+    private String[] dates;          // 1 in 10 is malformed
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        List<House> houseList = new ArrayList<>();
+        List<Apartment> apartmentList = new ArrayList<>();
+        for (IProperty property : Portfolios.generate(SIZE, random)) {
+            if (property instanceof House) {
+                houseList.add((House) property);
+            } else {
+                apartmentList.add((Apartment) property);
+            }
+        }
+        houses = houseList.toArray(new House[0]);
+        apartments = apartmentList.toArray(new Apartment[0]);
+
+        addresses = new String[SIZE];
+        dates = new String[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            addresses[i] = i % 10 == 0 ? "Oak " + i : (1 + random.nextInt(9999)) + " Oak Street";
+            dates[i] = i % 10 == 0 ? "2024-13-" + i : String.format("%04d-%02d-%02d",
+                    2000 + random.nextInt(30), 1 + random.nextInt(12), 1 + random.nextInt(28));
+        }
+    }
+
+    private int next(int length) {
+        int index = next;
+        next = index + 1 == SIZE ? 0 : index + 1;
+        return index % length;
+    }
+
+    @Benchmark
+    public String houseDescription() {
+        return houses[next(houses.length)].getDescription();
+    }
+
+    @Benchmark
+    public String apartmentDescription() {
+        return apartments[next(apartments.length)].getDescription();
+    }
+
+    @Benchmark
+    public int houseCompareTo() {
+        int i = next(houses.length);
+        return houses[i].compareTo(houses[(i + 1) % houses.length]);
+    }
+
+    @Benchmark
+    public boolean validateAddress() {
+        try {
+            Main.validateAddress(addresses[next(SIZE)]);
+            return true;
+        } catch (InvalidAddressFormatException e) {
+            return false;
+        }
+    }
+
+    @Benchmark
+    public int validateAndParseDate() {
+        try {
+            return Main.validateAndParseDate(dates[next(SIZE)]);
+        } catch (ParseException e) {
+            return LeaseDates.INVALID;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+// Task-per-property grouping (the previous groupPropertiesByOwner) vs. OwnerGrouping's fork/join grouping
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OwnerGroupingBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int size;
+
+    private List<IProperty> properties;
+    private ExecutorService executor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        properties = Portfolios.generate(size, new Random(42));
+        executor = Executors.newFixedThreadPool(8);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public Map<String, List<IProperty>> forkJoin() {
+        return OwnerGrouping.group(new ArrayList<>(properties));
+    }
+
+    // The previous implementation minus its per-property println, which would only make it slower.
+    // Its unsynchronised ArrayList.add raced (lost entries, or an ArrayIndexOutOfBoundsException that failed the
+    // benchmark); here each add runs inside ConcurrentHashMap.compute, which locks only that owner's entry, so the
+    // run completes with every property. That slightly flatters the old version.
+    @Benchmark
+    public Map<String, List<IProperty>> taskPerProperty() throws Exception {
+        Map<String, List<IProperty>> ownerGroups = new ConcurrentHashMap<>();
+        List<Future<?>> futures = new ArrayList<>();
+        for (IProperty property : properties) {
+            futures.add(executor.submit(() -> {
+                ownerGroups.compute(property.getOwner().getName(), (owner, group) -> {
+                    List<IProperty> list = group != null ? group : new ArrayList<>();
+                    list.add(property);
+                    return list;
+                });
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        List<Future<?>> sortFutures = new ArrayList<>();
+        for (List<IProperty> group : ownerGroups.values()) {
+            sortFutures.add(executor.submit(() -> group.sort(OwnerGrouping.PROPERTY_ORDER)));
+        }
+        for (Future<?> future : sortFutures) {
+            future.get();
+        }
+        return ownerGroups;
+    }
+}
@@ -0,0 +1,35 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Synthetic portfolios for the benchmarks: roughly 1 owner per 20 properties, 40% houses, 0-3 pets each
+class Portfolios {
+    private static final String[] PET_TYPES = {"Dog", "Cat", "Fish", "Bird", "Rabbit", "Hamster"};
+    private static final String[] STREETS = {"Oak", "Elm", "Pine", "Maple", "Cedar", "Birch", "Main", "High"};
+
+    static List<IProperty> generate(int size, Random random) {
+        int ownerCount = Math.max(1, size / 20);
+        Person[] owners = new Person[ownerCount];
+        for (int i = 0; i < ownerCount; i++) {
+            owners[i] = new Person("Owner " + i);
+        }
+
+        List<IProperty> properties = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Person owner = owners[random.nextInt(ownerCount)];
+            Pet[] pets = new Pet[random.nextInt(4)];
+            for (int p = 0; p < pets.length; p++) {
+                pets[p] = new Pet(PET_TYPES[random.nextInt(PET_TYPES.length)]);
+            }
+            String address = (1 + random.nextInt(9999)) + " " + STREETS[random.nextInt(STREETS.length)];
+            if (random.nextInt(10) < 4) {
+                properties.add(new House(owner, pets, address, true));
+            } else {
+                properties.add(new Apartment(owner, random.nextInt(131), address, pets));
+            }
+        }
+        return properties;
+    }
+}
@@ -0,0 +1,91 @@
+package org.example;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+// Compares the old per-property pet lookup (1 + N queries) with PropertyLoader's single joined query.
+// Usage: PropertyLoadBenchmark <jdbcUrl> <user> <password> [iterations]
+// Run it against a populated copy of the property_management schema (or an embedded database seeded with one).
+public class PropertyLoadBenchmark {
+
+    private static int roundTrips;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.out.println("Usage: PropertyLoadBenchmark <jdbcUrl> <user> <password> [iterations]");
+            return;
+        }
+        int iterations = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+        DatabaseConnection.configure(args[0], args[1], args[2], args[1], args[2]);
+
+        try {
+            for (int i = 0; i < iterations; i++) {
+                run("per-row (before)", PropertyLoadBenchmark::loadPerRow);
+                run("joined  (after) ", PropertyLoadBenchmark::loadJoined);
+            }
+            System.out.println(DatabaseConnection.poolStats());
+        } finally {
+            DatabaseConnection.shutdown();
+        }
+    }
+
+    private interface Loader {
+        List<IProperty> load(Connection connection) throws SQLException;
+    }
+
+    private static void run(String label, Loader loader) throws Exception {
+        roundTrips = 0;
+        long start = System.nanoTime();
+        int count;
+        try (Connection connection = DatabaseConnection.getConnection()) {
+            count = loader.load(connection).size();
+        }
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        System.out.println(label + ": " + count + " properties, " + roundTrips + " round trips, " + elapsedMs + " ms");
+    }
+
+    private static List<IProperty> loadJoined(Connection connection) throws SQLException {
+        roundTrips++;
+        return PropertyLoader.loadAll(connection);
+    }
+
+    // The original getAllProperties/getPetsForProperty logic, kept here as the comparison baseline
+    private static List<IProperty> loadPerRow(Connection connection) throws SQLException {
+        List<IProperty> properties = new ArrayList<>();
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "SELECT p.*, o.name AS owner_name FROM Property p JOIN Person o ON p.owner_id = o.id");
+             ResultSet rs = stmt.executeQuery()) {
+            roundTrips++;
+            while (rs.next()) {
+                Person owner = new Person(rs.getString("owner_name"));
+                String type = rs.getString("type");
+                String address = rs.getString("address");
+                int floor = rs.getInt("floor");
+                boolean isGround = rs.getBoolean("isGround");
+
+                List<Pet> pets = new ArrayList<>();
+                try (PreparedStatement petStmt = connection.prepareStatement(
+                        "SELECT type FROM Pet WHERE id IN (SELECT pet_id FROM PropertyPet WHERE property_id = ?)")) {
+                    petStmt.setInt(1, rs.getInt("id"));
+                    try (ResultSet petRs = petStmt.executeQuery()) {
+                        roundTrips++;
+                        while (petRs.next()) {
+                            pets.add(new Pet(petRs.getString("type")));
+                        }
+                    }
+                }
+
+                if ("House".equalsIgnoreCase(type)) {
+                    properties.add(new House(owner, pets.toArray(new Pet[0]), address, isGround));
+                } else {
+                    properties.add(new Apartment(owner, floor, address, pets.toArray(new Pet[0])));
+                }
+            }
+        }
+        return properties;
+    }
+}
@@ -0,0 +1,121 @@
+package org.example;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Compares a JMH JSON result file with benchmarks/baseline.json and fails (exit code 1) when a benchmark got
+// slower than its baseline by more than the tolerance.
+// Usage: RegressionCheck <results.json> [baseline.json] [tolerance, default 0.25 = 25%]
+//
+//   java -jar target/benchmarks.jar -rf json -rff target/results.json
+//   java -cp target/benchmarks.jar org.example.RegressionCheck target/results.json baseline.json
+//
+// Benchmarks are matched by name and parameters; ones missing from either file are listed but not judged.
+// Scores are compared with their error margins (JMH's 99.9% confidence interval, score ± scoreError): a
+// benchmark only regressed if even the best end of its new interval is worse than the worst end of the
+// baseline's by more than the tolerance. A slower score whose intervals overlap that far is reported as NOISY.
+// Baselines are machine specific: regenerate baseline.json on the machine that runs the check.
+public class RegressionCheck {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: RegressionCheck <results.json> [baseline.json] [tolerance]");
+            System.exit(2);
+        }
+        Path baselineFile = Path.of(args.length > 1 ? args[1] : "baseline.json");
+        double tolerance = args.length > 2 ? Double.parseDouble(args[2]) : 0.25;
+
+        Map<String, Score> results = read(Path.of(args[0]));
+        Map<String, Score> baseline = read(baselineFile);
+        int regressions = 0;
+        for (Map.Entry<String, Score> entry : results.entrySet()) {
+            Score current = entry.getValue();
+            Score expected = baseline.get(entry.getKey());
+            if (expected == null) {
+                System.out.println("NEW        " + entry.getKey() + ": " + current);
+                continue;
+            }
+            if (!expected.unit.equals(current.unit)) {
+                System.out.println("SKIPPED    " + entry.getKey() + ": unit changed from " + expected.unit + " to " + current.unit);
+                continue;
+            }
+            // Throughput: higher is better; every other mode measures time, where lower is better
+            double change = current.higherIsBetter
+                    ? (expected.score - current.score) / expected.score
+                    : (current.score - expected.score) / expected.score;
+            boolean regressed = current.higherIsBetter
+                    ? current.score + current.error < (expected.score - expected.error) * (1 - tolerance)
+                    : current.score - current.error > (expected.score + expected.error) * (1 + tolerance);
+            boolean improved = current.higherIsBetter
+                    ? current.score - current.error > (expected.score + expected.error) * (1 + tolerance)
+                    : current.score + current.error < (expected.score - expected.error) * (1 - tolerance);
+            String status = regressed ? "REGRESSION" : improved ? "IMPROVED  " : change > tolerance ? "NOISY     " : "OK        ";
+            if (regressed) {
+                regressions++;
+            }
+            System.out.println(String.format("%s %s: %s (baseline %s, %+.1f%% worse)",
+                    status, entry.getKey(), current, expected, change * 100));
+        }
+        for (String name : baseline.keySet()) {
+            if (!results.containsKey(name)) {
+                System.out.println("NOT RUN    " + name);
+            }
+        }
+
+        if (regressions > 0) {
+            System.out.println(regressions + " benchmark(s) regressed by more than " + Math.round(tolerance * 100) + "% beyond their error margins.");
+            System.exit(1);
+        }
+        System.out.println("No regressions beyond " + Math.round(tolerance * 100) + "%.");
+    }
+
+    static class Score {
+        final double score;
+        final double error;   // Half-width of the 99.9% confidence interval; 0 if JMH could not compute one
+        final String unit;
+        final boolean higherIsBetter;
+
+        Score(double score, double error, String unit, boolean higherIsBetter) {
+            this.score = score;
+            this.error = error;
+            this.unit = unit;
+            this.higherIsBetter = higherIsBetter;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.3f +/- %.3f %s", score, error, unit);
+        }
+    }
+
+    // benchmark name plus parameters, e.g. "org.example.AsyncHelpersBenchmark.countPetsAsync{size=1000}" -> score
+    static Map<String, Score> read(Path file) throws Exception {
+        Object json = parseJson(Files.readString(file));
+        if (!(json instanceof List)) {
+            throw new IllegalArgumentException(file + " is not a JMH JSON result file (expected an array).");
+        }
+        Map<String, Score> scores = new LinkedHashMap<>();
+        for (Object item : (List<?>) json) {
+            Map<?, ?> run = (Map<?, ?>) item;
+            Map<?, ?> metric = (Map<?, ?>) run.get("primaryMetric");
+            String name = String.valueOf(run.get("benchmark"));
+            Object params = run.get("params");
+            if (params instanceof Map && !((Map<?, ?>) params).isEmpty()) {
+                name += params.toString();
+            }
+            Object error = metric.get("scoreError");  // "NaN" (a string) with fewer than two iterations
+            double margin = error instanceof Number && !Double.isNaN(((Number) error).doubleValue()) ? ((Number) error).doubleValue() : 0;
+            scores.put(name, new Score(((Number) metric.get("score")).doubleValue(), margin, String.valueOf(metric.get("scoreUnit")),
+                    "thrpt".equals(run.get("mode"))));
+        }
+        return scores;
+    }
+
+    // JMH writes one top-level array; the importer's parser reads objects, which may nest arrays and objects
+    private static Object parseJson(String text) {
+        return BulkPropertyImporter.parseJsonObject("{\"runs\":" + text.trim() + "}").get("runs");
+    }
+}
@@ -0,0 +1,184 @@
+package org.example;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Load test for TenantServer: many simulated tenants at once against an embedded database.
+// Usage: TenantLoadTest [sessions] [seconds] [properties] [jdbcUrl] [user] [password]
+// Defaults to 1000 sessions for 30 s over 2000 properties in an in-memory H2 database in MySQL mode (needs the
+// H2 driver on the classpath). Each session is one TaskEngine task that, for a random property, lists its pets,
+// adds a pet, removes it again and pays the rent (the first payment per lease and month succeeds, later ones
+// are 409s). Reports throughput, status codes and latency percentiles per operation.
+public class TenantLoadTest {
+    private static final String[] PET_TYPES = {"Dog", "Cat", "Fish", "Bird", "Rabbit", "Hamster"};
+    private static final String[] STREETS = {"Oak", "Elm", "Pine", "Maple", "Cedar", "Birch", "Main", "High"};
+    private static final double MONTHLY_RENT = 1200.0;
+
+    private static final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+    private static final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+
+    public static void main(String[] args) throws Exception {
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");  // As Main --serve does, see TenantServer
+        }
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        int properties = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+        String url = args.length > 3 ? args[3] : "jdbc:h2:mem:tenants;MODE=MySQL;DB_CLOSE_DELAY=-1";
+        String user = args.length > 4 ? args[4] : "sa";
+        String password = args.length > 5 ? args[5] : "";
+        DatabaseConnection.configure(url, user, password, user, password);
+
+        TenantServer server = null;
+        try {
+            List<String> addresses = seed(properties);
+            SchemaMigrations.apply();
+            PetTypeDictionary.syncQuietly();
+            server = TenantServer.start(0);
+            System.out.println("Tenant server on port " + server.getPort() + ", " + sessions + " sessions for " + seconds + " s");
+
+            HttpClient client = HttpClient.newBuilder().executor(TaskEngine.executor())
+                    .connectTimeout(Duration.ofSeconds(5)).build();
+            String base = "http://localhost:" + server.getPort();
+            long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+            long start = System.nanoTime();
+
+            List<CompletableFuture<Void>> running = new ArrayList<>(sessions);
+            for (int i = 0; i < sessions; i++) {
+                long seed = i;
+                running.add(TaskEngine.run(() -> session(client, base, addresses, new Random(seed), deadline)));
+            }
+            CompletableFuture.allOf(running.toArray(new CompletableFuture[0])).join();
+            double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+            long requests = 0;
+            for (LongAdder count : statuses.values()) {
+                requests += count.sum();
+            }
+            System.out.println(String.format("%d requests in %.1f s: %.0f requests/sec", requests, elapsedSeconds, requests / elapsedSeconds));
+            System.out.println("Status codes: " + new TreeMap<>(statuses));
+            new TreeMap<>(latencies).forEach((operation, histogram) -> System.out.println("  " + operation + ": " + histogram));
+            System.out.println("Server side: " + server.getLatency());
+            System.out.println(DatabaseConnection.poolStats());
+            System.out.println(StatementRegistry.report());
+        } finally {
+            if (server != null) {
+                server.stop(0);
+            }
+            TaskEngine.shutdown();
+            DatabaseConnection.shutdown();
+        }
+    }
+
+    private static void session(HttpClient client, String base, List<String> addresses, Random random, long deadline) {
+        while (System.nanoTime() < deadline) {
+            String address = addresses.get(random.nextInt(addresses.size()));
+            String encoded = URLEncoder.encode(address, StandardCharsets.UTF_8);
+            String petType = PET_TYPES[random.nextInt(PET_TYPES.length)];
+            send(client, "list pets", HttpRequest.newBuilder(URI.create(base + "/tenants/pets?address=" + encoded)).GET());
+            send(client, "add pet", HttpRequest.newBuilder(URI.create(base + "/tenants/pets"))
+                    .POST(json("{\"address\":" + TenantServer.quote(address) + ",\"type\":" + TenantServer.quote(petType) + "}")));
+            send(client, "remove pet", HttpRequest.newBuilder(URI.create(base + "/tenants/pets?address=" + encoded
+                    + "&type=" + petType)).DELETE());
+            send(client, "pay rent", HttpRequest.newBuilder(URI.create(base + "/tenants/rent"))
+                    .POST(json("{\"address\":" + TenantServer.quote(address) + ",\"amount\":" + MONTHLY_RENT + "}")));
+        }
+    }
+
+    private static HttpRequest.BodyPublisher json(String body) {
+        return HttpRequest.BodyPublishers.ofString(body);
+    }
+
+    private static void send(HttpClient client, String operation, HttpRequest.Builder request) {
+        long start = System.nanoTime();
+        int status;
+        try {
+            status = client.send(request.timeout(Duration.ofSeconds(30)).build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (Exception e) {
+            status = -1;  // Connection error or timeout
+        }
+        latencies.computeIfAbsent(operation, name -> new LatencyHistogram()).record(System.nanoTime() - start);
+        statuses.computeIfAbsent(status, code -> new LongAdder()).increment();
+    }
+
+    // The tables the application uses, without the columns SchemaMigrations adds; one lease per property
+    private static List<String> seed(int properties) throws Exception {
+        List<String> addresses = new ArrayList<>(properties);
+        try (Connection connection = DatabaseConnection.getAdminConnection()) {
+            try (Statement stmt = connection.createStatement()) {
+                stmt.executeUpdate("CREATE TABLE Person (id INT AUTO_INCREMENT PRIMARY KEY, name VARCHAR(255) NOT NULL)");
+                stmt.executeUpdate("CREATE TABLE Pet (id INT AUTO_INCREMENT PRIMARY KEY, type VARCHAR(255) NOT NULL)");
+                stmt.executeUpdate("""
+                        CREATE TABLE Property (id INT AUTO_INCREMENT PRIMARY KEY, address VARCHAR(255) NOT NULL,
+                            owner_id INT REFERENCES Person(id), floor INT, isGround BOOLEAN, type VARCHAR(20))""");
+                stmt.executeUpdate("""
+                        CREATE TABLE PropertyPet (property_id INT NOT NULL REFERENCES Property(id),
+                            pet_id INT NOT NULL REFERENCES Pet(id))""");
+                stmt.executeUpdate("""
+                        CREATE TABLE Lease (id INT AUTO_INCREMENT PRIMARY KEY, tenant_id INT REFERENCES Person(id),
+                            property_id INT REFERENCES Property(id), startDate DATE, endDate DATE, monthlyRent DOUBLE)""");
+                stmt.executeUpdate("""
+                        CREATE TABLE RentPayments (id INT AUTO_INCREMENT PRIMARY KEY, property_address VARCHAR(255),
+                            tenant_name VARCHAR(255), payment_date TIMESTAMP, amount_paid DOUBLE, lease_id INT)""");
+                stmt.executeUpdate("CREATE INDEX idx_property_pet ON PropertyPet (property_id, pet_id)");
+                stmt.executeUpdate("CREATE INDEX idx_lease_property ON Lease (property_id)");
+            }
+
+            connection.setAutoCommit(false);
+            try (PreparedStatement person = connection.prepareStatement("INSERT INTO Person (name) VALUES (?)");
+                 PreparedStatement property = connection.prepareStatement(
+                         "INSERT INTO Property (address, owner_id, floor, isGround, type) VALUES (?, ?, ?, ?, ?)");
+                 PreparedStatement lease = connection.prepareStatement(
+                         "INSERT INTO Lease (tenant_id, property_id, startDate, endDate, monthlyRent) VALUES (?, ?, ?, ?, ?)")) {
+                int owners = Math.max(1, properties / 20);
+                for (int i = 0; i < owners + properties; i++) {
+                    person.setString(1, i < owners ? "Owner " + i : "Tenant " + (i - owners));
+                    person.addBatch();
+                }
+                person.executeBatch();
+
+                LocalDate today = LocalDate.now();
+                for (int i = 0; i < properties; i++) {
+                    String address = (i + 1) + " " + STREETS[i % STREETS.length];
+                    addresses.add(address);
+                    property.setString(1, address);
+                    property.setInt(2, 1 + i % owners);
+                    property.setInt(3, i % 2 == 0 ? 0 : 1 + i % 20);
+                    property.setBoolean(4, i % 2 == 0);
+                    property.setString(5, i % 2 == 0 ? "House" : "Apartment");
+                    property.addBatch();
+
+                    lease.setInt(1, owners + i + 1);
+                    lease.setInt(2, i + 1);
+                    lease.setObject(3, java.sql.Date.valueOf(today.minusMonths(6)));
+                    lease.setObject(4, java.sql.Date.valueOf(today.plusMonths(6)));
+                    lease.setDouble(5, MONTHLY_RENT);
+                    lease.addBatch();
+                }
+                property.executeBatch();
+                lease.executeBatch();
+                connection.commit();
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+        return addresses;
+    }
+}